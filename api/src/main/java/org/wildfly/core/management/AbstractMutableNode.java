@@ -18,6 +18,8 @@
 
 package org.wildfly.core.management;
 
+import java.io.IOException;
+
 /**
  * Base class for all mutable node classes.
  *
@@ -28,11 +30,15 @@ public abstract class AbstractMutableNode<N extends Node> implements Node {
     private final ManagedSystem database;
     private final AbstractMutableNode<?> parent;
     private final Class<N> nodeType;
+    private final PathAddress address;
 
     protected AbstractMutableNode(final NodeConfiguration<N> configuration) {
         database = configuration.getDatabase();
         parent = configuration.getParent();
         nodeType = configuration.getNodeType();
+        final PathElement pathElement = configuration.getPathElement();
+        final PathAddress parentAddress = parent == null ? PathAddress.EMPTY_ADDRESS : parent.getAddress();
+        address = pathElement == null ? parentAddress : parentAddress.append(pathElement);
     }
 
     public final String getName() {
@@ -43,6 +49,28 @@ public abstract class AbstractMutableNode<N extends Node> implements Node {
         return parent;
     }
 
+    /**
+     * Get the address of this node, relative to the root resource of its managed system.
+     *
+     * @return the node address
+     */
+    public final PathAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the type of the immutable nodes which this node refers to.
+     *
+     * @return the node type
+     */
+    final Class<N> getNodeType() {
+        return nodeType;
+    }
+
+    public final void writeTo(final ModelSink sink) throws IOException {
+        getCurrent().writeTo(sink);
+    }
+
     protected final N getCurrent() {
         return database.getNode(this);
     }
@@ -18,6 +18,14 @@
 
 package org.wildfly.core.management;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.stream.XMLStreamWriter;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.core.management.xml.XMLWriteException;
+
 /**
  * Base class for all node classes.
  *
@@ -26,6 +34,8 @@ package org.wildfly.core.management;
 public abstract class AbstractNode implements Node {
     private final AbstractNode parent;
     private final String name;
+    private volatile SoftReference<ModelNode> cachedModel;
+    private volatile SoftReference<ModelNode> cachedAttributes;
 
     protected AbstractNode(final AbstractNode parent, final String name) {
         this.parent = parent;
@@ -40,5 +50,127 @@ public abstract class AbstractNode implements Node {
         return parent;
     }
 
+    /**
+     * Create a copy of this node for a new version of the model.  The copy must pass each of its children through
+     * {@link NodeConstructionContext#registerNode(Node)} and install the result, omitting children for which
+     * {@code null} is returned, and must then install every child returned by
+     * {@link #getAddedChildren(NodeConstructionContext, Node)}; children must not be deeply copied, so that untouched
+     * subtrees are shared between versions.  As a consequence, the parent of a shared node is the immutable node it was created with, which
+     * may belong to an older version.
+     *
+     * @param context the node construction context
+     * @return the copy
+     */
     protected abstract Node cloneInto(NodeConstructionContext context);
+
+    /**
+     * Get the protected DMR representation of this node, converting it only the first time.  Since nodes are
+     * immutable, the representation is cached against this instance for as long as memory permits.  Node
+     * implementations which obtain the representations of their children through {@link #childModel(Node)} build it
+     * from the cached representations of their children, so that only the nodes which changed since the last
+     * conversion are converted again.
+     *
+     * @return the protected DMR representation
+     */
+    final ModelNode getCachedModel() {
+        final SoftReference<ModelNode> ref = cachedModel;
+        ModelNode model = ref == null ? null : ref.get();
+        if (model == null) {
+            model = toModelNode();
+            model.protect();
+            cachedModel = new SoftReference<>(model);
+        }
+        return model;
+    }
+
+    /**
+     * Get the protected DMR representation of the attributes of this node, without its children, converting it only
+     * the first time.
+     *
+     * @return the protected DMR representation of the attributes
+     * @see #writeAttributes(ModelNode)
+     */
+    final ModelNode getCachedAttributes() {
+        final SoftReference<ModelNode> ref = cachedAttributes;
+        ModelNode model = ref == null ? null : ref.get();
+        if (model == null) {
+            model = new ModelNode();
+            model.setEmptyObject();
+            writeAttributes(model);
+            model.protect();
+            cachedAttributes = new SoftReference<>(model);
+        }
+        return model;
+    }
+
+    /**
+     * Write the DMR representation of the attributes of this node, without its children, into the given object.  This
+     * implementation copies the whole cached representation, children included; node implementations should
+     * override it to write their attributes only (for example with {@link NodeStorage#writeAttributes(ModelNode)}),
+     * so that reading an attribute does not convert the subtree beneath the node.
+     *
+     * @param model the object to write to
+     */
+    protected void writeAttributes(final ModelNode model) {
+        model.set(getCachedModel());
+    }
+
+    /**
+     * Get the DMR representation of a child node, for inclusion in the representation of its parent.  Node
+     * implementations should use this method in {@link #toModelNode()} rather than calling
+     * {@link Node#toModelNode()} on their children directly, so that the cached representation of an unchanged child
+     * is reused rather than converted again.  The result is protected, and should be installed with
+     * {@link ModelNode#set(ModelNode)}.
+     *
+     * @param child the child node
+     * @return the DMR representation of the child
+     */
+    protected static ModelNode childModel(final Node child) {
+        return child instanceof AbstractNode ? ((AbstractNode) child).getCachedModel() : child.toModelNode();
+    }
+
+    /**
+     * Write a DMR representation of this node to a sink.  This implementation materializes the result of
+     * {@link #toModelNode()}; node implementations should override it to write their attributes directly, and write
+     * each child through its own {@code writeTo} method.
+     *
+     * @param sink the target sink
+     * @throws IOException if writing to the sink failed
+     */
+    public void writeTo(final ModelSink sink) throws IOException {
+        ModelSinks.write(toModelNode(), sink);
+    }
+
+    /**
+     * Write the XML content of a child node.  Node implementations should use this method rather than calling
+     * {@link Node#toXML(XMLStreamWriter)} on their children directly, so that incremental persistence can reuse the
+     * previously written content of unchanged children.
+     *
+     * @param writer the target writer
+     * @param child the child node to write
+     * @throws XMLWriteException if the write failed for some reason (e.g. an I/O error)
+     */
+    protected static void writeChild(final XMLStreamWriter writer, final Node child) throws XMLWriteException {
+        if (writer instanceof SplicingXMLStreamWriter) {
+            ((SplicingXMLStreamWriter) writer).writeChild(child);
+        } else {
+            child.toXML(writer);
+        }
+    }
+
+    /**
+     * Get the children which were added beneath a node being copied by {@link #cloneInto(NodeConstructionContext)},
+     * and which the original node therefore does not reference.  The copy must install each of them, replacing any
+     * child it already has at the same path element.
+     *
+     * @param context the node construction context passed to {@code cloneInto}
+     * @param original the node being copied
+     * @return the added children, which may be empty
+     */
+    protected static List<Node> getAddedChildren(final NodeConstructionContext context, final Node original) {
+        if (context instanceof PathCopier) {
+            return ((PathCopier) context).getAddedChildren(original);
+        }
+        return Collections.emptyList();
+    }
 }
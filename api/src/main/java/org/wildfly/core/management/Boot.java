@@ -18,6 +18,10 @@
 
 package org.wildfly.core.management;
 
+import java.io.File;
+import java.io.IOException;
+import org.wildfly.core.management.xml.XMLParseException;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -36,4 +40,41 @@ public final class Boot {
     public static ManagedSystem load(AbstractRootResourceBuilder<?> builder) throws IllegalArgumentException {
         return new ManagedSystem(builder.getName(), builder.construct(null));
     }
+
+    /**
+     * Load a built management model, replay the changes recorded in a change journal since its last checkpoint, and
+     * attach the journal to the loaded system.  The builder should be populated from the last checkpoint.
+     *
+     * @param builder the builder from which to load
+     * @param journal the change journal
+     * @param replayHandler the handler which applies journaled changes
+     * @return a managed system at {@link RunLevel#STOPPED} run level
+     * @throws IllegalArgumentException if the given model is invalid
+     * @throws IOException if the journal could not be read
+     * @throws OperationFailedException if a journaled change could not be replayed
+     */
+    public static ManagedSystem load(AbstractRootResourceBuilder<?> builder, ChangeJournal journal, ChangeJournal.ReplayHandler replayHandler) throws IllegalArgumentException, IOException, OperationFailedException {
+        final ManagedSystem system = load(builder);
+        journal.replay(system, replayHandler);
+        system.setChangeJournal(journal);
+        return system;
+    }
+
+    /**
+     * Load a management model from its XML configuration, using the binary boot snapshot instead if it was written
+     * from the same configuration content.
+     *
+     * @param builder the builder from which to load
+     * @param configFile the XML configuration file
+     * @param snapshotFile the boot snapshot file, which need not exist
+     * @param parser the XML parser to use if the snapshot is missing or stale
+     * @return a managed system at {@link RunLevel#STOPPED} run level
+     * @throws IllegalArgumentException if the given model is invalid
+     * @throws IOException if a file could not be read
+     * @throws XMLParseException if the XML is not properly formed or is not valid
+     */
+    public static ManagedSystem load(AbstractRootResourceBuilder<?> builder, File configFile, File snapshotFile, BootSnapshot.Parser parser) throws IllegalArgumentException, IOException, XMLParseException {
+        BootSnapshot.fill(builder, configFile, snapshotFile, parser);
+        return load(builder);
+    }
 }
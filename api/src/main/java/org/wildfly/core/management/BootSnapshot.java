@@ -0,0 +1,477 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementLogger.ROOT_LOGGER;
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+import org.wildfly.core.management.xml.XMLParseException;
+
+/**
+ * A compact binary snapshot of a complete management model, used to skip XML parsing at boot.
+ * <p>
+ * A snapshot is written alongside the XML configuration each time it is persisted, and records the content hash of
+ * that XML.  At boot the snapshot is only used if the hash of the current XML matches; otherwise the XML is parsed
+ * as usual, so hand-edited configuration files are always honored.  A snapshot which cannot be read, for example
+ * because it was truncated, is discarded in the same way.
+ * <p>
+ * The file consists of a header (magic number, format version, and the SHA-256 hash of the XML), a table of every
+ * distinct string in the model, and the model tree itself, in which all names and string values are table indexes.
+ */
+public final class BootSnapshot {
+
+    private static final int MAGIC = 0x574d4253;
+    private static final int FORMAT_VERSION = 1;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ModelType[] TYPES = ModelType.values();
+
+    private BootSnapshot() {
+    }
+
+    /**
+     * A parser which populates a root resource builder from XML, used when no fresh snapshot is available.
+     */
+    public interface Parser {
+
+        /**
+         * Populate the given builder from the XML in the given stream.
+         *
+         * @param builder the builder to fill
+         * @param stream the XML stream
+         * @throws XMLParseException if the XML is not properly formed or is not valid
+         */
+        void fillFromXML(AbstractRootResourceBuilder<?> builder, InputStream stream) throws XMLParseException;
+    }
+
+    /**
+     * Compute the content hash of a configuration file.
+     *
+     * @param configFile the configuration file
+     * @return the hash
+     * @throws IOException if the file could not be read
+     */
+    public static byte[] hash(File configFile) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (InputStream is = new FileInputStream(configFile)) {
+            final byte[] buffer = new byte[8192];
+            int res;
+            while ((res = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, res);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Write a snapshot of the given model.  The snapshot is written to a temporary file which then replaces the
+     * target, so a crash never leaves a partially written snapshot behind.
+     *
+     * @param snapshot the model snapshot to write
+     * @param configHash the content hash of the XML configuration which corresponds to the model
+     * @param snapshotFile the snapshot file to write
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(ModelSnapshot snapshot, byte[] configHash, File snapshotFile) throws IOException {
+        if (snapshot == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("snapshot"));
+        }
+        if (configHash == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("configHash"));
+        }
+        final ModelNode model = snapshot.getRootResource().toModelNode();
+        final File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            os.writeInt(MAGIC);
+            os.writeByte(FORMAT_VERSION);
+            os.writeByte(configHash.length);
+            os.write(configHash);
+            final StringTable strings = new StringTable();
+            strings.collect(model);
+            strings.writeTo(os);
+            writeNode(os, strings, model);
+        }
+        Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the model from a snapshot file, if it is present and matches the given configuration hash.
+     *
+     * @param snapshotFile the snapshot file
+     * @param configHash the content hash of the current XML configuration
+     * @return the model, or {@code null} if the snapshot is missing or stale
+     * @throws IOException if the snapshot exists but could not be read or is corrupt
+     */
+    public static ModelNode read(File snapshotFile, byte[] configHash) throws IOException {
+        if (! snapshotFile.isFile()) {
+            return null;
+        }
+        // the whole file is read up front, so that no length read from it can exceed what remains
+        try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(snapshotFile.toPath())))) {
+            if (is.readInt() != MAGIC || is.readUnsignedByte() != FORMAT_VERSION) {
+                return null;
+            }
+            final byte[] hash = new byte[is.readUnsignedByte()];
+            is.readFully(hash);
+            if (! Arrays.equals(hash, configHash)) {
+                return null;
+            }
+            final String[] strings = StringTable.readFrom(is);
+            return readNode(is, strings);
+        } catch (EOFException | RuntimeException e) {
+            // truncated, or an out-of-range string index or type
+            throw new IOException(MESSAGES.invalidBootSnapshot(snapshotFile), e);
+        }
+    }
+
+    /**
+     * Populate a builder from the snapshot if it is fresh, otherwise from the XML configuration.  A snapshot which
+     * cannot be read is logged and deleted, and the XML configuration is parsed instead.
+     *
+     * @param builder the builder to fill
+     * @param configFile the XML configuration file
+     * @param snapshotFile the snapshot file
+     * @param parser the XML parser to use if the snapshot is missing or stale
+     * @return {@code true} if the snapshot was used, {@code false} if the XML was parsed
+     * @throws IOException if the configuration file could not be read
+     * @throws XMLParseException if the XML is not properly formed or is not valid
+     */
+    static boolean fill(AbstractRootResourceBuilder<?> builder, File configFile, File snapshotFile, Parser parser) throws IOException, XMLParseException {
+        final byte[] configHash = hash(configFile);
+        ModelNode model;
+        try {
+            model = read(snapshotFile, configHash);
+        } catch (IOException e) {
+            ROOT_LOGGER.bootSnapshotDiscarded(e, snapshotFile);
+            // if it cannot be deleted, it is replaced when the configuration is next persisted
+            snapshotFile.delete();
+            model = null;
+        }
+        if (model != null) {
+            builder.fillFromModelNode(model);
+            return true;
+        }
+        try (InputStream is = new BufferedInputStream(new FileInputStream(configFile))) {
+            parser.fillFromXML(builder, is);
+        }
+        return false;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeNode(final DataOutput os, final StringTable strings, final ModelNode node) throws IOException {
+        final ModelType type = node.getType();
+        os.writeByte(type.ordinal());
+        switch (type) {
+            case UNDEFINED: {
+                break;
+            }
+            case BOOLEAN: {
+                os.writeBoolean(node.asBoolean());
+                break;
+            }
+            case INT: {
+                os.writeInt(node.asInt());
+                break;
+            }
+            case LONG: {
+                os.writeLong(node.asLong());
+                break;
+            }
+            case DOUBLE: {
+                os.writeDouble(node.asDouble());
+                break;
+            }
+            case BIG_INTEGER: {
+                writeBytes(os, node.asBigInteger().toByteArray());
+                break;
+            }
+            case BIG_DECIMAL: {
+                final BigDecimal value = node.asBigDecimal();
+                os.writeInt(value.scale());
+                writeBytes(os, value.unscaledValue().toByteArray());
+                break;
+            }
+            case BYTES: {
+                writeBytes(os, node.asBytes());
+                break;
+            }
+            case STRING:
+            case EXPRESSION: {
+                writeVarInt(os, strings.indexOf(node.asString()));
+                break;
+            }
+            case TYPE: {
+                writeVarInt(os, strings.indexOf(node.asType().name()));
+                break;
+            }
+            case PROPERTY: {
+                final Property property = node.asProperty();
+                writeVarInt(os, strings.indexOf(property.getName()));
+                writeNode(os, strings, property.getValue());
+                break;
+            }
+            case LIST: {
+                final List<ModelNode> list = node.asList();
+                writeVarInt(os, list.size());
+                for (ModelNode element : list) {
+                    writeNode(os, strings, element);
+                }
+                break;
+            }
+            case OBJECT: {
+                final List<Property> properties = node.asPropertyList();
+                writeVarInt(os, properties.size());
+                for (Property property : properties) {
+                    writeVarInt(os, strings.indexOf(property.getName()));
+                    writeNode(os, strings, property.getValue());
+                }
+                break;
+            }
+            default: {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static ModelNode readNode(final DataInputStream is, final String[] strings) throws IOException {
+        final ModelNode node = new ModelNode();
+        switch (TYPES[is.readUnsignedByte()]) {
+            case UNDEFINED: {
+                break;
+            }
+            case BOOLEAN: {
+                node.set(is.readBoolean());
+                break;
+            }
+            case INT: {
+                node.set(is.readInt());
+                break;
+            }
+            case LONG: {
+                node.set(is.readLong());
+                break;
+            }
+            case DOUBLE: {
+                node.set(is.readDouble());
+                break;
+            }
+            case BIG_INTEGER: {
+                node.set(new BigInteger(readBytes(is)));
+                break;
+            }
+            case BIG_DECIMAL: {
+                final int scale = is.readInt();
+                node.set(new BigDecimal(new BigInteger(readBytes(is)), scale));
+                break;
+            }
+            case BYTES: {
+                node.set(readBytes(is));
+                break;
+            }
+            case STRING: {
+                node.set(strings[readVarInt(is)]);
+                break;
+            }
+            case EXPRESSION: {
+                node.setExpression(strings[readVarInt(is)]);
+                break;
+            }
+            case TYPE: {
+                node.set(ModelType.valueOf(strings[readVarInt(is)]));
+                break;
+            }
+            case PROPERTY: {
+                final String name = strings[readVarInt(is)];
+                node.set(name, readNode(is, strings));
+                break;
+            }
+            case LIST: {
+                node.setEmptyList();
+                final int size = readLength(is);
+                for (int i = 0; i < size; i ++) {
+                    node.add(readNode(is, strings));
+                }
+                break;
+            }
+            case OBJECT: {
+                node.setEmptyObject();
+                final int size = readLength(is);
+                for (int i = 0; i < size; i ++) {
+                    final String name = strings[readVarInt(is)];
+                    node.get(name).set(readNode(is, strings));
+                }
+                break;
+            }
+            default: {
+                throw new IllegalStateException();
+            }
+        }
+        return node;
+    }
+
+    private static void writeBytes(final DataOutput os, final byte[] bytes) throws IOException {
+        writeVarInt(os, bytes.length);
+        os.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInputStream is) throws IOException {
+        final byte[] bytes = new byte[readLength(is)];
+        is.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read a byte or element count, which can be no greater than the number of bytes remaining.
+     *
+     * @param is the stream, which must be backed by an in-memory array
+     * @return the count
+     * @throws IOException if the count is out of range or could not be read
+     */
+    private static int readLength(final DataInputStream is) throws IOException {
+        final int length = readVarInt(is);
+        if (length < 0 || length > is.available()) {
+            throw new EOFException();
+        }
+        return length;
+    }
+
+    private static void writeVarInt(final DataOutput os, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            os.writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        os.writeByte(value);
+    }
+
+    private static int readVarInt(final DataInputStream is) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = is.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * The table of distinct strings in a model, in first-encounter order.
+     */
+    static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        void collect(final ModelNode node) {
+            switch (node.getType()) {
+                case STRING:
+                case EXPRESSION: {
+                    add(node.asString());
+                    break;
+                }
+                case TYPE: {
+                    add(node.asType().name());
+                    break;
+                }
+                case PROPERTY: {
+                    final Property property = node.asProperty();
+                    add(property.getName());
+                    collect(property.getValue());
+                    break;
+                }
+                case LIST: {
+                    for (ModelNode element : node.asList()) {
+                        collect(element);
+                    }
+                    break;
+                }
+                case OBJECT: {
+                    for (Property property : node.asPropertyList()) {
+                        add(property.getName());
+                        collect(property.getValue());
+                    }
+                    break;
+                }
+            }
+        }
+
+        private void add(final String string) {
+            if (! indexes.containsKey(string)) {
+                indexes.put(string, Integer.valueOf(strings.size()));
+                strings.add(string);
+            }
+        }
+
+        int indexOf(final String string) {
+            return indexes.get(string).intValue();
+        }
+
+        void writeTo(final DataOutput os) throws IOException {
+            writeVarInt(os, strings.size());
+            for (String string : strings) {
+                writeBytes(os, string.getBytes(UTF_8));
+            }
+        }
+
+        static String[] readFrom(final DataInputStream is) throws IOException {
+            final String[] strings = new String[readLength(is)];
+            for (int i = 0; i < strings.length; i ++) {
+                strings[i] = new String(readBytes(is), UTF_8);
+            }
+            return strings;
+        }
+    }
+}
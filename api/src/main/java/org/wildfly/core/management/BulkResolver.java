@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A resolver which resolves every unresolved node of a subtree in parallel on a fork-join pool.  Nodes are resolved
+ * independently of each other, and all of them share one memoizing resolution context, so an expression which
+ * appears in many nodes is resolved only once per walk.  Property values are therefore assumed not to change while
+ * a walk is in progress.
+ */
+public final class BulkResolver {
+
+    /**
+     * The number of nodes below which a range is resolved by the current task instead of being split.
+     */
+    private static final int THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param pool the fork-join pool to resolve on
+     */
+    public BulkResolver(final ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("pool"));
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Resolve every unresolved node at or beneath an address.
+     *
+     * @param snapshot the model snapshot to read the nodes from
+     * @param address the address of the subtree root
+     * @param context the resolution context
+     * @return the resolved nodes, keyed by address
+     * @throws IllegalStateException if the snapshot was closed
+     * @throws IllegalArgumentException if a node cannot be resolved
+     */
+    public Map<PathAddress, Node> resolveAll(ModelSnapshot snapshot, PathAddress address, CompiledExpressionResolutionContext context) throws IllegalStateException, IllegalArgumentException {
+        final ManagedSystem.State state = snapshot.getState();
+        final List<PathAddress> addresses = new ArrayList<>();
+        final List<Unresolved<?>> nodes = new ArrayList<>();
+        final AbstractMutableNode<?> top = address.size() == 0 ? state.getRootResource() : state.resolve(address);
+        if (top != null) {
+            // walk down from the subtree root only, rather than testing every address of the model
+            final ArrayDeque<AbstractMutableNode<?>> stack = new ArrayDeque<>();
+            stack.push(top);
+            while (! stack.isEmpty()) {
+                final AbstractMutableNode<?> mutableNode = stack.pop();
+                final Node node = state.getResource(mutableNode);
+                if (node instanceof Unresolved) {
+                    addresses.add(mutableNode.getAddress());
+                    nodes.add((Unresolved<?>) node);
+                }
+                for (AbstractMutableNode<?> child : state.getChildren(mutableNode)) {
+                    stack.push(child);
+                }
+            }
+        }
+        final Node[] resolved = resolve(nodes, context);
+        final Map<PathAddress, Node> results = new LinkedHashMap<>(addresses.size());
+        for (int i = 0; i < resolved.length; i ++) {
+            results.put(addresses.get(i), resolved[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Resolve a list of unresolved nodes.
+     *
+     * @param nodes the unresolved nodes
+     * @param context the resolution context
+     * @param <N> the resolved node type
+     * @return the resolved nodes, in the same order
+     * @throws IllegalArgumentException if a node cannot be resolved
+     */
+    public <N extends Node> List<N> resolveAll(List<? extends Unresolved<? extends N>> nodes, CompiledExpressionResolutionContext context) throws IllegalArgumentException {
+        final Node[] resolved = resolve(nodes, context);
+        final List<N> results = new ArrayList<>(resolved.length);
+        for (Node node : resolved) {
+            @SuppressWarnings("unchecked")
+            final N cast = (N) node;
+            results.add(cast);
+        }
+        return results;
+    }
+
+    private Node[] resolve(final List<? extends Unresolved<?>> nodes, final CompiledExpressionResolutionContext context) throws IllegalArgumentException {
+        if (context == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("context"));
+        }
+        final Node[] resolved = new Node[nodes.size()];
+        if (resolved.length > 0) {
+            pool.invoke(new ResolveTask(nodes, resolved, new MemoizingContext(context), 0, resolved.length));
+        }
+        return resolved;
+    }
+
+    @SuppressWarnings("serial")
+    static final class ResolveTask extends RecursiveAction {
+        private final List<? extends Unresolved<?>> nodes;
+        private final Node[] resolved;
+        private final MemoizingContext context;
+        private final int from;
+        private final int to;
+
+        ResolveTask(final List<? extends Unresolved<?>> nodes, final Node[] resolved, final MemoizingContext context, final int from, final int to) {
+            this.nodes = nodes;
+            this.resolved = resolved;
+            this.context = context;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i ++) {
+                    resolved[i] = nodes.get(i).getResolved(context);
+                }
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ResolveTask(nodes, resolved, context, from, mid), new ResolveTask(nodes, resolved, context, mid, to));
+            }
+        }
+    }
+
+    /**
+     * A resolution context which remembers the resolution of each expression string.  Resolutions are held as
+     * constant expressions, so typed resolutions of a remembered expression use its folded primitive values.
+     */
+    static final class MemoizingContext extends CompiledExpressionResolutionContext {
+        private final ConcurrentHashMap<String, CompiledExpression> resolutions = new ConcurrentHashMap<>();
+
+        MemoizingContext(final CompiledExpressionResolutionContext context) {
+            super(context);
+        }
+
+        public CompiledExpression compile(final String expressionString) throws IllegalArgumentException {
+            CompiledExpression resolution = resolutions.get(expressionString);
+            if (resolution == null) {
+                final CompiledExpression expression = super.compile(expressionString);
+                resolution = expression.isConstant() ? expression : CompiledExpression.constant(expression.resolveAsString(getPropertySource()));
+                final CompiledExpression appearing = resolutions.putIfAbsent(expressionString, resolution);
+                if (appearing != null) {
+                    resolution = appearing;
+                }
+            }
+            return resolution;
+        }
+    }
+}
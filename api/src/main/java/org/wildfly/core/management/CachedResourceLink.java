@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+/**
+ * A {@link ResourceLink} which caches the node it resolves to.  A link names a resource within a scope, such as the
+ * paths of {@code core.paths}, whose resources live under a common address.  The cached node is keyed by the state
+ * version it was resolved in; when the state changes, the cache is kept unless a commit since then wrote an address
+ * within the scope, so commits elsewhere in the model never cause a lookup.
+ *
+ * @param <R> the type of the linked resource
+ */
+public final class CachedResourceLink<R extends Node> implements ResourceLink<R> {
+
+    private final ManagedSystem system;
+    private final Class<R> resourceType;
+    private final PathAddress scope;
+    private final PathAddress address;
+    private final String name;
+    private volatile Resolution<R> resolution;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param system the managed system containing the linked resource
+     * @param resourceType the type of the linked resource
+     * @param scope the address under which the resources of the link's scope live
+     * @param key the path element key of the resources of the scope
+     * @param name the name of the linked resource
+     */
+    public CachedResourceLink(final ManagedSystem system, final Class<R> resourceType, final PathAddress scope, final String key, final String name) {
+        if (system == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("system"));
+        }
+        if (resourceType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("resourceType"));
+        }
+        if (scope == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("scope"));
+        }
+        if (key == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("key"));
+        }
+        if (name == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("name"));
+        }
+        this.system = system;
+        this.resourceType = resourceType;
+        this.scope = scope;
+        this.name = name;
+        address = scope.append(key, name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the address of the linked resource.
+     *
+     * @return the resource address
+     */
+    public PathAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the resource in the latest published state.
+     *
+     * @return the resource instance, or {@code null} if no such resource exists
+     * @throws ClassCastException if the resource is not of the link's resource type
+     */
+    public R get() {
+        final ManagedSystem.State state = system.getState();
+        final long version = state.getVersion();
+        final Resolution<R> cached = resolution;
+        if (cached != null) {
+            if (cached.version == version) {
+                return cached.node;
+            }
+            if (cached.version < version && ! system.getCommitLog().touches(cached.version, version, scope)) {
+                resolution = new Resolution<>(version, cached.node);
+                return cached.node;
+            }
+        }
+        final AbstractMutableNode<?> mutableNode = state.resolve(address);
+        final R node = mutableNode == null ? null : resourceType.cast(state.getResource(mutableNode));
+        resolution = new Resolution<>(version, node);
+        return node;
+    }
+
+    public String toString() {
+        return name;
+    }
+
+    static final class Resolution<R> {
+        private final long version;
+        private final R node;
+
+        Resolution(final long version, final R node) {
+            this.version = version;
+            this.node = node;
+        }
+    }
+}
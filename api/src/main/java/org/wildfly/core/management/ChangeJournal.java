@@ -0,0 +1,744 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementLogger.ROOT_LOGGER;
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * An append-only, write-ahead journal of committed model changes.  Each committed transaction costs one sequential
+ * append to a memory-mapped segment file, instead of a rewrite of the whole configuration.
+ * <p>
+ * The journal is written ahead of publication: a change record is appended before the transaction's state is
+ * published, and an abort record follows it if the transaction is then not published.  Periodically, a
+ * {@linkplain Checkpointer checkpoint} of the full model is written (for example, the XML configuration), after which
+ * the segments it covers are deleted.  On boot, the last checkpoint is loaded and the remaining records are
+ * {@linkplain #replay(ManagedSystem, ReplayHandler) replayed} on top of it.
+ * <p>
+ * Each record is laid out as a 4-byte length and a CRC-32 of the rest of the record, followed by the record type,
+ * sequence number and body.  The length is written last, but a memory-mapped segment may reach storage in any order,
+ * so a crash can still leave a record whose length is present but whose contents are not.  The checksum catches
+ * such a torn record: the first record which fails it marks the end of the journal, and it and anything after it
+ * are discarded when the journal is opened.
+ */
+public final class ChangeJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final byte RECORD_CHANGE = 1;
+    private static final byte RECORD_ABORT = 2;
+
+    private static final int FLAG_BEFORE = 1;
+    private static final int FLAG_AFTER = 2;
+
+    /**
+     * The size of the length and checksum which precede the checksummed part of each record.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final Object lock = new Object();
+
+    // all guarded by lock
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence;
+    private long bytesSinceCheckpoint;
+    private boolean checkpointing;
+    private boolean failed;
+    private boolean closed;
+    private ManagedSystem system;
+    private Checkpointer checkpointer;
+    private long checkpointThreshold;
+    private Executor checkpointExecutor;
+
+    private ChangeJournal(final File directory, final int segmentSize, final boolean sync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+    }
+
+    /**
+     * Open or create a journal in the given directory, with 64 MiB segments which are forced to storage on every
+     * append.
+     *
+     * @param directory the journal directory
+     * @return the journal
+     * @throws IOException if the journal could not be opened
+     */
+    public static ChangeJournal open(File directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * Open or create a journal in the given directory.
+     *
+     * @param directory the journal directory
+     * @param segmentSize the size of each segment file, in bytes
+     * @param sync {@code true} to force each appended record to storage before the transaction is published
+     * @return the journal
+     * @throws IOException if the journal could not be opened
+     */
+    public static ChangeJournal open(File directory, int segmentSize, boolean sync) throws IOException {
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException(MESSAGES.cannotCreateJournalDirectory(directory));
+        }
+        final ChangeJournal journal = new ChangeJournal(directory, segmentSize, sync);
+        synchronized (journal.lock) {
+            final File[] files = journal.listSegmentFiles();
+            for (int i = 0; i < files.length; i ++) {
+                final Segment segment = new Segment(files[i], segmentIndex(files[i]), 0);
+                journal.segments.addLast(segment);
+                final int end = journal.scan(segment, null, null);
+                segment.buffer.position(end);
+                segment.written = end;
+                if (segment.clearFrom(end)) {
+                    // a torn record is the end of the log; whatever follows it can not be replayed in order
+                    ROOT_LOGGER.journalTruncated(files[i], end);
+                    for (int j = i + 1; j < files.length; j ++) {
+                        if (! files[j].delete()) {
+                            throw new IOException(MESSAGES.cannotDeleteJournalSegment(files[j]));
+                        }
+                    }
+                    break;
+                }
+            }
+            if (journal.segments.isEmpty()) {
+                journal.roll(0);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Replay every journaled change which was not covered by a checkpoint and was not aborted, in sequence order.
+     *
+     * @param system the managed system being booted
+     * @param handler the replay handler
+     * @throws IOException if a segment could not be read
+     * @throws OperationFailedException if the handler failed to replay a change
+     */
+    public void replay(ManagedSystem system, ReplayHandler handler) throws IOException, OperationFailedException {
+        final List<Segment> segments;
+        final Set<Long> aborted = new HashSet<>();
+        synchronized (lock) {
+            segments = new ArrayList<>(this.segments);
+            for (Segment segment : segments) {
+                scan(segment, aborted, null);
+            }
+        }
+        final List<ChangeRecord> records = new ArrayList<>();
+        for (Segment segment : segments) {
+            synchronized (lock) {
+                // a segment deleted by a concurrent checkpoint is covered by it
+                if (! segment.closed) {
+                    scan(segment, aborted, records);
+                }
+            }
+            for (ChangeRecord record : records) {
+                handler.replay(system, record);
+            }
+            records.clear();
+        }
+    }
+
+    /**
+     * Configure automatic checkpointing.  Once at least {@code thresholdBytes} have been appended since the last
+     * checkpoint, a checkpoint is submitted to the given executor when the transaction whose change crossed the
+     * threshold is completed.  The submission is made without holding any journal lock and after that transaction's
+     * entry is complete, so the executor may also run the checkpoint directly in the submitting thread.
+     *
+     * @param system the managed system whose model is checkpointed
+     * @param checkpointer the checkpoint writer
+     * @param thresholdBytes the number of appended bytes which triggers a checkpoint
+     * @param executor the executor to write checkpoints on
+     */
+    public void setCheckpointPolicy(ManagedSystem system, Checkpointer checkpointer, long thresholdBytes, Executor executor) {
+        synchronized (lock) {
+            this.system = system;
+            this.checkpointer = checkpointer;
+            this.checkpointThreshold = thresholdBytes;
+            this.checkpointExecutor = executor;
+        }
+    }
+
+    /**
+     * Write a checkpoint now, unless one is already in progress.  Appends continue into a new segment while the
+     * checkpoint is written; the segments which it covers are deleted once it has been successfully written.
+     *
+     * @throws IOException if the checkpoint could not be written
+     * @throws IllegalStateException if no checkpoint policy was configured
+     */
+    public void checkpoint() throws IOException, IllegalStateException {
+        synchronized (lock) {
+            if (checkpointer == null) {
+                throw new IllegalStateException(MESSAGES.noCheckpointPolicy());
+            }
+            if (checkpointing) {
+                return;
+            }
+            checkpointing = true;
+        }
+        doCheckpoint();
+    }
+
+    /**
+     * Close this journal and unmap its segments.  Transactions which were already appended are waited for, so that
+     * the abort records of those which are abandoned are not lost.
+     *
+     * @throws IOException if a segment could not be closed
+     */
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            awaitCompletion(new ArrayList<>(segments));
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * Append the changes of a working state.
+     *
+     * @param operations the operations of the transaction
+     * @param working the working state
+     * @return the journal entry, which must be {@linkplain Entry#complete(boolean) completed} once the transaction
+     *      was published or abandoned
+     * @throws IOException if the record could not be appended
+     */
+    Entry append(final List<? extends Operation> operations, final WorkingState working) throws IOException {
+        // encode outside of the lock
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(operations.size());
+        for (Operation operation : operations) {
+            out.writeUTF(operation.getName());
+        }
+        final Set<AbstractMutableNode<?>> changed = working.getChangedNodes();
+        out.writeInt(changed.size());
+        for (AbstractMutableNode<?> mutableNode : changed) {
+            writeChange(out, mutableNode, working);
+        }
+        out.flush();
+        final byte[] body = bytes.toByteArray();
+        final Entry entry;
+        final int end;
+        synchronized (lock) {
+            checkWritable();
+            final long sequence = nextSequence ++;
+            final Segment segment = write(RECORD_CHANGE, sequence, body);
+            end = segment.buffer.position();
+            segment.pending ++;
+            bytesSinceCheckpoint += body.length;
+            entry = new Entry(segment, sequence);
+            if (checkpointer != null && ! checkpointing && bytesSinceCheckpoint >= checkpointThreshold) {
+                // submitted by complete(), once this entry no longer holds up the checkpoint
+                checkpointing = true;
+                entry.checkpoint = true;
+            }
+        }
+        if (sync) {
+            try {
+                entry.segment.sync(end);
+            } catch (IOException e) {
+                entry.complete(false);
+                throw e;
+            }
+        }
+        return entry;
+    }
+
+    private static <N extends Node> void writeChange(final DataOutputStream out, final AbstractMutableNode<N> mutableNode, final WorkingState working) throws IOException {
+        final PathAddress address = mutableNode.getAddress();
+        out.writeShort(address.size());
+        for (PathElement element : address) {
+            out.writeUTF(element.getKey());
+            out.writeUTF(element.getValue());
+        }
+        final N before = working.getOriginalNode(mutableNode);
+        final N after = working.getNode(mutableNode);
+        out.writeByte((before == null ? 0 : FLAG_BEFORE) | (after == null ? 0 : FLAG_AFTER));
+        if (before != null) {
+            before.toModelNode().writeExternal(out);
+        }
+        if (after != null) {
+            after.toModelNode().writeExternal(out);
+        }
+    }
+
+    private void submitCheckpoint() {
+        final Executor executor;
+        synchronized (lock) {
+            executor = checkpointExecutor;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        doCheckpoint();
+                    } catch (IOException ignored) {
+                        // the covered segments are kept, so nothing is lost; the next threshold crossing retries
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                checkpointing = false;
+            }
+            throw e;
+        }
+    }
+
+    private void doCheckpoint() throws IOException {
+        final List<Segment> covered;
+        final ManagedSystem system;
+        final Checkpointer checkpointer;
+        try {
+            synchronized (lock) {
+                checkWritable();
+                system = this.system;
+                checkpointer = this.checkpointer;
+                covered = new ArrayList<>(segments);
+                // new appends go to a fresh segment, which the checkpoint does not cover
+                roll(segmentSize);
+                bytesSinceCheckpoint = 0L;
+                awaitCompletion(covered);
+            }
+            try (ModelSnapshot snapshot = system.openSnapshot()) {
+                checkpointer.writeCheckpoint(snapshot);
+            }
+            synchronized (lock) {
+                for (Segment segment : covered) {
+                    segments.remove(segment);
+                    segment.close();
+                    if (! segment.file.delete()) {
+                        throw new IOException(MESSAGES.cannotDeleteJournalSegment(segment.file));
+                    }
+                }
+            }
+        } finally {
+            synchronized (lock) {
+                checkpointing = false;
+            }
+        }
+    }
+
+    /**
+     * Wait for the in-flight transactions in the given segments to be published or aborted.
+     *
+     * @param segments the segments
+     */
+    private void awaitCompletion(final List<Segment> segments) {
+        assert Thread.holdsLock(lock);
+        boolean intr = false;
+        try {
+            while (pending(segments) > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    intr = true;
+                }
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static int pending(final List<Segment> segments) {
+        int pending = 0;
+        for (Segment segment : segments) {
+            pending += segment.pending;
+        }
+        return pending;
+    }
+
+    private void checkWritable() throws IOException {
+        assert Thread.holdsLock(lock);
+        if (closed) {
+            throw new IOException(MESSAGES.journalClosed());
+        }
+        if (failed) {
+            throw new IOException(MESSAGES.journalFailed());
+        }
+    }
+
+    private Segment write(final byte type, final long sequence, final byte[] body) throws IOException {
+        assert Thread.holdsLock(lock);
+        final int length = 1 + 8 + body.length;
+        Segment segment = segments.getLast();
+        if (segment.buffer.remaining() < HEADER_SIZE + length) {
+            segment = roll(HEADER_SIZE + length);
+        }
+        final byte[] prefix = ByteBuffer.allocate(9).put(type).putLong(sequence).array();
+        final CRC32 crc = new CRC32();
+        crc.update(prefix);
+        crc.update(body);
+        final MappedByteBuffer buffer = segment.buffer;
+        final int position = buffer.position();
+        buffer.position(position + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(prefix);
+        buffer.put(body);
+        // publish the record by writing its length last
+        buffer.putInt(position, length);
+        segment.written = buffer.position();
+        return segment;
+    }
+
+    private Segment roll(final int minimumSize) throws IOException {
+        assert Thread.holdsLock(lock);
+        final long index = segments.isEmpty() ? 0L : segments.getLast().index + 1;
+        final File file = new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, Long.valueOf(index), SEGMENT_SUFFIX));
+        final Segment segment = new Segment(file, index, Math.max(segmentSize, minimumSize));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Scan the records of a segment, up to the end of the segment or the first record which is incomplete or fails its
+     * checksum.  The sequence counter is advanced past every record seen.
+     *
+     * @param segment the segment to scan
+     * @param aborted the set of aborted sequence numbers, to populate (if {@code records} is {@code null}) or to
+     *      consult (otherwise), or {@code null} to ignore aborts
+     * @param records the list to add the non-aborted change records to, or {@code null} to skip decoding
+     * @return the position of the end of the last record
+     * @throws IOException if a record could not be decoded
+     */
+    private int scan(final Segment segment, final Set<Long> aborted, final List<ChangeRecord> records) throws IOException {
+        assert Thread.holdsLock(lock);
+        final MappedByteBuffer buffer = segment.buffer;
+        final int limit = buffer.capacity();
+        final CRC32 crc = new CRC32();
+        int position = 0;
+        while (position + HEADER_SIZE <= limit) {
+            final int length = buffer.getInt(position);
+            if (length < 9 || position + HEADER_SIZE + length > limit) {
+                break;
+            }
+            final byte[] record = new byte[length];
+            copy(buffer, position + HEADER_SIZE, record);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            final ByteBuffer view = ByteBuffer.wrap(record);
+            final byte type = view.get();
+            final long sequence = view.getLong();
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (records == null) {
+                if (type == RECORD_ABORT && aborted != null) {
+                    aborted.add(Long.valueOf(view.getLong()));
+                }
+            } else if (type == RECORD_CHANGE && (aborted == null || ! aborted.contains(Long.valueOf(sequence)))) {
+                records.add(readChangeRecord(sequence, new DataInputStream(new ByteArrayInputStream(record, 9, length - 9))));
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void copy(final MappedByteBuffer buffer, final int position, final byte[] target) {
+        final ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(target);
+    }
+
+    private static ChangeRecord readChangeRecord(final long sequence, final DataInputStream in) throws IOException {
+        final int operationCount = in.readInt();
+        final String[] operationNames = new String[operationCount];
+        for (int i = 0; i < operationCount; i ++) {
+            operationNames[i] = in.readUTF();
+        }
+        final int changeCount = in.readInt();
+        final ChangeRecord.Change[] changes = new ChangeRecord.Change[changeCount];
+        for (int i = 0; i < changeCount; i ++) {
+            final int addressSize = in.readUnsignedShort();
+            final PathElement[] elements = new PathElement[addressSize];
+            for (int j = 0; j < addressSize; j ++) {
+                final String key = in.readUTF();
+                elements[j] = PathElement.pathElement(key, in.readUTF());
+            }
+            final int flags = in.readUnsignedByte();
+            final ModelNode before = (flags & FLAG_BEFORE) == 0 ? null : ModelNode.fromStream(in);
+            final ModelNode after = (flags & FLAG_AFTER) == 0 ? null : ModelNode.fromStream(in);
+            changes[i] = new ChangeRecord.Change(PathAddress.pathAddress(elements), before, after);
+        }
+        return new ChangeRecord(sequence, Collections.unmodifiableList(Arrays.asList(operationNames)), Collections.unmodifiableList(Arrays.asList(changes)));
+    }
+
+    private File[] listSegmentFiles() {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // the index is zero-padded, so name order is index order
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long segmentIndex(final File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * A journal entry for a transaction which has not yet been published.
+     */
+    final class Entry {
+        private final Segment segment;
+        private final long sequence;
+        /**
+         * {@code true} if this entry's change crossed the checkpoint threshold (guarded by the journal lock).
+         */
+        private boolean checkpoint;
+
+        Entry(final Segment segment, final long sequence) {
+            this.segment = segment;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Complete this entry.  If the transaction was not published, an abort record is appended so that the change
+         * is not replayed.  If the abort record cannot be written, the journal stops accepting changes, so that it
+         * never silently diverges from the published model.  If this entry's change crossed the checkpoint threshold,
+         * the checkpoint is submitted once the entry is complete.
+         *
+         * @param published {@code true} if the transaction was published
+         */
+        void complete(final boolean published) {
+            Segment abortSegment = null;
+            int abortEnd = 0;
+            final boolean checkpoint;
+            try {
+                if (! published) {
+                    synchronized (lock) {
+                        try {
+                            abortSegment = write(RECORD_ABORT, nextSequence ++, ByteBuffer.allocate(8).putLong(sequence).array());
+                            abortEnd = abortSegment.buffer.position();
+                        } catch (IOException e) {
+                            failed = true;
+                        }
+                    }
+                    if (sync && abortSegment != null) {
+                        // the abort record must reach storage before this entry stops holding up a checkpoint or close
+                        try {
+                            abortSegment.sync(abortEnd);
+                        } catch (IOException e) {
+                            synchronized (lock) {
+                                failed = true;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                synchronized (lock) {
+                    segment.pending --;
+                    lock.notifyAll();
+                    checkpoint = this.checkpoint;
+                    this.checkpoint = false;
+                }
+            }
+            if (checkpoint) {
+                submitCheckpoint();
+            }
+        }
+    }
+
+    static final class Segment {
+        private final File file;
+        private final long index;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final Object syncLock = new Object();
+        private int pending;
+        private boolean closed;
+        /**
+         * The end of the last record written to this segment.
+         */
+        private volatile int written;
+        /**
+         * The end of the records known to be on storage (guarded by {@code syncLock}).
+         */
+        private int synced;
+
+        Segment(final File file, final long index, final int size) throws IOException {
+            this.file = file;
+            this.index = index;
+            raf = new RandomAccessFile(file, "rw");
+            final FileChannel channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, Math.max((long) size, channel.size()));
+        }
+
+        /**
+         * Zero the segment from the given position to its end, if anything is there.
+         *
+         * @param position the end of the last valid record
+         * @return {@code true} if anything was cleared
+         */
+        boolean clearFrom(final int position) {
+            final int limit = buffer.capacity();
+            int i = position;
+            while (i < limit && buffer.get(i) == 0) {
+                i ++;
+            }
+            if (i == limit) {
+                return false;
+            }
+            for (i = position; i < limit; i ++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+            return true;
+        }
+
+        /**
+         * Force the records of this segment up to the given position to storage.  Concurrent callers are grouped: the
+         * first forces every record which was written when it started, and the others return as soon as a force
+         * covering their records has completed.  Only the pages dirtied since the last force are written, rather than
+         * the whole mapping.
+         *
+         * @param end the end of the caller's record
+         * @throws IOException if the segment could not be forced
+         */
+        void sync(final int end) throws IOException {
+            synchronized (syncLock) {
+                if (synced >= end) {
+                    return;
+                }
+                final int target = written;
+                // the mapping is shared, so the file's dirty pages include those written through the buffer
+                raf.getChannel().force(false);
+                synced = target;
+            }
+        }
+
+        void close() throws IOException {
+            closed = true;
+            try {
+                raf.close();
+            } finally {
+                unmap(buffer);
+            }
+        }
+
+        /**
+         * Release the mapping of a buffer now, rather than whenever it is collected, so that the segment file can be
+         * deleted (on some platforms) and its address space reclaimed.  This is best-effort: if the platform offers no
+         * way to do it, the mapping is left to the garbage collector.  The buffer must not be used afterwards.
+         *
+         * @param buffer the buffer to unmap
+         */
+        private static void unmap(final MappedByteBuffer buffer) {
+            try {
+                // Java 9 and later
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return;
+            } catch (Exception ignored) {
+            }
+            try {
+                // Java 8 and earlier
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * A writer for full model checkpoints.
+     */
+    public interface Checkpointer {
+
+        /**
+         * Write a checkpoint of the given model snapshot, such as the full XML configuration.  Once this method
+         * returns, every journaled change which the snapshot reflects may be discarded.
+         *
+         * @param snapshot the model snapshot
+         * @throws IOException if the checkpoint could not be written
+         */
+        void writeCheckpoint(ModelSnapshot snapshot) throws IOException;
+    }
+
+    /**
+     * A handler which applies journaled changes to a booting managed system.
+     */
+    public interface ReplayHandler {
+
+        /**
+         * Replay a change record.
+         *
+         * @param system the managed system
+         * @param record the change record
+         * @throws OperationFailedException if the change could not be replayed
+         */
+        void replay(ManagedSystem system, ChangeRecord record) throws OperationFailedException;
+    }
+}
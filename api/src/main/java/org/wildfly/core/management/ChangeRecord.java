@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.List;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A committed model change, as recorded in a {@link ChangeJournal}.  A change record holds the full values of every
+ * node which was changed by one transaction, so replaying the same record more than once is harmless.
+ */
+public final class ChangeRecord {
+
+    private final long sequence;
+    private final List<String> operationNames;
+    private final List<Change> changes;
+
+    ChangeRecord(final long sequence, final List<String> operationNames, final List<Change> changes) {
+        this.sequence = sequence;
+        this.operationNames = operationNames;
+        this.changes = changes;
+    }
+
+    /**
+     * Get the journal sequence number of this record.  Records are replayed in sequence order.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the names of the operations of the transaction which produced this change.
+     *
+     * @return the operation names, in execution order
+     */
+    public List<String> getOperationNames() {
+        return operationNames;
+    }
+
+    /**
+     * Get the changed nodes.
+     *
+     * @return the node changes
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * A change to a single node.
+     */
+    public static final class Change {
+        private final PathAddress address;
+        private final ModelNode before;
+        private final ModelNode after;
+
+        Change(final PathAddress address, final ModelNode before, final ModelNode after) {
+            this.address = address;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Get the address of the changed node.
+         *
+         * @return the node address
+         */
+        public PathAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * Get the value of the node before the change.
+         *
+         * @return the previous value, or {@code null} if the node was added
+         */
+        public ModelNode getBefore() {
+            return before;
+        }
+
+        /**
+         * Get the value of the node after the change.
+         *
+         * @return the new value, or {@code null} if the node was removed
+         */
+        public ModelNode getAfter() {
+            return after;
+        }
+    }
+}
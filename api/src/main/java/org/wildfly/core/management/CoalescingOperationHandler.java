@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * A model handler which describes the effect of its operations, so that redundant steps of a batch can be collapsed
+ * into their net effect before the batch is executed.  A write which is superseded by a later write of the same
+ * attribute at the same address is dropped, as is every write to a resource which is later removed in the batch, and
+ * a resource which is added and then removed by the same batch, with no step in between which touches it, is neither
+ * added nor removed.  Dropped steps are not applied, and are reported as successful with no result; they are still
+ * {@linkplain #validate(WorkingModel, AbstractMutableNode, Operation) validated} at their position in the batch, and
+ * a dropped add must not find an existing resource, so that dropping a step never lets a failing batch succeed.
+ * <p>
+ * Operations whose effect is {@link Effect#OTHER OTHER}, or whose handler does not implement this interface, are
+ * barriers: no step is coalesced across them.
+ *
+ * @param <P> the operation payload type
+ */
+public interface CoalescingOperationHandler<P extends Operation> extends ModelOperationHandler<P> {
+
+    /**
+     * Get the effect of an operation on the resource at its address.
+     *
+     * @param operation the operation
+     * @return the effect
+     */
+    Effect getEffect(P operation);
+
+    /**
+     * Get the name of the attribute written by an operation whose effect is {@link Effect#WRITE WRITE}.
+     *
+     * @param operation the operation
+     * @return the attribute name
+     */
+    String getWrittenAttribute(P operation);
+
+    /**
+     * The effect of an operation on the resource at its address.
+     */
+    enum Effect {
+        /**
+         * The operation adds the resource.
+         */
+        ADD,
+        /**
+         * The operation removes the resource, along with everything beneath it.
+         */
+        REMOVE,
+        /**
+         * The operation overwrites one attribute of the resource, regardless of its previous value.
+         */
+        WRITE,
+        /**
+         * The operation has some other effect, or reads the model.
+         */
+        OTHER,
+        ;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded log of the addresses written by recent commits, indexed by the state version each commit produced.  The
+ * log is used to detect whether a transaction overlaps any commit published after the state it was derived from.
+ */
+final class CommitLog {
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+
+    CommitLog(final int size) {
+        final int actualSize = Integer.highestOneBit(Math.max(1, size - 1) << 1);
+        entries = new AtomicReferenceArray<>(actualSize);
+        mask = actualSize - 1;
+    }
+
+    /**
+     * Record a published commit.
+     *
+     * @param version the version of the published state
+     * @param writes the addresses written by the commit
+     */
+    void record(final long version, final Set<PathAddress> writes) {
+        entries.set((int) version & mask, new Entry(version, writes));
+    }
+
+    /**
+     * Determine whether any commit in the given version range touched an address which overlaps the given read or
+     * write sets.  Two addresses overlap if one of them is equal to, or nested beneath, the other.  If a commit in
+     * the range is no longer (or not yet) available in the log, a conflict is conservatively reported.
+     *
+     * @param fromVersion the version the transaction started from (exclusive)
+     * @param toVersion the latest published version (inclusive)
+     * @param reads the transaction's read set
+     * @param writes the transaction's write set
+     * @return {@code true} if there may be a conflict, {@code false} if there is definitely none
+     */
+    boolean conflicts(final long fromVersion, final long toVersion, final Set<PathAddress> reads, final Set<PathAddress> writes) {
+        if (toVersion - fromVersion > mask) {
+            return true;
+        }
+        for (long version = fromVersion + 1; version <= toVersion; version ++) {
+            final Entry entry = entries.get((int) version & mask);
+            if (entry == null || entry.version != version) {
+                return true;
+            }
+            if (overlaps(entry.writes, writes) || overlaps(entry.writes, reads)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collect the addresses written by every commit after the given version, up to and including the given later
+     * version.
+     *
+     * @param fromVersion the version to start after
+     * @param toVersion the last version to include
+     * @param writes the set to add the written addresses to
+     * @return {@code true} if the full history was available, {@code false} if some of it was overwritten or not yet
+     *      recorded, in which case the collected set is incomplete
+     */
+    boolean collectWrites(final long fromVersion, final long toVersion, final Set<PathAddress> writes) {
+        if (toVersion - fromVersion > mask) {
+            return false;
+        }
+        for (long version = fromVersion + 1; version <= toVersion; version ++) {
+            final Entry entry = entries.get((int) version & mask);
+            if (entry == null || entry.version != version) {
+                return false;
+            }
+            writes.addAll(entry.writes);
+        }
+        return true;
+    }
+
+    /**
+     * Determine whether any commit after the given version, up to and including the given later version, wrote an
+     * address at, above, or below the given address.
+     *
+     * @param fromVersion the version to start after
+     * @param toVersion the last version to include
+     * @param address the address to check
+     * @return {@code true} if the address may have been affected, including when the history is unavailable
+     */
+    boolean touches(final long fromVersion, final long toVersion, final PathAddress address) {
+        return conflicts(fromVersion, toVersion, Collections.<PathAddress>emptySet(), Collections.singleton(address));
+    }
+
+    private static boolean overlaps(final Set<PathAddress> committed, final Set<PathAddress> addresses) {
+        for (PathAddress address : addresses) {
+            if (committed.contains(address)) {
+                return true;
+            }
+            for (PathAddress other : committed) {
+                if (address.startsWith(other) || other.startsWith(address)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static final class Entry {
+        private final long version;
+        private final Set<PathAddress> writes;
+
+        Entry(final long version, final Set<PathAddress> writes) {
+            this.version = version;
+            this.writes = writes;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An expression string which has been parsed once into a reusable form.  Expressions consist of literal text and
+ * property references of the form <code>${name}</code>, <code>${name1,name2}</code> (the first defined property is
+ * used) or <code>${name:default}</code>, where the default value may itself contain references; {@code $$} stands for
+ * a literal {@code $}.
+ * <p>
+ * An expression with no references is folded when it is compiled, so resolving it never parses its value again.  An
+ * expression which consists of a single reference is resolved to a primitive directly from the property value,
+ * without creating any intermediate string or boxed value.  Compiled expressions are immutable and thread-safe.
+ */
+public final class CompiledExpression {
+
+    private static final int FOLDED_LONG = 1;
+    private static final int FOLDED_DOUBLE = 2;
+    private static final int FOLDED_BOOLEAN = 4;
+
+    private final String expression;
+    /**
+     * The literal strings and references of the expression, with adjacent literals merged.
+     */
+    private final Object[] parts;
+    /**
+     * The value of the expression if it has no references, otherwise {@code null}.
+     */
+    private final String constant;
+    private final Set<String> referencedProperties;
+    private final int folded;
+    private final long foldedLong;
+    private final double foldedDouble;
+    private final boolean foldedBoolean;
+
+    private CompiledExpression(final String expression, final Object[] parts) {
+        this.expression = expression;
+        this.parts = parts;
+        if (parts.length == 0) {
+            constant = "";
+        } else if (parts.length == 1 && parts[0] instanceof String) {
+            constant = (String) parts[0];
+        } else {
+            constant = null;
+        }
+        if (constant != null) {
+            referencedProperties = Collections.emptySet();
+        } else {
+            final Set<String> names = new LinkedHashSet<>();
+            for (Object part : parts) {
+                if (part instanceof Reference) {
+                    ((Reference) part).addReferencedProperties(names);
+                }
+            }
+            referencedProperties = Collections.unmodifiableSet(names);
+        }
+        int folded = 0;
+        long foldedLong = 0L;
+        double foldedDouble = 0.0;
+        boolean foldedBoolean = false;
+        if (constant != null) {
+            try {
+                foldedLong = Long.parseLong(constant);
+                folded |= FOLDED_LONG;
+            } catch (NumberFormatException ignored) {
+            }
+            try {
+                foldedDouble = Double.parseDouble(constant);
+                folded |= FOLDED_DOUBLE;
+            } catch (NumberFormatException ignored) {
+            }
+            if (constant.equalsIgnoreCase("true") || constant.equalsIgnoreCase("false")) {
+                foldedBoolean = constant.equalsIgnoreCase("true");
+                folded |= FOLDED_BOOLEAN;
+            }
+        }
+        this.folded = folded;
+        this.foldedLong = foldedLong;
+        this.foldedDouble = foldedDouble;
+        this.foldedBoolean = foldedBoolean;
+    }
+
+    /**
+     * Compile an expression string.
+     *
+     * @param expression the expression string
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static CompiledExpression compile(String expression) throws IllegalArgumentException {
+        if (expression == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("expression"));
+        }
+        return new Parser(expression).parse(0, false);
+    }
+
+    /**
+     * Create a constant expression which resolves to the given value, whose primitive values are folded.
+     *
+     * @param value the value
+     * @return the constant expression
+     */
+    static CompiledExpression constant(final String value) {
+        return new CompiledExpression(value, value.isEmpty() ? new Object[0] : new Object[] { value });
+    }
+
+    /**
+     * Get the original expression string.
+     *
+     * @return the expression string
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Determine whether this expression has no property references, in which case it always resolves to the same
+     * value.
+     *
+     * @return {@code true} if the expression is constant
+     */
+    public boolean isConstant() {
+        return constant != null;
+    }
+
+    /**
+     * Get the names of every property which this expression may refer to, including those referenced only by default
+     * values.  The value of the expression can only change if one of these properties changes.
+     *
+     * @return the referenced property names
+     */
+    public Set<String> getReferencedProperties() {
+        return referencedProperties;
+    }
+
+    /**
+     * Resolve this expression as a string.
+     *
+     * @param source the property source
+     * @return the resolved value
+     * @throws IllegalArgumentException if a referenced property is not defined and has no default
+     */
+    public String resolveAsString(PropertySource source) throws IllegalArgumentException {
+        if (constant != null) {
+            return constant;
+        }
+        if (parts.length == 1) {
+            return ((Reference) parts[0]).resolveAsString(source, this);
+        }
+        final StringBuilder b = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                b.append((String) part);
+            } else {
+                b.append(((Reference) part).resolveAsString(source, this));
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Resolve this expression as an int.
+     *
+     * @param source the property source
+     * @return the resolved value
+     * @throws IllegalArgumentException if a referenced property is not defined and has no default
+     * @throws NumberFormatException if the resolved value is not a valid int
+     */
+    public int resolveAsInt(PropertySource source) throws IllegalArgumentException, NumberFormatException {
+        if (constant != null) {
+            if ((folded & FOLDED_LONG) != 0 && foldedLong == (int) foldedLong) {
+                return (int) foldedLong;
+            }
+            return Integer.parseInt(constant);
+        }
+        final Reference reference = singleReference();
+        if (reference != null) {
+            final String value = reference.lookup(source);
+            if (value != null) {
+                return Integer.parseInt(value);
+            }
+            return reference.getDefault(this).resolveAsInt(source);
+        }
+        return Integer.parseInt(resolveAsString(source));
+    }
+
+    /**
+     * Resolve this expression as a long.
+     *
+     * @param source the property source
+     * @return the resolved value
+     * @throws IllegalArgumentException if a referenced property is not defined and has no default
+     * @throws NumberFormatException if the resolved value is not a valid long
+     */
+    public long resolveAsLong(PropertySource source) throws IllegalArgumentException, NumberFormatException {
+        if (constant != null) {
+            if ((folded & FOLDED_LONG) != 0) {
+                return foldedLong;
+            }
+            return Long.parseLong(constant);
+        }
+        final Reference reference = singleReference();
+        if (reference != null) {
+            final String value = reference.lookup(source);
+            if (value != null) {
+                return Long.parseLong(value);
+            }
+            return reference.getDefault(this).resolveAsLong(source);
+        }
+        return Long.parseLong(resolveAsString(source));
+    }
+
+    /**
+     * Resolve this expression as a double.
+     *
+     * @param source the property source
+     * @return the resolved value
+     * @throws IllegalArgumentException if a referenced property is not defined and has no default
+     * @throws NumberFormatException if the resolved value is not a valid double
+     */
+    public double resolveAsDouble(PropertySource source) throws IllegalArgumentException, NumberFormatException {
+        if (constant != null) {
+            if ((folded & FOLDED_DOUBLE) != 0) {
+                return foldedDouble;
+            }
+            return Double.parseDouble(constant);
+        }
+        final Reference reference = singleReference();
+        if (reference != null) {
+            final String value = reference.lookup(source);
+            if (value != null) {
+                return Double.parseDouble(value);
+            }
+            return reference.getDefault(this).resolveAsDouble(source);
+        }
+        return Double.parseDouble(resolveAsString(source));
+    }
+
+    /**
+     * Resolve this expression as a boolean.  The resolved value must be {@code true} or {@code false}, ignoring case.
+     *
+     * @param source the property source
+     * @return the resolved value
+     * @throws IllegalArgumentException if a referenced property is not defined and has no default, or if the resolved
+     *      value is not a valid boolean
+     */
+    public boolean resolveAsBoolean(PropertySource source) throws IllegalArgumentException {
+        if (constant != null) {
+            if ((folded & FOLDED_BOOLEAN) != 0) {
+                return foldedBoolean;
+            }
+            return parseBoolean(constant);
+        }
+        final Reference reference = singleReference();
+        if (reference != null) {
+            final String value = reference.lookup(source);
+            if (value != null) {
+                return parseBoolean(value);
+            }
+            return reference.getDefault(this).resolveAsBoolean(source);
+        }
+        return parseBoolean(resolveAsString(source));
+    }
+
+    public String toString() {
+        return expression;
+    }
+
+    private Reference singleReference() {
+        return parts.length == 1 ? (Reference) parts[0] : null;
+    }
+
+    private static boolean parseBoolean(final String value) throws IllegalArgumentException {
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        } else if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException(MESSAGES.invalidBoolean(value));
+    }
+
+    static final class Reference {
+        private final String[] names;
+        private final CompiledExpression defaultValue;
+
+        Reference(final String[] names, final CompiledExpression defaultValue) {
+            this.names = names;
+            this.defaultValue = defaultValue;
+        }
+
+        void addReferencedProperties(final Set<String> names) {
+            Collections.addAll(names, this.names);
+            if (defaultValue != null) {
+                names.addAll(defaultValue.getReferencedProperties());
+            }
+        }
+
+        String lookup(final PropertySource source) {
+            for (String name : names) {
+                final String value = source.getProperty(name);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        CompiledExpression getDefault(final CompiledExpression expression) throws IllegalArgumentException {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException(MESSAGES.unresolvableExpression(expression.getExpression()));
+            }
+            return defaultValue;
+        }
+
+        String resolveAsString(final PropertySource source, final CompiledExpression expression) throws IllegalArgumentException {
+            final String value = lookup(source);
+            return value != null ? value : getDefault(expression).resolveAsString(source);
+        }
+    }
+
+    static final class Parser {
+        private final String expression;
+        private int pos;
+
+        Parser(final String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * Parse literal text and references up to the end of the expression or, if nested, up to the closing brace
+         * of the enclosing reference, which is not consumed.
+         */
+        CompiledExpression parse(final int start, final boolean nested) throws IllegalArgumentException {
+            final String expression = this.expression;
+            final int length = expression.length();
+            final List<Object> parts = new ArrayList<>();
+            final StringBuilder literal = new StringBuilder();
+            while (pos < length) {
+                final char c = expression.charAt(pos);
+                if (c == '$' && pos + 1 < length && expression.charAt(pos + 1) == '$') {
+                    literal.append('$');
+                    pos += 2;
+                } else if (c == '$' && pos + 1 < length && expression.charAt(pos + 1) == '{') {
+                    if (literal.length() > 0) {
+                        parts.add(literal.toString());
+                        literal.setLength(0);
+                    }
+                    pos += 2;
+                    parts.add(parseReference());
+                } else if (c == '}' && nested) {
+                    break;
+                } else {
+                    literal.append(c);
+                    pos ++;
+                }
+            }
+            if (nested && pos == length) {
+                throw new IllegalArgumentException(MESSAGES.invalidExpression(expression, pos));
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+            }
+            return new CompiledExpression(expression.substring(start, pos), parts.toArray());
+        }
+
+        private Reference parseReference() throws IllegalArgumentException {
+            final String expression = this.expression;
+            final int length = expression.length();
+            final List<String> names = new ArrayList<>(1);
+            int nameStart = pos;
+            for (;;) {
+                if (pos == length) {
+                    throw new IllegalArgumentException(MESSAGES.invalidExpression(expression, pos));
+                }
+                final char c = expression.charAt(pos);
+                if (c == ',' || c == ':' || c == '}') {
+                    if (pos == nameStart) {
+                        throw new IllegalArgumentException(MESSAGES.invalidExpression(expression, pos));
+                    }
+                    names.add(expression.substring(nameStart, pos));
+                    pos ++;
+                    if (c == ',') {
+                        nameStart = pos;
+                        continue;
+                    }
+                    CompiledExpression defaultValue = null;
+                    if (c == ':') {
+                        defaultValue = parse(pos, true);
+                        // parse() stops at the closing brace
+                        pos ++;
+                    }
+                    return new Reference(names.toArray(new String[names.size()]), defaultValue);
+                } else if (c == '$' || c == '{') {
+                    throw new IllegalArgumentException(MESSAGES.invalidExpression(expression, pos));
+                }
+                pos ++;
+            }
+        }
+    }
+}
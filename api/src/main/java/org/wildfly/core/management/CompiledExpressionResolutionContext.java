@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An expression resolution context which compiles each distinct expression string once, and resolves the compiled
+ * form against a property source.
+ *
+ * @see CompiledExpression
+ */
+public class CompiledExpressionResolutionContext implements ExpressionResolutionContext {
+
+    private final PropertySource source;
+    private final ConcurrentHashMap<String, CompiledExpression> compiled;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param source the property source to resolve against
+     */
+    public CompiledExpressionResolutionContext(final PropertySource source) {
+        if (source == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("source"));
+        }
+        this.source = source;
+        compiled = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Construct a new instance which shares the compiled expressions and property source of another context.
+     *
+     * @param other the other context
+     */
+    protected CompiledExpressionResolutionContext(final CompiledExpressionResolutionContext other) {
+        if (other == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("other"));
+        }
+        source = other.source;
+        compiled = other.compiled;
+    }
+
+    /**
+     * Get the property source of this context.
+     *
+     * @return the property source
+     */
+    public PropertySource getPropertySource() {
+        return source;
+    }
+
+    /**
+     * Get the compiled form of an expression string, compiling it if it has not been seen before.
+     *
+     * @param expressionString the expression string
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public CompiledExpression compile(final String expressionString) throws IllegalArgumentException {
+        CompiledExpression expression = compiled.get(expressionString);
+        if (expression == null) {
+            expression = CompiledExpression.compile(expressionString);
+            final CompiledExpression appearing = compiled.putIfAbsent(expressionString, expression);
+            if (appearing != null) {
+                expression = appearing;
+            }
+        }
+        return expression;
+    }
+
+    public String resolveAsString(final String expressionString) {
+        return compile(expressionString).resolveAsString(source);
+    }
+
+    public byte resolveAsByte(final String expressionString) {
+        final int value = compile(expressionString).resolveAsInt(source);
+        if (value != (byte) value) {
+            throw new NumberFormatException(expressionString);
+        }
+        return (byte) value;
+    }
+
+    public short resolveAsShort(final String expressionString) {
+        final int value = compile(expressionString).resolveAsInt(source);
+        if (value != (short) value) {
+            throw new NumberFormatException(expressionString);
+        }
+        return (short) value;
+    }
+
+    public int resolveAsInt(final String expressionString) {
+        return compile(expressionString).resolveAsInt(source);
+    }
+
+    public long resolveAsLong(final String expressionString) {
+        return compile(expressionString).resolveAsLong(source);
+    }
+
+    public float resolveAsFloat(final String expressionString) {
+        return Float.parseFloat(compile(expressionString).resolveAsString(source));
+    }
+
+    public double resolveAsDouble(final String expressionString) {
+        return compile(expressionString).resolveAsDouble(source);
+    }
+
+    public boolean resolveAsBoolean(final String expressionString) {
+        return compile(expressionString).resolveAsBoolean(source);
+    }
+
+    public BigInteger resolveAsBigInteger(final String expressionString) {
+        return new BigInteger(compile(expressionString).resolveAsString(source));
+    }
+
+    public BigDecimal resolveAsBigDecimal(final String expressionString) {
+        return new BigDecimal(compile(expressionString).resolveAsString(source));
+    }
+}
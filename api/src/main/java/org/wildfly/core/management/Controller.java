@@ -22,7 +22,7 @@ package org.wildfly.core.management;
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public interface Controller {
-    void transition(RunLevel runLevel, Object /* TODO */ transactionalContext);
+    void transition(RunLevel runLevel, Object /* TODO */ transactionalContext) throws OperationFailedException;
 
     RunLevel getRunLevel();
 }
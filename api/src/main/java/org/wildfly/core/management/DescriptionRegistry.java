@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The registry of resource descriptions, shared by every resource of the same type.
+ * <p>
+ * A description is built once per resource implementation class and is immutable
+ * ({@linkplain ModelNode#protect() protected}), so it can be handed out by reference rather than cloned for each
+ * resource.  A description is first looked up through the class loader of the resource class, as the class path
+ * resource {@code META-INF/descriptions/<fully qualified class name>.dmr} (at the root of the class path, not in the
+ * package of the class), in the binary DMR form written by the annotation processor; failing that, it is built from
+ * the first resource instance whose description is requested.
+ */
+public final class DescriptionRegistry {
+
+    // an absolute class loader resource name, shared by the descriptions of every package
+    private static final String RESOURCE_PREFIX = "META-INF/descriptions/";
+    private static final String RESOURCE_SUFFIX = ".dmr";
+
+    private static final ClassValue<AtomicReference<ModelNode>> DESCRIPTIONS = new ClassValue<AtomicReference<ModelNode>>() {
+        protected AtomicReference<ModelNode> computeValue(final Class<?> type) {
+            return new AtomicReference<>(load(type));
+        }
+    };
+
+    private DescriptionRegistry() {
+    }
+
+    /**
+     * Get the shared description of the given resource's type.
+     *
+     * @param resource the resource
+     * @return the shared, protected description
+     */
+    public static ModelNode getDescription(ResourceNode resource) {
+        if (resource == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("resource"));
+        }
+        if (resource instanceof AbstractMutableNode) {
+            resource = (ResourceNode) ((AbstractMutableNode<?>) resource).getCurrent();
+        }
+        final AtomicReference<ModelNode> ref = DESCRIPTIONS.get(resource.getClass());
+        final ModelNode existing = ref.get();
+        if (existing != null) {
+            return existing;
+        }
+        final ModelNode description = resource.describeResource().clone();
+        description.protect();
+        return ref.compareAndSet(null, description) ? description : ref.get();
+    }
+
+    /**
+     * Get the shared description of the given resource type, if it is already known or can be loaded.
+     *
+     * @param resourceType the resource implementation class
+     * @return the shared, protected description, or {@code null} if it is not yet available
+     */
+    public static ModelNode getDescription(Class<? extends ResourceNode> resourceType) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("resourceType"));
+        }
+        return DESCRIPTIONS.get(resourceType).get();
+    }
+
+    /**
+     * Get the shared descriptions of every resource which matches the given address.  The address may contain
+     * wildcard or multi-value elements, in which case every matching resource maps to the same description instance
+     * as the other resources of its type.  Matching resources are found by walking down from the root, one address
+     * element at a time, so only the children of resources which matched the preceding elements are examined.
+     *
+     * @param snapshot the model snapshot to describe
+     * @param address the address pattern
+     * @return the shared descriptions, keyed by resource address
+     * @throws IllegalStateException if the snapshot was closed
+     */
+    public static Map<PathAddress, ModelNode> describe(ModelSnapshot snapshot, PathAddress address) throws IllegalStateException {
+        final ManagedSystem.State state = snapshot.getState();
+        final Map<PathAddress, ModelNode> descriptions = new LinkedHashMap<>();
+        if (! address.isMultiTarget()) {
+            final AbstractMutableNode<?> mutableNode = state.resolve(address);
+            addDescription(descriptions, state, mutableNode);
+            return descriptions;
+        }
+        List<AbstractMutableNode<?>> matched = Collections.<AbstractMutableNode<?>>singletonList(state.getRootResource());
+        for (PathElement element : address) {
+            final List<AbstractMutableNode<?>> next = new ArrayList<>();
+            if (element.isMultiTarget()) {
+                // computed once per element rather than once per candidate
+                final String key = element.getKey().equals(PathElement.WILDCARD_VALUE) ? null : element.getKey();
+                final Set<String> values = element.isWildcard() ? null : new HashSet<>(Arrays.asList(element.getSegments()));
+                for (AbstractMutableNode<?> parent : matched) {
+                    for (AbstractMutableNode<?> child : state.getChildren(parent)) {
+                        final PathElement childElement = child.getAddress().getLastElement();
+                        if ((key == null || key.equals(childElement.getKey())) && (values == null || values.contains(childElement.getValue()))) {
+                            next.add(child);
+                        }
+                    }
+                }
+            } else {
+                for (AbstractMutableNode<?> parent : matched) {
+                    final AbstractMutableNode<?> child = state.resolve(parent.getAddress().append(element.getKey(), element.getValue()));
+                    if (child != null) {
+                        next.add(child);
+                    }
+                }
+            }
+            matched = next;
+        }
+        for (AbstractMutableNode<?> mutableNode : matched) {
+            addDescription(descriptions, state, mutableNode);
+        }
+        return descriptions;
+    }
+
+    private static void addDescription(final Map<PathAddress, ModelNode> descriptions, final ManagedSystem.State state, final AbstractMutableNode<?> mutableNode) {
+        if (mutableNode == null) {
+            return;
+        }
+        final Node node = state.getResource(mutableNode);
+        if (node instanceof ResourceNode) {
+            descriptions.put(mutableNode.getAddress(), getDescription((ResourceNode) node));
+        }
+    }
+
+    static ModelNode load(final Class<?> type) {
+        final ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null) {
+            return null;
+        }
+        try (InputStream stream = classLoader.getResourceAsStream(RESOURCE_PREFIX + type.getName() + RESOURCE_SUFFIX)) {
+            if (stream == null) {
+                return null;
+            }
+            final ModelNode description = ModelNode.fromStream(stream);
+            description.protect();
+            return description;
+        } catch (IOException e) {
+            // fall back to building it from an instance
+            return null;
+        }
+    }
+}
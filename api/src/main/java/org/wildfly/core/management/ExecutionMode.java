@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * The concurrency control mode used to execute operations on a {@link ManagedSystem}.
+ */
+public enum ExecutionMode {
+    /**
+     * Operations hold the write lock stripes covering their addresses while they execute.
+     */
+    LOCKING,
+    /**
+     * Operations execute without holding any lock.  The addresses read and written by each transaction are recorded,
+     * and the transaction commits only if no concurrent commit has written an overlapping address since the state it
+     * started from; otherwise, it is automatically retried.  A transaction which keeps conflicting is eventually
+     * executed in {@link #LOCKING} mode.
+     */
+    OPTIMISTIC,
+    ;
+}
@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A tracker of the properties referenced by the expressions of resolved nodes.  Each node resolved through the
+ * tracker is indexed by the properties its expressions refer to, so that when a property changes (for example a
+ * system property or a boot-time property), only the nodes which refer to it need to be resolved again.
+ * <p>
+ * Once {@linkplain #install(ManagedSystem) installed} in a managed system, the tracker forgets the nodes which
+ * committed changes replace or remove, so that it only retains the nodes of the published model.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ExpressionDependencyTracker {
+
+    private final CompiledExpressionResolutionContext context;
+    private final IdentityHashMap<Unresolved<?>, Entry> entries = new IdentityHashMap<>();
+    private final HashMap<String, Set<Unresolved<?>>> dependents = new HashMap<>();
+    /**
+     * Tracked nodes which a commit is replacing or removing, with their mutable nodes.  They are forgotten once the
+     * published state no longer holds them, and kept if the commit was not published after all.
+     */
+    private final IdentityHashMap<Unresolved<?>, AbstractMutableNode<?>> retiring = new IdentityHashMap<>();
+    private final ModelCommitListener commitListener = new ModelCommitListener() {
+        public void beforeCommit(final WorkingModel model) {
+            retire(model);
+        }
+    };
+    private volatile ManagedSystem system;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param context the resolution context, whose compiled expressions are shared by the tracker
+     */
+    public ExpressionDependencyTracker(final CompiledExpressionResolutionContext context) {
+        if (context == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("context"));
+        }
+        this.context = context;
+    }
+
+    /**
+     * Install this tracker in a managed system, so that tracked nodes are forgotten as commits replace or remove them.
+     *
+     * @param system the managed system
+     */
+    public void install(ManagedSystem system) {
+        if (system == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("system"));
+        }
+        this.system = system;
+        system.addCommitListener(commitListener);
+    }
+
+    /**
+     * Resolve a node and record the properties it depends on, replacing any previous record for the node.
+     *
+     * @param node the unresolved node
+     * @param <N> the resolved node type
+     * @return the resolved node
+     * @throws IllegalArgumentException if the node cannot be resolved
+     */
+    public <N extends Node> N resolve(Unresolved<N> node) throws IllegalArgumentException {
+        if (node == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("node"));
+        }
+        return resolve(node, false);
+    }
+
+    private <N extends Node> N resolve(final Unresolved<N> node, final boolean onlyIfTracked) throws IllegalArgumentException {
+        final RecordingContext recording = new RecordingContext(context);
+        final N resolved = node.getResolved(recording);
+        synchronized (this) {
+            if (onlyIfTracked && ! entries.containsKey(node)) {
+                // forgotten in the meantime
+                return null;
+            }
+            unindex(node);
+            entries.put(node, new Entry(resolved, recording.properties));
+            for (String name : recording.properties) {
+                Set<Unresolved<?>> set = dependents.get(name);
+                if (set == null) {
+                    dependents.put(name, set = Collections.newSetFromMap(new IdentityHashMap<Unresolved<?>, Boolean>()));
+                }
+                set.add(node);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Get the last resolution of a node which was resolved through this tracker.
+     *
+     * @param node the unresolved node
+     * @param <N> the resolved node type
+     * @return the resolved node, or {@code null} if the node is not tracked
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <N extends Node> N getResolved(Unresolved<N> node) {
+        final Entry entry = entries.get(node);
+        return entry == null ? null : (N) entry.resolved;
+    }
+
+    /**
+     * Stop tracking a node, for example because it was removed or replaced.
+     *
+     * @param node the unresolved node
+     */
+    public synchronized void forget(Unresolved<?> node) {
+        unindex(node);
+        retiring.remove(node);
+    }
+
+    /**
+     * Get the tracked nodes whose expressions refer to a property.
+     *
+     * @param propertyName the property name
+     * @return the dependent nodes
+     */
+    public synchronized Set<Unresolved<?>> getDependents(String propertyName) {
+        final Set<Unresolved<?>> set = dependents.get(propertyName);
+        if (set == null) {
+            return Collections.emptySet();
+        }
+        final Set<Unresolved<?>> copy = Collections.newSetFromMap(new IdentityHashMap<Unresolved<?>, Boolean>());
+        copy.addAll(set);
+        return copy;
+    }
+
+    /**
+     * Resolve again every tracked node which refers to any of the given properties.  Nodes which do not refer to
+     * the changed properties are not resolved.  A node which can no longer be resolved does not prevent the others
+     * from being resolved; its failure is reported in the result, and it remains tracked with its previous resolution.
+     *
+     * @param propertyNames the names of the changed properties
+     * @return the new resolutions and the failures of the affected nodes, excluding any node which was forgotten
+     *      meanwhile
+     */
+    public Result propertiesChanged(Collection<String> propertyNames) {
+        final List<Unresolved<?>> affected = new ArrayList<>();
+        synchronized (this) {
+            prune();
+            final Set<Unresolved<?>> seen = Collections.newSetFromMap(new IdentityHashMap<Unresolved<?>, Boolean>());
+            for (String name : propertyNames) {
+                final Set<Unresolved<?>> set = dependents.get(name);
+                if (set != null) {
+                    for (Unresolved<?> node : set) {
+                        if (seen.add(node)) {
+                            affected.add(node);
+                        }
+                    }
+                }
+            }
+        }
+        final Map<Unresolved<?>, Node> results = new IdentityHashMap<>(affected.size());
+        final Map<Unresolved<?>, IllegalArgumentException> failures = new IdentityHashMap<>();
+        for (Unresolved<?> node : affected) {
+            final Node resolved;
+            try {
+                resolved = resolve(node, true);
+            } catch (IllegalArgumentException e) {
+                failures.put(node, e);
+                continue;
+            }
+            if (resolved != null) {
+                results.put(node, resolved);
+            }
+        }
+        return new Result(results, failures);
+    }
+
+    /**
+     * The outcome of {@link #propertiesChanged(Collection)}.
+     */
+    public static final class Result {
+        private final Map<Unresolved<?>, Node> resolved;
+        private final Map<Unresolved<?>, IllegalArgumentException> failures;
+
+        Result(final Map<Unresolved<?>, Node> resolved, final Map<Unresolved<?>, IllegalArgumentException> failures) {
+            this.resolved = Collections.unmodifiableMap(resolved);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Get the new resolutions of the affected nodes which could be resolved.
+         *
+         * @return the resolved nodes, by unresolved node
+         */
+        public Map<Unresolved<?>, Node> getResolved() {
+            return resolved;
+        }
+
+        /**
+         * Get the affected nodes which could not be resolved.
+         *
+         * @return the resolution failures, by unresolved node
+         */
+        public Map<Unresolved<?>, IllegalArgumentException> getFailures() {
+            return failures;
+        }
+    }
+
+    private synchronized void retire(final WorkingModel model) {
+        prune();
+        for (AbstractMutableNode<?> mutableNode : model.getChangedNodes()) {
+            final Node original = model.getOriginalNode(mutableNode);
+            if (original instanceof Unresolved && entries.containsKey(original)) {
+                retiring.put((Unresolved<?>) original, mutableNode);
+            }
+        }
+    }
+
+    /**
+     * Forget the retiring nodes which the published state no longer holds.
+     */
+    private void prune() {
+        assert Thread.holdsLock(this);
+        final ManagedSystem system = this.system;
+        if (system == null || retiring.isEmpty()) {
+            return;
+        }
+        final ManagedSystem.State state = system.getState();
+        final Iterator<Map.Entry<Unresolved<?>, AbstractMutableNode<?>>> iterator = retiring.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Unresolved<?>, AbstractMutableNode<?>> entry = iterator.next();
+            if (state.getResource(entry.getValue()) != entry.getKey()) {
+                unindex(entry.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void unindex(final Unresolved<?> node) {
+        final Entry entry = entries.remove(node);
+        if (entry != null) {
+            for (String name : entry.properties) {
+                final Set<Unresolved<?>> set = dependents.get(name);
+                if (set != null) {
+                    set.remove(node);
+                    if (set.isEmpty()) {
+                        dependents.remove(name);
+                    }
+                }
+            }
+        }
+    }
+
+    static final class Entry {
+        private final Node resolved;
+        private final Set<String> properties;
+
+        Entry(final Node resolved, final Set<String> properties) {
+            this.resolved = resolved;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * A resolution context which records the properties referenced by the expressions it resolves.
+     */
+    static final class RecordingContext extends CompiledExpressionResolutionContext {
+        private final Set<String> properties = new HashSet<>();
+
+        RecordingContext(final CompiledExpressionResolutionContext context) {
+            super(context);
+        }
+
+        public CompiledExpression compile(final String expressionString) throws IllegalArgumentException {
+            final CompiledExpression expression = super.compile(expressionString);
+            properties.addAll(expression.getReferencedProperties());
+            return expression;
+        }
+    }
+}
@@ -18,6 +18,12 @@
 
 package org.wildfly.core.management;
 
+import java.io.IOException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.core.management.xml.XMLWriteException;
+
 /**
  * An operation result representing a failure.
  *
@@ -55,4 +61,39 @@ public final class FailedOperationResult implements OperationResult {
     public OperationStatus getStatus() {
         return OperationStatus.FAILURE;
     }
+
+    public ModelNode toModelNode() {
+        final ModelNode node = new ModelNode();
+        node.get("outcome").set("failed");
+        if (description != null) {
+            node.get("failure-description").set(description);
+        }
+        return node;
+    }
+
+    public void writeTo(final ModelSink sink) throws IOException {
+        sink.startObject();
+        sink.key("outcome");
+        sink.value("failed");
+        if (description != null) {
+            sink.key("failure-description");
+            sink.value(description);
+        }
+        sink.endObject();
+    }
+
+    public Node navigate(final PathElement pathElement) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void toXML(final XMLStreamWriter writer) throws XMLWriteException {
+        try {
+            writer.writeEmptyElement("failure");
+            if (description != null) {
+                writer.writeAttribute("description", description);
+            }
+        } catch (XMLStreamException e) {
+            throw new XMLWriteException(e);
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import org.wildfly.core.management.xml.XMLWriteException;
+
+/**
+ * A persister which writes the XML form of a managed system's model, re-serializing only the subtrees which changed
+ * since the last persisted state.
+ * <p>
+ * Changed nodes never share their instance with the previous state, while unchanged subtrees do.  The content written
+ * for each child node at one configured depth of
+ * {@link AbstractNode#writeChild(javax.xml.stream.XMLStreamWriter, Node)} nesting, such as the subsystems of a server
+ * profile, is kept, keyed by node identity; on the next pass, the content of every such child whose instance is
+ * unchanged, and which has no changed descendant, is spliced into the output as-is.  Changing a single logger level
+ * therefore re-emits only the logging subsystem and the markup of its ancestors.  Only one copy of the content at the
+ * configured depth is retained between passes, and the output itself is streamed to its target.
+ */
+public final class IncrementalXMLPersister {
+
+    /**
+     * The default fragment depth: the grandchildren of the root node, such as the subsystems of a profile.
+     */
+    public static final int DEFAULT_FRAGMENT_DEPTH = 2;
+
+    private final int fragmentDepth;
+    private ManagedSystem.State lastState;
+    private IdentityHashMap<Node, SplicingXMLStreamWriter.Fragment> fragments = new IdentityHashMap<>();
+    private int lastReusedCount;
+
+    /**
+     * Construct a new instance which keeps fragments at the {@linkplain #DEFAULT_FRAGMENT_DEPTH default depth}.
+     */
+    public IncrementalXMLPersister() {
+        this(DEFAULT_FRAGMENT_DEPTH);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param fragmentDepth the {@code writeChild} nesting depth at which content is kept for reuse, where the children
+     *      written by the root node are at depth 1
+     */
+    public IncrementalXMLPersister(int fragmentDepth) {
+        if (fragmentDepth < 1) {
+            throw new IllegalArgumentException(MESSAGES.invalidFragmentDepth(fragmentDepth));
+        }
+        this.fragmentDepth = fragmentDepth;
+    }
+
+    /**
+     * Write the model of the given snapshot as XML.
+     *
+     * @param snapshot the model snapshot to write
+     * @param writer the target writer
+     * @throws XMLWriteException if the model could not be written
+     * @throws IOException if writing to the target failed
+     */
+    public synchronized void persist(ModelSnapshot snapshot, Writer writer) throws XMLWriteException, IOException {
+        final ManagedSystem.State state = snapshot.getState();
+        final ResourceNode root = snapshot.getRootResource();
+        final SplicingXMLStreamWriter xml;
+        try {
+            xml = new SplicingXMLStreamWriter(writer, fragmentDepth, fragments, dirtyNodes(snapshot.getManagedSystem(), lastState, state));
+            xml.writeStartDocument();
+            root.toXML(xml);
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw XMLWriteException.toWriteException(e);
+        }
+        // only keep what the current output contains
+        fragments = xml.getFragments();
+        lastReusedCount = xml.getReusedCount();
+        lastState = state;
+    }
+
+    /**
+     * Write the model of the given snapshot to an XML configuration file, and write a binary boot snapshot which
+     * records the hash of that file's content.  The configuration is written to a temporary file which then replaces
+     * the target.
+     *
+     * @param snapshot the model snapshot to write
+     * @param configFile the XML configuration file
+     * @param snapshotFile the boot snapshot file
+     * @throws XMLWriteException if the model could not be written
+     * @throws IOException if writing either file failed
+     * @see BootSnapshot
+     */
+    public synchronized void persist(ModelSnapshot snapshot, File configFile, File snapshotFile) throws XMLWriteException, IOException {
+        final MessageDigest digest = BootSnapshot.newDigest();
+        final File tempFile = new File(configFile.getPath() + ".tmp");
+        boolean ok = false;
+        try (Writer writer = new OutputStreamWriter(new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)), digest), "UTF-8")) {
+            persist(snapshot, writer);
+            ok = true;
+        } finally {
+            if (! ok) {
+                // the output is streamed, so a failed pass leaves a partial file behind
+                tempFile.delete();
+            }
+        }
+        Files.move(tempFile.toPath(), configFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        BootSnapshot.write(snapshot, digest.digest(), snapshotFile);
+    }
+
+    /**
+     * Get the number of subtrees whose previous content was reused by the last call to
+     * {@link #persist(ModelSnapshot, Writer)}.
+     *
+     * @return the number of reused subtrees
+     */
+    public synchronized int getLastReusedCount() {
+        return lastReusedCount;
+    }
+
+    /**
+     * Determine the current node instances which may not be reused: every changed node, along with all of its
+     * ancestors, since an ancestor's previous content embeds the stale content of the changed node.
+     *
+     * @param system the managed system
+     * @param previous the last persisted state, or {@code null} if none
+     * @param current the state being persisted
+     * @return the set of dirty node instances
+     */
+    private static Set<Node> dirtyNodes(final ManagedSystem system, final ManagedSystem.State previous, final ManagedSystem.State current) {
+        if (previous == null) {
+            return Collections.emptySet();
+        }
+        final Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        // a removed node's parent must be re-emitted, which marking the removed node itself achieves
+        for (AbstractMutableNode<?> mutableNode : ModelDiff.compute(system, previous, current).getAffectedNodes()) {
+            markDirty(dirty, current, mutableNode);
+        }
+        return dirty;
+    }
+
+    private static void markDirty(final Set<Node> dirty, final ManagedSystem.State state, final AbstractMutableNode<?> mutableNode) {
+        AbstractMutableNode<?> current = mutableNode;
+        while (current != null) {
+            final Node node = state.getResource(current);
+            if (node != null && ! dirty.add(node)) {
+                // ancestors were already marked
+                return;
+            }
+            current = (AbstractMutableNode<?>) current.getParent();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A {@link ModelSink} which writes compact JSON to a character stream as the tokens arrive, using the same
+ * representation as {@code ModelNode.toJSONString()}.  Nothing is buffered beyond the underlying writer, so the
+ * memory needed to write a model is bounded by its depth rather than its size.
+ */
+public final class JSONModelSink implements ModelSink {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private final Writer writer;
+    // for each open container, whether a value was already written to it
+    private boolean[] nonEmpty = new boolean[16];
+    private int depth;
+    private boolean afterKey;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param writer the target writer
+     */
+    public JSONModelSink(final Writer writer) {
+        this.writer = writer;
+    }
+
+    public void startObject() throws IOException {
+        beforeValue();
+        writer.write('{');
+        push();
+    }
+
+    public void key(final String key) throws IOException {
+        if (nonEmpty[depth]) {
+            writer.write(", ");
+        }
+        nonEmpty[depth] = true;
+        writeString(key);
+        writer.write(" : ");
+        afterKey = true;
+    }
+
+    public void endObject() throws IOException {
+        depth --;
+        writer.write('}');
+    }
+
+    public void startList() throws IOException {
+        beforeValue();
+        writer.write('[');
+        push();
+    }
+
+    public void endList() throws IOException {
+        depth --;
+        writer.write(']');
+    }
+
+    public void startProperty(final String name) throws IOException {
+        startObject();
+        key(name);
+    }
+
+    public void endProperty() throws IOException {
+        endObject();
+    }
+
+    public void undefined() throws IOException {
+        beforeValue();
+        writer.write("null");
+    }
+
+    public void value(final String value) throws IOException {
+        beforeValue();
+        writeString(value);
+    }
+
+    public void expression(final String expression) throws IOException {
+        startObject();
+        key("EXPRESSION_VALUE");
+        value(expression);
+        endObject();
+    }
+
+    public void value(final boolean value) throws IOException {
+        beforeValue();
+        writer.write(value ? "true" : "false");
+    }
+
+    public void value(final int value) throws IOException {
+        beforeValue();
+        writer.write(Integer.toString(value));
+    }
+
+    public void value(final long value) throws IOException {
+        beforeValue();
+        writer.write(Long.toString(value));
+    }
+
+    public void value(final double value) throws IOException {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // JSON has no literal for these; quote them as DMR does
+            writer.write('"');
+            writer.write(Double.toString(value));
+            writer.write('"');
+        } else {
+            writer.write(Double.toString(value));
+        }
+    }
+
+    public void value(final BigInteger value) throws IOException {
+        beforeValue();
+        writer.write(value.toString());
+    }
+
+    public void value(final BigDecimal value) throws IOException {
+        beforeValue();
+        writer.write(value.toString());
+    }
+
+    public void value(final byte[] value) throws IOException {
+        startObject();
+        key("BYTES_VALUE");
+        beforeValue();
+        writer.write('"');
+        writeBase64(value);
+        writer.write('"');
+        endObject();
+    }
+
+    public void value(final ModelType value) throws IOException {
+        startObject();
+        key("TYPE_MODEL_VALUE");
+        value(value.name());
+        endObject();
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+        } else if (depth > 0) {
+            if (nonEmpty[depth]) {
+                writer.write(", ");
+            }
+            nonEmpty[depth] = true;
+        }
+    }
+
+    private void push() {
+        if (++ depth == nonEmpty.length) {
+            nonEmpty = Arrays.copyOf(nonEmpty, depth << 1);
+        }
+        nonEmpty[depth] = false;
+    }
+
+    private void writeString(final String string) throws IOException {
+        final Writer writer = this.writer;
+        writer.write('"');
+        final int length = string.length();
+        int start = 0;
+        for (int i = 0; i < length; i ++) {
+            final char c = string.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                writer.write(string, start, i - start);
+                start = i + 1;
+                switch (c) {
+                    case '"': writer.write("\\\""); break;
+                    case '\\': writer.write("\\\\"); break;
+                    case '\n': writer.write("\\n"); break;
+                    case '\r': writer.write("\\r"); break;
+                    case '\t': writer.write("\\t"); break;
+                    case '\b': writer.write("\\b"); break;
+                    case '\f': writer.write("\\f"); break;
+                    default: {
+                        writer.write("\\u00");
+                        writer.write(HEX[c >> 4]);
+                        writer.write(HEX[c & 0xf]);
+                    }
+                }
+            }
+        }
+        writer.write(string, start, length - start);
+        writer.write('"');
+    }
+
+    private void writeBase64(final byte[] bytes) throws IOException {
+        final Writer writer = this.writer;
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3) {
+            final int b = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | bytes[i + 2] & 0xff;
+            writer.write(BASE64[b >> 18]);
+            writer.write(BASE64[b >> 12 & 0x3f]);
+            writer.write(BASE64[b >> 6 & 0x3f]);
+            writer.write(BASE64[b & 0x3f]);
+        }
+        final int rem = bytes.length - i;
+        if (rem == 1) {
+            final int b = (bytes[i] & 0xff) << 16;
+            writer.write(BASE64[b >> 18]);
+            writer.write(BASE64[b >> 12 & 0x3f]);
+            writer.write("==");
+        } else if (rem == 2) {
+            final int b = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+            writer.write(BASE64[b >> 18]);
+            writer.write(BASE64[b >> 12 & 0x3f]);
+            writer.write(BASE64[b >> 6 & 0x3f]);
+            writer.write('=');
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.  Each bucket covers a power of two, so a percentile is accurate
+ * to within a factor of two, which is enough to tell where the time goes while keeping recording cheap.
+ */
+public final class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long old;
+        do {
+            old = max.get();
+        } while (value > old && ! max.compareAndSet(old, value));
+    }
+
+    /**
+     * Get the number of recorded latencies.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the sum of the recorded latencies.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    /**
+     * Get the largest recorded latency.
+     *
+     * @return the maximum time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Get an upper bound of the given percentile of the recorded latencies.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        final long count = getCount();
+        if (count == 0L) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        final long max = getMaxNanos();
+        long seen = 0L;
+        for (int i = 0; i < 64; i ++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(max, (1L << i) - 1L);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Get a DMR representation of this histogram.
+     *
+     * @return the model node
+     */
+    public ModelNode toModelNode() {
+        final ModelNode node = new ModelNode();
+        final long count = getCount();
+        node.get("count").set(count);
+        node.get("total-time").set(getTotalNanos());
+        node.get("mean-time").set(count == 0L ? 0L : getTotalNanos() / count);
+        node.get("max-time").set(getMaxNanos());
+        node.get("p50-time").set(getPercentileNanos(50.0));
+        node.get("p90-time").set(getPercentileNanos(90.0));
+        node.get("p99-time").set(getPercentileNanos(99.0));
+        return node;
+    }
+
+    void reset() {
+        for (int i = 0; i < buckets.length(); i ++) {
+            buckets.set(i, 0L);
+        }
+        count.set(0L);
+        total.set(0L);
+        max.set(0L);
+    }
+}
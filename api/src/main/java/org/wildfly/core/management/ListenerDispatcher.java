@@ -0,0 +1,401 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The runtime for {@link ResourceListener} and {@link AttributeListener} callbacks.
+ * <p>
+ * Listeners are indexed by the node type they were registered for, and attribute listeners additionally by attribute
+ * name, so dispatch only visits the listeners which match a change.  Notifications are derived from the
+ * {@linkplain ModelDiff difference} between the states before and after a transaction rather than from its individual
+ * steps, so any number of updates to the same attribute within one transaction result in a single
+ * {@code attributeUpdated} call carrying the original and final values.
+ * <p>
+ * Removals are delivered first, deepest resources first, and then additions and changes, shallowest resources first.
+ * Resources at the same depth do not depend on each other, so their notifications are delivered in parallel when an
+ * executor is given; the notifications for any single resource are always delivered in order by one thread.
+ * <p>
+ * A dispatcher which was constructed with a {@link ContextFactory} may be
+ * {@linkplain ManagedSystem#setListenerDispatcher(ListenerDispatcher) installed} in a managed system, in which case
+ * the changes of every transaction are dispatched before the transaction is published.
+ */
+public final class ListenerDispatcher {
+
+    private final ConcurrentHashMap<Class<?>, CopyOnWriteArrayList<ResourceListener<?>>> resourceListeners = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, CopyOnWriteArrayList<AttributeListener<?, ModelNode>>>> attributeListeners = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, Binding> bindings = new ConcurrentHashMap<>();
+    /**
+     * Incremented after every change to the registered listeners; bindings built from an older generation are stale.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ContextFactory contextFactory;
+    private final Executor executor;
+
+    /**
+     * Construct a new instance for explicit dispatch only.
+     */
+    public ListenerDispatcher() {
+        contextFactory = null;
+        executor = null;
+    }
+
+    /**
+     * Construct a new instance which may be installed in a managed system.
+     *
+     * @param contextFactory the factory for the change contexts of each transaction
+     * @param executor the executor for parallel delivery, or {@code null} to deliver from the calling thread
+     */
+    public ListenerDispatcher(final ContextFactory contextFactory, final Executor executor) {
+        if (contextFactory == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("contextFactory"));
+        }
+        this.contextFactory = contextFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * A source of change contexts.
+     */
+    public interface ContextFactory {
+
+        /**
+         * Create the change context for the dispatch of a transaction.  The context is shared by every listener of
+         * the transaction, which may run concurrently.
+         *
+         * @param model the working model about to be published
+         * @return the change context
+         */
+        ModelChangeContext begin(WorkingModel model);
+
+        /**
+         * Finish the dispatch of a transaction.
+         *
+         * @param context the context returned by {@link #begin(WorkingModel)}
+         * @throws OperationFailedException if the problems reported to the context should fail the transaction
+         */
+        void end(ModelChangeContext context) throws OperationFailedException;
+    }
+
+    boolean hasContextFactory() {
+        return contextFactory != null;
+    }
+
+    /**
+     * Register a listener for resources of the given node type or any of its subtypes.
+     *
+     * @param nodeType the node type
+     * @param listener the listener
+     * @param <R> the node type
+     */
+    public <R extends Node> void addResourceListener(Class<R> nodeType, ResourceListener<? super R> listener) {
+        if (nodeType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("nodeType"));
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("listener"));
+        }
+        CopyOnWriteArrayList<ResourceListener<?>> list = resourceListeners.get(nodeType);
+        if (list == null) {
+            final CopyOnWriteArrayList<ResourceListener<?>> appearing = resourceListeners.putIfAbsent(nodeType, list = new CopyOnWriteArrayList<>());
+            if (appearing != null) {
+                list = appearing;
+            }
+        }
+        list.add(listener);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Remove a previously registered resource listener.
+     *
+     * @param nodeType the node type the listener was registered for
+     * @param listener the listener
+     * @param <R> the node type
+     */
+    public <R extends Node> void removeResourceListener(Class<R> nodeType, ResourceListener<? super R> listener) {
+        final CopyOnWriteArrayList<ResourceListener<?>> list = resourceListeners.get(nodeType);
+        if (list != null && list.remove(listener)) {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Register a listener for an attribute of resources of the given node type or any of its subtypes.
+     *
+     * @param nodeType the node type
+     * @param attributeName the attribute name
+     * @param listener the listener
+     * @param <R> the node type
+     */
+    public <R extends Node> void addAttributeListener(Class<R> nodeType, String attributeName, AttributeListener<? super R, ModelNode> listener) {
+        if (nodeType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("nodeType"));
+        }
+        if (attributeName == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("attributeName"));
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("listener"));
+        }
+        ConcurrentHashMap<String, CopyOnWriteArrayList<AttributeListener<?, ModelNode>>> map = attributeListeners.get(nodeType);
+        if (map == null) {
+            final ConcurrentHashMap<String, CopyOnWriteArrayList<AttributeListener<?, ModelNode>>> appearing = attributeListeners.putIfAbsent(nodeType, map = new ConcurrentHashMap<>());
+            if (appearing != null) {
+                map = appearing;
+            }
+        }
+        CopyOnWriteArrayList<AttributeListener<?, ModelNode>> list = map.get(attributeName);
+        if (list == null) {
+            final CopyOnWriteArrayList<AttributeListener<?, ModelNode>> appearing = map.putIfAbsent(attributeName, list = new CopyOnWriteArrayList<>());
+            if (appearing != null) {
+                list = appearing;
+            }
+        }
+        list.add(listener);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Remove a previously registered attribute listener.
+     *
+     * @param nodeType the node type the listener was registered for
+     * @param attributeName the attribute name
+     * @param listener the listener
+     * @param <R> the node type
+     */
+    public <R extends Node> void removeAttributeListener(Class<R> nodeType, String attributeName, AttributeListener<? super R, ModelNode> listener) {
+        final ConcurrentHashMap<String, CopyOnWriteArrayList<AttributeListener<?, ModelNode>>> map = attributeListeners.get(nodeType);
+        if (map != null) {
+            final CopyOnWriteArrayList<AttributeListener<?, ModelNode>> list = map.get(attributeName);
+            if (list != null && list.remove(listener)) {
+                generation.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Deliver the notifications for the changes between two snapshots, typically the states before and after a
+     * transaction.  Listener failures are reported to the context and do not prevent delivery to other listeners.
+     * This method returns once every notification has been delivered.
+     *
+     * @param context the change context to pass to listeners; it must tolerate concurrent use if an executor is given
+     * @param from the earlier snapshot
+     * @param to the later snapshot
+     * @param executor the executor for parallel delivery, or {@code null} to deliver every notification from the
+     *      calling thread
+     */
+    public void dispatch(ModelChangeContext context, ModelSnapshot from, ModelSnapshot to, Executor executor) {
+        dispatch(context, ModelDiff.between(from, to), executor);
+    }
+
+    /**
+     * Deliver the notifications for the changes of a model difference.  Listener failures are reported to the context
+     * and do not prevent delivery to other listeners.  This method returns once every notification has been delivered.
+     *
+     * @param context the change context to pass to listeners; it must tolerate concurrent use if an executor is given
+     * @param diff the model difference
+     * @param executor the executor for parallel delivery, or {@code null} to deliver every notification from the
+     *      calling thread
+     */
+    public void dispatch(ModelChangeContext context, ModelDiff diff, Executor executor) {
+        if (context == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("context"));
+        }
+        if (diff == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("diff"));
+        }
+        final TreeMap<Integer, List<Delivery>> removals = new TreeMap<>(Collections.reverseOrder());
+        final TreeMap<Integer, List<Delivery>> updates = new TreeMap<>();
+        for (ModelDiff.ResourceChange change : diff.getAllChanges()) {
+            final Binding binding = getBinding(change.getMutableNode().getNodeType());
+            if (binding.isEmpty()) {
+                continue;
+            }
+            final TreeMap<Integer, List<Delivery>> waves = change.getAfter() == null ? removals : updates;
+            final Integer depth = Integer.valueOf(change.getAddress().size());
+            List<Delivery> wave = waves.get(depth);
+            if (wave == null) {
+                waves.put(depth, wave = new ArrayList<>());
+            }
+            wave.add(new Delivery(context, change, binding));
+        }
+        boolean intr = false;
+        try {
+            for (List<Delivery> wave : removals.values()) {
+                intr |= ParallelTasks.runAll(wave, executor);
+            }
+            for (List<Delivery> wave : updates.values()) {
+                intr |= ParallelTasks.runAll(wave, executor);
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Deliver the notifications for the changes of a working state, using the context factory of this dispatcher.
+     *
+     * @param working the working state about to be published
+     * @throws OperationFailedException if the context factory fails the transaction
+     */
+    void dispatch(final WorkingState working) throws OperationFailedException {
+        final ModelDiff diff = ModelDiff.of(working);
+        if (diff.isEmpty()) {
+            return;
+        }
+        final ModelChangeContext context = contextFactory.begin(working);
+        dispatch(context, diff, executor);
+        contextFactory.end(context);
+    }
+
+    private Binding getBinding(final Class<?> nodeType) {
+        // read the generation before the listeners, so that a binding is never newer than its generation claims
+        final int generation = this.generation.get();
+        Binding binding = bindings.get(nodeType);
+        if (binding == null || binding.generation != generation) {
+            binding = new Binding(nodeType, generation);
+            bindings.put(nodeType, binding);
+        }
+        return binding;
+    }
+
+    /**
+     * The listeners which apply to one concrete node type.
+     */
+    final class Binding {
+        private final int generation;
+        private final List<ResourceListener<Object>> resourceListeners;
+        private final Map<String, List<AttributeListener<Object, ModelNode>>> attributeListeners;
+
+        @SuppressWarnings("unchecked")
+        Binding(final Class<?> nodeType, final int generation) {
+            this.generation = generation;
+            final List<ResourceListener<Object>> resources = new ArrayList<>();
+            for (Map.Entry<Class<?>, CopyOnWriteArrayList<ResourceListener<?>>> entry : ListenerDispatcher.this.resourceListeners.entrySet()) {
+                if (entry.getKey().isAssignableFrom(nodeType)) {
+                    for (ResourceListener<?> listener : entry.getValue()) {
+                        resources.add((ResourceListener<Object>) listener);
+                    }
+                }
+            }
+            final Map<String, List<AttributeListener<Object, ModelNode>>> attributes = new HashMap<>();
+            for (Map.Entry<Class<?>, ConcurrentHashMap<String, CopyOnWriteArrayList<AttributeListener<?, ModelNode>>>> entry : ListenerDispatcher.this.attributeListeners.entrySet()) {
+                if (entry.getKey().isAssignableFrom(nodeType)) {
+                    for (Map.Entry<String, CopyOnWriteArrayList<AttributeListener<?, ModelNode>>> byName : entry.getValue().entrySet()) {
+                        List<AttributeListener<Object, ModelNode>> list = attributes.get(byName.getKey());
+                        if (list == null) {
+                            attributes.put(byName.getKey(), list = new ArrayList<>());
+                        }
+                        for (AttributeListener<?, ModelNode> listener : byName.getValue()) {
+                            list.add((AttributeListener<Object, ModelNode>) listener);
+                        }
+                    }
+                }
+            }
+            resourceListeners = resources;
+            attributeListeners = attributes;
+        }
+
+        boolean isEmpty() {
+            return resourceListeners.isEmpty() && attributeListeners.isEmpty();
+        }
+    }
+
+    /**
+     * The notifications for a single resource.
+     */
+    static final class Delivery implements Runnable {
+        private final ModelChangeContext context;
+        private final ModelDiff.ResourceChange change;
+        private final Binding binding;
+
+        Delivery(final ModelChangeContext context, final ModelDiff.ResourceChange change, final Binding binding) {
+            this.context = context;
+            this.change = change;
+            this.binding = binding;
+        }
+
+        public void run() {
+            final Node before = change.getBefore();
+            final Node after = change.getAfter();
+            for (ResourceListener<Object> listener : binding.resourceListeners) {
+                try {
+                    if (before == null) {
+                        listener.resourceAdded(context, after);
+                    } else if (after == null) {
+                        listener.resourceRemoved(context, before);
+                    } else {
+                        listener.resourceChanged(context, before, after);
+                    }
+                } catch (Throwable t) {
+                    context.addProblem(MESSAGES.listenerFailed(change.getAddress()), t);
+                }
+            }
+            if (binding.attributeListeners.isEmpty()) {
+                return;
+            }
+            final Map<String, ModelDiff.AttributeChange> attributes;
+            try {
+                attributes = change.getChangedAttributes();
+            } catch (Throwable t) {
+                context.addProblem(MESSAGES.listenerFailed(change.getAddress()), t);
+                return;
+            }
+            for (Map.Entry<String, List<AttributeListener<Object, ModelNode>>> entry : binding.attributeListeners.entrySet()) {
+                final ModelDiff.AttributeChange attribute = attributes.get(entry.getKey());
+                if (attribute == null) {
+                    continue;
+                }
+                final String name = attribute.getName();
+                final ModelNode oldValue = attribute.getBefore();
+                final ModelNode newValue = attribute.getAfter();
+                for (AttributeListener<Object, ModelNode> listener : entry.getValue()) {
+                    try {
+                        if (! oldValue.isDefined()) {
+                            listener.attributeAdded(context, before, after, name, newValue);
+                        } else if (! newValue.isDefined()) {
+                            listener.attributeRemoved(context, before, after, name, oldValue);
+                        } else {
+                            listener.attributeUpdated(context, before, after, name, oldValue, newValue);
+                        }
+                    } catch (Throwable t) {
+                        context.addProblem(MESSAGES.listenerFailed(change.getAddress()), t);
+                    }
+                }
+            }
+        }
+    }
+}
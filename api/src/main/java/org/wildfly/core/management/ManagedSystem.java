@@ -18,7 +18,18 @@
 
 package org.wildfly.core.management;
 
-import java.util.IdentityHashMap;
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import org.jboss.msc.txn.CancellableContext;
 
 /**
  * A managed system.
@@ -39,72 +50,517 @@ public final class ManagedSystem {
      */
     private final AbstractMutableResourceNode<?> rootResource;
 
-    private final Object lock = new Object();
+    /**
+     * The model write lock, striped by address prefix.
+     */
+    private final StripedModelLock lock = new StripedModelLock(Runtime.getRuntime().availableProcessors() * 4);
+
+    private final ConcurrentHashMap<String, ModelOperationHandler<?>> operationHandlers = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<ModelCommitListener> commitListeners = new CopyOnWriteArrayList<>();
+
+    private final OperationPipeline pipeline = new OperationPipeline(this);
+
+    private final CommitLog commitLog = new CommitLog(1024);
+
+    private final ReferenceIndex referenceIndex = new ReferenceIndex(this);
+
+    private final RunLevelScheduler scheduler = new RunLevelScheduler(RunLevelScheduler.sharedExecutor());
+
+    private final OperationMetrics metrics = new OperationMetrics();
+
+    private final CopyOnWriteArrayList<OperationMetricsListener> metricsListeners = new CopyOnWriteArrayList<>();
 
     // Mutable state
 
     private volatile State state = new State();
 
+    private volatile ExecutionMode executionMode = ExecutionMode.LOCKING;
+
+    private volatile ChangeJournal changeJournal;
+    private volatile ValidatorEngine validatorEngine;
+    private volatile ListenerDispatcher listenerDispatcher;
+
+    private static final AtomicReferenceFieldUpdater<ManagedSystem, State> stateUpdater = AtomicReferenceFieldUpdater.newUpdater(ManagedSystem.class, State.class, "state");
+
     ManagedSystem(final String rootPathKey, final AbstractMutableResourceNode<?> rootResource) {
         this.rootPathKey = rootPathKey;
         this.rootResource = rootResource;
+        operationHandlers.put(OperationMetrics.READ_OPERATION_NAME, new OperationMetrics.ReadHandler(metrics));
     }
 
     public RunLevel getRunLevel() {
         return state.getRunLevel();
     }
 
+    /**
+     * Get the version of the currently published state.  Every published change increments the version.
+     *
+     * @return the current state version
+     */
+    public long getVersion() {
+        return state.getVersion();
+    }
+
+    /**
+     * Open a read-only snapshot of the current model state.  All nodes resolved through the snapshot belong to the
+     * same state version, regardless of any changes which are published after the snapshot was opened.  Opening
+     * and reading a snapshot never blocks, and is never blocked by, concurrent writers.
+     *
+     * @return the snapshot, which should be closed when it is no longer needed
+     */
+    public ModelSnapshot openSnapshot() {
+        return new ModelSnapshot(this, state);
+    }
+
+    /**
+     * Execute a single operation.  The operation is resolved, validated and applied to a working copy of the current
+     * state; if the commit listeners accept the change, the working copy is published as the new state.
+     *
+     * @param operation the operation to execute
+     * @return the operation result
+     */
     public OperationResult executeOperation(Operation operation) {
-        return null;
+        return pipeline.execute(Collections.singletonList(operation)).get(0);
+    }
+
+    /**
+     * Begin a bulk import of resources beneath an existing resource.  The imported resources are published as a
+     * single transaction when the import is {@linkplain ResourceImport#commit() committed}, which makes loading tens
+     * of thousands of resources much cheaper than adding them one at a time.
+     *
+     * @param parentAddress the address of the resource to import beneath
+     * @param expectedSize the expected number of imported nodes, used to size the import
+     * @return the new import
+     */
+    public ResourceImport beginImport(PathAddress parentAddress, int expectedSize) {
+        if (parentAddress == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("parentAddress"));
+        }
+        return new ResourceImport(this, parentAddress, expectedSize);
     }
 
-    public boolean changeRunLevel(RunLevel oldLevel, RunLevel newLevel) {
-        throw new UnsupportedOperationException();
+    /**
+     * Execute a batch of operations as a single transaction.  Every step is applied to the same working copy of the
+     * current state, and the result is published once, only if every step succeeds.  If any step fails, no change is
+     * published, and every step which was not itself the cause of the failure is reported as rolled back.  Redundant
+     * steps are collapsed into their net effect before the batch is executed (see {@link CoalescingOperationHandler}).
+     *
+     * @param operations the operations to execute, in order
+     * @return the operation results, in the same order as the operations
+     */
+    public List<OperationResult> executeBatch(List<? extends Operation> operations) {
+        return pipeline.execute(operations);
+    }
+
+    /**
+     * Execute a single operation asynchronously.  The operation is executed by the given executor, so the calling
+     * thread does not wait for validation, listeners or publication.
+     *
+     * @param operation the operation to execute
+     * @param executor the executor to run the operation on
+     * @return the future operation result
+     */
+    public OperationFuture<OperationResult> executeOperationAsync(Operation operation, Executor executor) {
+        return executeOperationAsync(operation, executor, null);
+    }
+
+    /**
+     * Execute a single operation asynchronously, with cancellation tied to the given context.  If cancellation is
+     * requested through the context before the operation starts to publish, the operation is abandoned and the
+     * context is notified that it was cancelled.
+     *
+     * @param operation the operation to execute
+     * @param executor the executor to run the operation on
+     * @param context the cancellable context, or {@code null} for none
+     * @return the future operation result
+     */
+    public OperationFuture<OperationResult> executeOperationAsync(Operation operation, Executor executor, CancellableContext context) {
+        final OperationFuture<OperationResult> future = new OperationFuture<>(context);
+        final List<Operation> operations = Collections.singletonList(operation);
+        submit(executor, future, new Runnable() {
+            public void run() {
+                future.complete(pipeline.execute(operations, future).get(0));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Execute a batch of operations asynchronously as a single transaction.
+     *
+     * @param operations the operations to execute, in order
+     * @param executor the executor to run the batch on
+     * @return the future operation results
+     * @see #executeBatch(List)
+     */
+    public OperationFuture<List<OperationResult>> executeBatchAsync(List<? extends Operation> operations, Executor executor) {
+        return executeBatchAsync(operations, executor, null);
+    }
+
+    /**
+     * Execute a batch of operations asynchronously as a single transaction, with cancellation tied to the given
+     * context.
+     *
+     * @param operations the operations to execute, in order
+     * @param executor the executor to run the batch on
+     * @param context the cancellable context, or {@code null} for none
+     * @return the future operation results
+     * @see #executeBatch(List)
+     */
+    public OperationFuture<List<OperationResult>> executeBatchAsync(final List<? extends Operation> operations, Executor executor, CancellableContext context) {
+        final OperationFuture<List<OperationResult>> future = new OperationFuture<>(context);
+        submit(executor, future, new Runnable() {
+            public void run() {
+                future.complete(pipeline.execute(operations, future));
+            }
+        });
+        return future;
+    }
+
+    private static void submit(final Executor executor, final OperationFuture<?> future, final Runnable task) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    if (future.isDone()) {
+                        // cancelled while queued
+                        return;
+                    }
+                    try {
+                        task.run();
+                    } catch (CancellationException ignored) {
+                        // the future is already cancelled
+                    } catch (Throwable t) {
+                        future.fail(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.fail(e);
+        }
+    }
+
+    /**
+     * Register the model handler for operations with the given name.
+     *
+     * @param operationName the operation name
+     * @param handler the handler
+     * @throws IllegalArgumentException if a handler is already registered for the given name
+     */
+    public void registerOperationHandler(String operationName, ModelOperationHandler<?> handler) throws IllegalArgumentException {
+        if (operationHandlers.putIfAbsent(operationName, handler) != null) {
+            throw new IllegalArgumentException(MESSAGES.duplicateOperationHandler(operationName));
+        }
+    }
+
+    /**
+     * Get the concurrency control mode used to execute operations.
+     *
+     * @return the execution mode
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Set the concurrency control mode used to execute operations.  Transactions which are already executing are
+     * not affected.
+     *
+     * @param executionMode the execution mode
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        if (executionMode == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("executionMode"));
+        }
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Set the journal to which committed changes are appended.
+     *
+     * @param changeJournal the change journal, or {@code null} to stop journaling changes
+     */
+    public void setChangeJournal(ChangeJournal changeJournal) {
+        this.changeJournal = changeJournal;
+    }
+
+    /**
+     * Set the engine which validates the changes of every transaction.  Transactions which are already executing
+     * may or may not be validated by the new engine.
+     *
+     * @param validatorEngine the validator engine, or {@code null} to stop validating changes
+     */
+    public void setValidatorEngine(ValidatorEngine validatorEngine) {
+        this.validatorEngine = validatorEngine;
+    }
+
+    /**
+     * Set the dispatcher which notifies resource and attribute listeners of the changes of every transaction.
+     * Transactions which are already executing may or may not be dispatched by the new dispatcher.
+     *
+     * @param listenerDispatcher the listener dispatcher, or {@code null} to stop dispatching changes
+     */
+    public void setListenerDispatcher(ListenerDispatcher listenerDispatcher) {
+        if (listenerDispatcher != null && ! listenerDispatcher.hasContextFactory()) {
+            throw new IllegalArgumentException(MESSAGES.noListenerContextFactory());
+        }
+        this.listenerDispatcher = listenerDispatcher;
+    }
+
+    /**
+     * Set the depth of the address prefix which determines the write lock stripe for addresses whose first element
+     * has the given key.  By default, the depth is 1, so writes to different top-level resources (such as
+     * {@code /subsystem=logging} and {@code /subsystem=threads}) do not block one another; a depth of 2 for the key
+     * {@code profile} would likewise allow the subsystems of each profile to be written independently.  Writes to an
+     * address shorter than its prefix depth lock the whole model.
+     *
+     * @param key the leading address key
+     * @param depth the prefix depth
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public void setLockPrefixDepth(String key, int depth) throws IllegalArgumentException {
+        lock.setPrefixDepth(key, depth);
+    }
+
+    /**
+     * Add a listener which is called before each change to this system's model is published.  Transactions which
+     * lock disjoint parts of the model commit concurrently, so listeners must be thread-safe.  In
+     * {@linkplain ExecutionMode#OPTIMISTIC optimistic} mode, a listener may be called more than once for the same
+     * transaction if the transaction is retried.
+     *
+     * @param listener the listener to add
+     */
+    public void addCommitListener(ModelCommitListener listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * Remove a previously added commit listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeCommitListener(ModelCommitListener listener) {
+        commitListeners.remove(listener);
+    }
+
+    /**
+     * Get the built-in operation metrics of this system.
+     *
+     * @return the operation metrics
+     */
+    public OperationMetrics getOperationMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Add a listener which is given the timing of every transaction, for export to an external metrics system.
+     *
+     * @param listener the listener to add
+     */
+    public void addMetricsListener(OperationMetricsListener listener) {
+        metricsListeners.add(listener);
+    }
+
+    /**
+     * Remove a previously added metrics listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeMetricsListener(OperationMetricsListener listener) {
+        metricsListeners.remove(listener);
+    }
+
+    /**
+     * Get the reverse index of the references between the resources of this system.
+     *
+     * @return the reference index
+     */
+    public ReferenceIndex getReferenceIndex() {
+        return referenceIndex;
+    }
+
+    /**
+     * Get the scheduler which starts and stops the services of this system as its run level changes.
+     *
+     * @return the run level scheduler
+     */
+    public RunLevelScheduler getRunLevelScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Change the run level of this system.  The services of the system are transitioned by the
+     * {@linkplain #getRunLevelScheduler() run level scheduler}, after which a new state with the new run level is
+     * published.
+     *
+     * @param oldLevel the expected current run level
+     * @param newLevel the new run level
+     * @return {@code true} if the run level was changed, {@code false} if the current run level was not the expected
+     *      one
+     * @throws OperationFailedException if a service failed to start, in which case the run level is unchanged
+     */
+    public boolean changeRunLevel(RunLevel oldLevel, RunLevel newLevel) throws OperationFailedException {
+        if (oldLevel == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("oldLevel"));
+        }
+        if (newLevel == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("newLevel"));
+        }
+        synchronized (scheduler) {
+            if (state.getRunLevel() != oldLevel) {
+                return false;
+            }
+            if (oldLevel == newLevel) {
+                return true;
+            }
+            scheduler.transition(newLevel, null);
+            for (;;) {
+                final State current = state;
+                final State next = new State(newLevel, current);
+                if (compareAndPublish(current, next)) {
+                    // keep the commit history contiguous for conflict checks and diffs
+                    commitLog.record(next.getVersion(), Collections.<PathAddress>emptySet());
+                    return true;
+                }
+            }
+        }
     }
 
     <N extends Node> N getNode(final AbstractMutableNode<N> base) {
         return state.getResource(base);
     }
 
-    Object getLock() {
+    StripedModelLock getLock() {
         return lock;
     }
 
+    AbstractMutableResourceNode<?> getRootResource() {
+        return rootResource;
+    }
+
+    ModelOperationHandler<?> getOperationHandler(String operationName) {
+        return operationHandlers.get(operationName);
+    }
+
+    List<ModelCommitListener> getCommitListeners() {
+        return commitListeners;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    void recordTiming(TransactionTiming timing) {
+        metrics.transactionCompleted(timing);
+        for (OperationMetricsListener listener : metricsListeners) {
+            try {
+                listener.transactionCompleted(timing);
+            } catch (RuntimeException ignored) {
+                // metrics must never affect operation execution
+            }
+        }
+    }
+
+    ChangeJournal getChangeJournal() {
+        return changeJournal;
+    }
+
+    ListenerDispatcher getListenerDispatcher() {
+        return listenerDispatcher;
+    }
+
+    ValidatorEngine getValidatorEngine() {
+        return validatorEngine;
+    }
+
+    OperationPipeline getPipeline() {
+        return pipeline;
+    }
+
+    CommitLog getCommitLog() {
+        return commitLog;
+    }
+
+    boolean compareAndPublish(State expect, State update) {
+        return stateUpdater.compareAndSet(this, expect, update);
+    }
+
     final class State {
-        private final IdentityHashMap<AbstractMutableNode<?>, AbstractNode> nodeMap;
+        private final PersistentMap<AbstractMutableNode<?>, AbstractNode> nodeMap;
+        private final PersistentMap<PathAddress, AbstractMutableNode<?>> addressMap;
         private final RunLevel runLevel;
+        private final long version;
+        private final PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex;
 
         State() {
             this(RunLevel.STOPPED);
         }
 
         State(final RunLevel runLevel) {
-            this(new IdentityHashMap<AbstractMutableNode<?>, AbstractNode>(), runLevel);
+            this(PersistentMap.<AbstractMutableNode<?>, AbstractNode>emptyIdentity(), PersistentMap.<PathAddress, AbstractMutableNode<?>>empty(), PersistentMap.<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>>emptyIdentity(), runLevel, 0L);
         }
 
-        State(final IdentityHashMap<AbstractMutableNode<?>, AbstractNode> nodeMap, final RunLevel runLevel) {
+        State(final PersistentMap<AbstractMutableNode<?>, AbstractNode> nodeMap, final PersistentMap<PathAddress, AbstractMutableNode<?>> addressMap, final PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex, final RunLevel runLevel, final long version) {
             this.nodeMap = nodeMap;
+            this.addressMap = addressMap;
+            this.childIndex = childIndex;
             this.runLevel = runLevel;
+            this.version = version;
         }
 
         State(final RunLevel runLevel, State other) {
-            this(other.nodeMap, runLevel);
+            this(other.nodeMap, other.addressMap, other.childIndex, runLevel, other.version + 1);
         }
 
-        State(final IdentityHashMap<AbstractMutableNode<?>, AbstractNode> nodeMap, State other) {
-            this(nodeMap, other.runLevel);
+        State(final PersistentMap<AbstractMutableNode<?>, AbstractNode> nodeMap, final PersistentMap<PathAddress, AbstractMutableNode<?>> addressMap, final PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex, State other) {
+            this(nodeMap, addressMap, childIndex, other.runLevel, other.version + 1);
         }
 
         <N extends Node> N getResource(AbstractMutableNode<N> mutableResource) {
             return mutableResource.cast(nodeMap.get(mutableResource));
         }
 
-        <N extends Node> N putResource(AbstractMutableNode<N> mutableNode, N newValue) {
-            return mutableNode.cast(nodeMap.put(mutableNode, (AbstractNode) mutableNode.cast(newValue)));
+        AbstractMutableNode<?> resolve(PathAddress address) {
+            return addressMap.get(address);
+        }
+
+        PersistentMap<AbstractMutableNode<?>, AbstractNode> getNodeMap() {
+            return nodeMap;
+        }
+
+        PersistentMap<PathAddress, AbstractMutableNode<?>> getAddressMap() {
+            return addressMap;
+        }
+
+        PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> getChildIndex() {
+            return childIndex;
+        }
+
+        /**
+         * Get the children of a mutable node in this state.
+         *
+         * @param parent the parent node
+         * @return the child nodes
+         */
+        Set<AbstractMutableNode<?>> getChildren(AbstractMutableNode<?> parent) {
+            final PersistentMap<AbstractMutableNode<?>, Boolean> children = childIndex.get(parent);
+            return children == null ? Collections.<AbstractMutableNode<?>>emptySet() : children.keySet();
+        }
+
+        AbstractMutableResourceNode<?> getRootResource() {
+            return ManagedSystem.this.getRootResource();
+        }
+
+        State derive(final PersistentMap<AbstractMutableNode<?>, AbstractNode> nodeMap, final PersistentMap<PathAddress, AbstractMutableNode<?>> addressMap, final PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex) {
+            return new State(nodeMap, addressMap, childIndex, this);
         }
 
         RunLevel getRunLevel() {
             return runLevel;
         }
+
+        long getVersion() {
+            return version;
+        }
     }
 }
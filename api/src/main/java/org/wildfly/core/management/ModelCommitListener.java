@@ -0,0 +1,36 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * A listener which is notified once all the steps of a transaction have been applied to a working model, before the
+ * resultant state is published.
+ */
+public interface ModelCommitListener {
+
+    /**
+     * Handle a pending commit.  The listener may inspect the changed nodes of the working model, and may veto the
+     * commit by throwing an exception.
+     *
+     * @param model the working model about to be published
+     * @throws OperationFailedException to prevent the commit from being published
+     */
+    void beforeCommit(WorkingModel model) throws OperationFailedException;
+}
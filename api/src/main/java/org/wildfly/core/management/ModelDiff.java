@@ -0,0 +1,378 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The structural difference between two versions of a managed system's model: the resources which were added,
+ * removed, or changed, and for each changed resource, the attributes whose values differ.
+ * <p>
+ * Unchanged nodes are shared between versions, so a resource whose node instance is identical in both versions is
+ * unchanged and is never examined further.  When the commit history between the two versions is still available,
+ * only the resources written by those commits are considered at all, making the cost of a diff proportional to the
+ * size of the change rather than to the size of the model.  Attribute values are only materialized on demand.
+ */
+public final class ModelDiff {
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final Map<PathAddress, ResourceChange> added;
+    private final Map<PathAddress, ResourceChange> removed;
+    private final Map<PathAddress, ResourceChange> changed;
+
+    private ModelDiff(final long fromVersion, final long toVersion, final Map<PathAddress, ResourceChange> added, final Map<PathAddress, ResourceChange> removed, final Map<PathAddress, ResourceChange> changed) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Compute the difference between two snapshots of the same managed system.
+     *
+     * @param from the earlier snapshot
+     * @param to the later snapshot
+     * @return the difference
+     * @throws IllegalArgumentException if the snapshots belong to different systems
+     * @throws IllegalStateException if either snapshot was closed
+     */
+    public static ModelDiff between(ModelSnapshot from, ModelSnapshot to) throws IllegalArgumentException, IllegalStateException {
+        if (from == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("from"));
+        }
+        if (to == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("to"));
+        }
+        if (from.getManagedSystem() != to.getManagedSystem()) {
+            throw new IllegalArgumentException(MESSAGES.differentSystems());
+        }
+        return compute(from.getManagedSystem(), from.getState(), to.getState());
+    }
+
+    static ModelDiff compute(final ManagedSystem system, final ManagedSystem.State from, final ManagedSystem.State to) {
+        final Map<PathAddress, ResourceChange> added = new LinkedHashMap<>();
+        final Map<PathAddress, ResourceChange> removed = new LinkedHashMap<>();
+        final Map<PathAddress, ResourceChange> changed = new LinkedHashMap<>();
+        if (from.getNodeMap() != to.getNodeMap()) {
+            final PersistentMap<AbstractMutableNode<?>, AbstractNode> fromNodes = from.getNodeMap();
+            final PersistentMap<AbstractMutableNode<?>, AbstractNode> toNodes = to.getNodeMap();
+            for (AbstractMutableNode<?> mutableNode : candidates(system, from, to)) {
+                final AbstractNode before = fromNodes.get(mutableNode);
+                final AbstractNode after = toNodes.get(mutableNode);
+                if (before == after) {
+                    continue;
+                }
+                final ResourceChange change = new ResourceChange(mutableNode, before, after);
+                if (before == null) {
+                    added.put(mutableNode.getAddress(), change);
+                } else if (after == null) {
+                    removed.put(mutableNode.getAddress(), change);
+                } else {
+                    changed.put(mutableNode.getAddress(), change);
+                }
+            }
+        }
+        return new ModelDiff(from.getVersion(), to.getVersion(), added, removed, changed);
+    }
+
+    /**
+     * Compute the difference which a working state would make to its base state if it were published.
+     *
+     * @param working the working state
+     * @return the difference
+     */
+    static ModelDiff of(final WorkingState working) {
+        final Map<PathAddress, ResourceChange> added = new LinkedHashMap<>();
+        final Map<PathAddress, ResourceChange> removed = new LinkedHashMap<>();
+        final Map<PathAddress, ResourceChange> changed = new LinkedHashMap<>();
+        final ManagedSystem.State base = working.getBase();
+        for (AbstractMutableNode<?> mutableNode : working.getChangedNodes()) {
+            final Node before = base.getResource(mutableNode);
+            final Node after = working.getNode(mutableNode);
+            if (before == after) {
+                continue;
+            }
+            final ResourceChange change = new ResourceChange(mutableNode, before, after);
+            if (before == null) {
+                added.put(mutableNode.getAddress(), change);
+            } else if (after == null) {
+                removed.put(mutableNode.getAddress(), change);
+            } else {
+                changed.put(mutableNode.getAddress(), change);
+            }
+        }
+        return new ModelDiff(base.getVersion(), base.getVersion() + 1, added, removed, changed);
+    }
+
+    /**
+     * Get the mutable nodes which may differ between the two states.
+     *
+     * @return the candidate nodes
+     */
+    private static Set<AbstractMutableNode<?>> candidates(final ManagedSystem system, final ManagedSystem.State from, final ManagedSystem.State to) {
+        final Set<AbstractMutableNode<?>> candidates = Collections.newSetFromMap(new IdentityHashMap<AbstractMutableNode<?>, Boolean>());
+        final Set<PathAddress> writes = new HashSet<>();
+        if (from.getVersion() <= to.getVersion() && system.getCommitLog().collectWrites(from.getVersion(), to.getVersion(), writes)) {
+            for (PathAddress address : writes) {
+                addCandidate(candidates, from.resolve(address));
+                addCandidate(candidates, to.resolve(address));
+            }
+        } else {
+            // history unavailable; fall back to comparing every node instance
+            candidates.addAll(from.getNodeMap().keySet());
+            candidates.addAll(to.getNodeMap().keySet());
+        }
+        return candidates;
+    }
+
+    private static void addCandidate(final Set<AbstractMutableNode<?>> candidates, final AbstractMutableNode<?> mutableNode) {
+        if (mutableNode != null) {
+            candidates.add(mutableNode);
+        }
+    }
+
+    /**
+     * Get the version of the earlier state.
+     *
+     * @return the earlier version
+     */
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * Get the version of the later state.
+     *
+     * @return the later version
+     */
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * Determine whether the two states have an identical model.
+     *
+     * @return {@code true} if nothing was added, removed, or changed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * Get the addresses of the resources which exist only in the later state.
+     *
+     * @return the added resource addresses
+     */
+    public Set<PathAddress> getAddedResources() {
+        return Collections.unmodifiableSet(added.keySet());
+    }
+
+    /**
+     * Get the addresses of the resources which exist only in the earlier state.
+     *
+     * @return the removed resource addresses
+     */
+    public Set<PathAddress> getRemovedResources() {
+        return Collections.unmodifiableSet(removed.keySet());
+    }
+
+    /**
+     * Get the resources which exist in both states but whose content changed, keyed by address.
+     *
+     * @return the changed resources
+     */
+    public Map<PathAddress, ResourceChange> getChangedResources() {
+        return Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * Get the mutable nodes which were added, removed, or changed.
+     *
+     * @return the affected mutable nodes
+     */
+    List<AbstractMutableNode<?>> getAffectedNodes() {
+        final List<AbstractMutableNode<?>> affected = new ArrayList<>(added.size() + removed.size() + changed.size());
+        for (ResourceChange change : getAllChanges()) {
+            affected.add(change.getMutableNode());
+        }
+        return affected;
+    }
+
+    /**
+     * Get every resource change, including additions (with no earlier node) and removals (with no later node).
+     *
+     * @return all resource changes
+     */
+    List<ResourceChange> getAllChanges() {
+        final List<ResourceChange> all = new ArrayList<>(added.size() + removed.size() + changed.size());
+        all.addAll(removed.values());
+        all.addAll(added.values());
+        all.addAll(changed.values());
+        return all;
+    }
+
+    /**
+     * A change to a resource which exists in both states.
+     */
+    public static final class ResourceChange {
+        private final AbstractMutableNode<?> mutableNode;
+        private final Node before;
+        private final Node after;
+        private Map<String, AttributeChange> attributes;
+
+        ResourceChange(final AbstractMutableNode<?> mutableNode, final Node before, final Node after) {
+            this.mutableNode = mutableNode;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Get the address of the changed resource.
+         *
+         * @return the resource address
+         */
+        public PathAddress getAddress() {
+            return mutableNode.getAddress();
+        }
+
+        /**
+         * Get the mutable node of the changed resource.
+         *
+         * @return the mutable node
+         */
+        public AbstractMutableNode<?> getMutableNode() {
+            return mutableNode;
+        }
+
+        /**
+         * Get the node as it was in the earlier state.
+         *
+         * @return the earlier node, or {@code null} if the resource was added
+         */
+        public Node getBefore() {
+            return before;
+        }
+
+        /**
+         * Get the node as it is in the later state.
+         *
+         * @return the later node, or {@code null} if the resource was removed
+         */
+        public Node getAfter() {
+            return after;
+        }
+
+        /**
+         * Get the attributes whose values differ between the two states, keyed by name.  The attributes of a node are
+         * the top-level keys of its {@linkplain AbstractNode#writeAttributes(ModelNode) attribute representation},
+         * which node implementations write without their children, so that the subtree is not converted and child
+         * types are not reported as attributes; for a node which is not an {@link AbstractNode}, its whole
+         * {@linkplain Node#toModelNode() model} is used.  Attributes which were defined in only one of the states are included, with an undefined value for
+         * the other state.  The attribute values are computed the first time this method is called.
+         *
+         * @return the changed attributes
+         */
+        public synchronized Map<String, AttributeChange> getChangedAttributes() {
+            if (attributes == null) {
+                final ModelNode beforeModel = attributesOf(before);
+                final ModelNode afterModel = attributesOf(after);
+                final Map<String, AttributeChange> map = new HashMap<>();
+                final Set<String> names = new HashSet<>();
+                if (beforeModel.isDefined()) {
+                    names.addAll(beforeModel.keys());
+                }
+                if (afterModel.isDefined()) {
+                    names.addAll(afterModel.keys());
+                }
+                for (String name : names) {
+                    final ModelNode beforeValue = beforeModel.has(name) ? beforeModel.get(name) : new ModelNode();
+                    final ModelNode afterValue = afterModel.has(name) ? afterModel.get(name) : new ModelNode();
+                    if (! beforeValue.equals(afterValue)) {
+                        map.put(name, new AttributeChange(name, beforeValue, afterValue));
+                    }
+                }
+                attributes = Collections.unmodifiableMap(map);
+            }
+            return attributes;
+        }
+
+        private static ModelNode attributesOf(final Node node) {
+            if (node == null) {
+                return new ModelNode();
+            }
+            return node instanceof AbstractNode ? ((AbstractNode) node).getCachedAttributes() : node.toModelNode();
+        }
+    }
+
+    /**
+     * A change to the value of a single attribute.
+     */
+    public static final class AttributeChange {
+        private final String name;
+        private final ModelNode before;
+        private final ModelNode after;
+
+        AttributeChange(final String name, final ModelNode before, final ModelNode after) {
+            this.name = name;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Get the attribute name.
+         *
+         * @return the attribute name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the attribute value in the earlier state.
+         *
+         * @return the earlier value (not {@code null})
+         */
+        public ModelNode getBefore() {
+            return before;
+        }
+
+        /**
+         * Get the attribute value in the later state.
+         *
+         * @return the later value (not {@code null})
+         */
+        public ModelNode getAfter() {
+            return after;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A handler which applies an operation to the model.  Model handlers operate on a working copy of the managed system's
+ * state, whose changes are only published once every step of the enclosing transaction has succeeded.
+ *
+ * @param <P> the operation payload type
+ */
+public interface ModelOperationHandler<P extends Operation> {
+
+    /**
+     * Validate an operation before it is applied.  The working model must not be modified by this method.
+     *
+     * @param model the working model
+     * @param target the node at the operation's address, or {@code null} if there is none
+     * @param operation the operation
+     * @throws OperationFailedException if the operation is not valid
+     */
+    void validate(WorkingModel model, AbstractMutableNode<?> target, P operation) throws OperationFailedException;
+
+    /**
+     * Apply an operation to the working model.
+     *
+     * @param model the working model
+     * @param target the node at the operation's address, or {@code null} if there is none
+     * @param operation the operation
+     * @return the operation result value, or {@code null} if there is none
+     * @throws OperationFailedException if the operation could not be applied
+     */
+    ModelNode apply(WorkingModel model, AbstractMutableNode<?> target, P operation) throws OperationFailedException;
+}
@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A push-based receiver of the tokens of a DMR model.  A node {@linkplain Node#writeTo(ModelSink) writes} itself to a
+ * sink while it walks its content, so a large model can be streamed out without first being materialized as a
+ * {@link org.jboss.dmr.ModelNode} tree.
+ * <p>
+ * Within an object, each value is preceded by a call to {@link #key(String)}.  Within a list, values follow each
+ * other directly.  A property consists of {@link #startProperty(String)}, exactly one value, and
+ * {@link #endProperty()}.
+ */
+public interface ModelSink {
+
+    /**
+     * Start an object value.
+     *
+     * @throws IOException if writing failed
+     */
+    void startObject() throws IOException;
+
+    /**
+     * Write the key of the next value of the current object.
+     *
+     * @param key the key
+     * @throws IOException if writing failed
+     */
+    void key(String key) throws IOException;
+
+    /**
+     * End the current object value.
+     *
+     * @throws IOException if writing failed
+     */
+    void endObject() throws IOException;
+
+    /**
+     * Start a list value.
+     *
+     * @throws IOException if writing failed
+     */
+    void startList() throws IOException;
+
+    /**
+     * End the current list value.
+     *
+     * @throws IOException if writing failed
+     */
+    void endList() throws IOException;
+
+    /**
+     * Start a property value.
+     *
+     * @param name the property name
+     * @throws IOException if writing failed
+     */
+    void startProperty(String name) throws IOException;
+
+    /**
+     * End the current property value.
+     *
+     * @throws IOException if writing failed
+     */
+    void endProperty() throws IOException;
+
+    /**
+     * Write an undefined value.
+     *
+     * @throws IOException if writing failed
+     */
+    void undefined() throws IOException;
+
+    /**
+     * Write a string value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(String value) throws IOException;
+
+    /**
+     * Write an expression value.
+     *
+     * @param expression the expression string
+     * @throws IOException if writing failed
+     */
+    void expression(String expression) throws IOException;
+
+    /**
+     * Write a boolean value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(boolean value) throws IOException;
+
+    /**
+     * Write an integer value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(int value) throws IOException;
+
+    /**
+     * Write a long value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(long value) throws IOException;
+
+    /**
+     * Write a double value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(double value) throws IOException;
+
+    /**
+     * Write a big integer value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(BigInteger value) throws IOException;
+
+    /**
+     * Write a big decimal value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(BigDecimal value) throws IOException;
+
+    /**
+     * Write a byte array value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(byte[] value) throws IOException;
+
+    /**
+     * Write a type value.
+     *
+     * @param value the value
+     * @throws IOException if writing failed
+     */
+    void value(ModelType value) throws IOException;
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.io.IOException;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+
+/**
+ * Utilities for working with {@link ModelSink} instances.
+ */
+public final class ModelSinks {
+
+    private ModelSinks() {
+    }
+
+    /**
+     * Write an already materialized model to a sink.
+     *
+     * @param model the model to write
+     * @param sink the target sink
+     * @throws IOException if writing failed
+     */
+    public static void write(ModelNode model, ModelSink sink) throws IOException {
+        switch (model.getType()) {
+            case UNDEFINED: {
+                sink.undefined();
+                break;
+            }
+            case BOOLEAN: {
+                sink.value(model.asBoolean());
+                break;
+            }
+            case INT: {
+                sink.value(model.asInt());
+                break;
+            }
+            case LONG: {
+                sink.value(model.asLong());
+                break;
+            }
+            case DOUBLE: {
+                sink.value(model.asDouble());
+                break;
+            }
+            case BIG_INTEGER: {
+                sink.value(model.asBigInteger());
+                break;
+            }
+            case BIG_DECIMAL: {
+                sink.value(model.asBigDecimal());
+                break;
+            }
+            case BYTES: {
+                sink.value(model.asBytes());
+                break;
+            }
+            case STRING: {
+                sink.value(model.asString());
+                break;
+            }
+            case EXPRESSION: {
+                sink.expression(model.asString());
+                break;
+            }
+            case TYPE: {
+                sink.value(model.asType());
+                break;
+            }
+            case PROPERTY: {
+                final Property property = model.asProperty();
+                sink.startProperty(property.getName());
+                write(property.getValue(), sink);
+                sink.endProperty();
+                break;
+            }
+            case LIST: {
+                sink.startList();
+                for (ModelNode element : model.asList()) {
+                    write(element, sink);
+                }
+                sink.endList();
+                break;
+            }
+            case OBJECT: {
+                sink.startObject();
+                for (Property property : model.asPropertyList()) {
+                    sink.key(property.getName());
+                    write(property.getValue(), sink);
+                }
+                sink.endObject();
+                break;
+            }
+            default: {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+/**
+ * A read-only, versioned view of a {@link ManagedSystem}'s model.  A snapshot pins a single immutable state of the
+ * model; every node resolved through it belongs to that state, so multi-step reads (such as exporting the whole model)
+ * never observe a mix of versions.  Since states are replaced rather than modified, holding a snapshot never blocks
+ * writers.
+ */
+public final class ModelSnapshot implements AutoCloseable {
+
+    private final ManagedSystem system;
+    private final long version;
+    private final RunLevel runLevel;
+    private volatile ManagedSystem.State state;
+
+    ModelSnapshot(final ManagedSystem system, final ManagedSystem.State state) {
+        this.system = system;
+        this.state = state;
+        version = state.getVersion();
+        runLevel = state.getRunLevel();
+    }
+
+    /**
+     * Get the version of the state captured by this snapshot.  Versions increase monotonically with every published
+     * change, so a snapshot with a higher version always reflects a later state.
+     *
+     * @return the state version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the run level of the captured state.
+     *
+     * @return the run level
+     */
+    public RunLevel getRunLevel() {
+        return runLevel;
+    }
+
+    /**
+     * Get the managed system that this snapshot was taken from.
+     *
+     * @return the managed system
+     */
+    public ManagedSystem getManagedSystem() {
+        return system;
+    }
+
+    /**
+     * Get the immutable node which corresponds to the given mutable node in this snapshot.
+     *
+     * @param mutableNode the mutable node
+     * @param <N> the node type
+     * @return the immutable node, or {@code null} if the node does not exist in this snapshot
+     * @throws IllegalStateException if the snapshot was closed
+     */
+    public <N extends Node> N getNode(AbstractMutableNode<N> mutableNode) throws IllegalStateException {
+        return getState().getResource(mutableNode);
+    }
+
+    /**
+     * Get the root resource of this snapshot.
+     *
+     * @return the root resource, or {@code null} if the model has not been populated
+     * @throws IllegalStateException if the snapshot was closed
+     */
+    public ResourceNode getRootResource() throws IllegalStateException {
+        return getState().getResource(system.getRootResource());
+    }
+
+    /**
+     * Navigate to the resource at the given address.
+     *
+     * @param address the resource address, relative to the root resource
+     * @return the resource node, or {@code null} if there is no resource at the given address in this snapshot
+     * @throws IllegalStateException if the snapshot was closed
+     */
+    public Node navigate(PathAddress address) throws IllegalStateException {
+        final ManagedSystem.State state = getState();
+        final AbstractMutableNode<?> mutableNode = address.size() == 0 ? system.getRootResource() : state.resolve(address);
+        return mutableNode == null ? null : state.getResource(mutableNode);
+    }
+
+    /**
+     * Determine whether this snapshot was closed.
+     *
+     * @return {@code true} if the snapshot was closed, {@code false} otherwise
+     */
+    public boolean isClosed() {
+        return state == null;
+    }
+
+    /**
+     * Close this snapshot, releasing the captured state.  Closing a snapshot more than once has no effect.
+     */
+    public void close() {
+        state = null;
+    }
+
+    ManagedSystem.State getState() throws IllegalStateException {
+        final ManagedSystem.State state = this.state;
+        if (state == null) {
+            throw new IllegalStateException(MESSAGES.snapshotClosed());
+        }
+        return state;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A lazy, read-only view of the DMR representation of a node, with the read methods of {@link ModelNode}.
+ * <p>
+ * Nothing is converted until it is accessed.  Navigating with {@code get(type).get(name)} into a child resource
+ * {@linkplain Node#navigate(PathElement) navigates} the node graph directly, so reading a few fields deep inside a
+ * large model converts only the nodes on the way, and of those, only the ones whose values are actually read.
+ * Converted representations are cached against the identity of the immutable node they came from, so an unchanged
+ * subtree shared by several model versions is converted at most once.  The attributes of a node are cached apart from
+ * its children, so reading an attribute of a large resource does not convert the resources beneath it.
+ */
+public final class ModelView {
+
+    private static final ModelNode UNDEFINED = new ModelNode();
+
+    static {
+        UNDEFINED.protect();
+    }
+
+    private final Node node;
+    private final String key;
+    private ModelNode value;
+
+    private ModelView(final Node node, final String key, final ModelNode value) {
+        this.node = node;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Get a view of the given node.
+     *
+     * @param node the node
+     * @return the view
+     */
+    public static ModelView of(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("node"));
+        }
+        if (node instanceof AbstractMutableNode) {
+            node = ((AbstractMutableNode<?>) node).getCurrent();
+        }
+        return new ModelView(node, null, null);
+    }
+
+    private static ModelView of(final ModelNode value) {
+        return new ModelView(null, null, value);
+    }
+
+    /**
+     * Get the DMR value which backs this view, converting it if needed.
+     *
+     * @return the protected value
+     */
+    private ModelNode resolve() {
+        ModelNode value = this.value;
+        if (value == null) {
+            if (key == null) {
+                value = node instanceof AbstractNode ? ((AbstractNode) node).getCachedModel() : node.toModelNode();
+            } else if (node instanceof AbstractNode) {
+                // attributes are cached apart from children, so reading one does not convert the subtree
+                final ModelNode attributes = ((AbstractNode) node).getCachedAttributes();
+                if (attributes.has(key)) {
+                    value = attributes.get(key);
+                } else {
+                    final ModelNode parent = ((AbstractNode) node).getCachedModel();
+                    value = parent.has(key) ? parent.get(key) : UNDEFINED;
+                }
+            } else {
+                final ModelNode parent = node.toModelNode();
+                value = parent.has(key) ? parent.get(key) : UNDEFINED;
+            }
+            this.value = value;
+        }
+        return value;
+    }
+
+    /**
+     * Get a view of the value with the given key.  If this view is backed by a node, the node is not converted.
+     *
+     * @param key the key
+     * @return the view of the value, which is undefined if there is no such key
+     */
+    public ModelView get(String key) {
+        if (node != null && this.key == null && value == null) {
+            return new ModelView(node, key, null);
+        }
+        if (node != null && this.key != null && value == null) {
+            // possibly a child resource of the node
+            final Node child;
+            try {
+                child = node.navigate(PathElement.pathElement(this.key, key));
+            } catch (IllegalArgumentException | UnsupportedOperationException e) {
+                return of(childValue(resolve(), key));
+            }
+            if (child != null) {
+                return of(child);
+            }
+        }
+        return of(childValue(resolve(), key));
+    }
+
+    /**
+     * Get a view of the value at the given path of keys.
+     *
+     * @param path the keys
+     * @return the view of the value
+     */
+    public ModelView get(String... path) {
+        ModelView view = this;
+        for (String key : path) {
+            view = view.get(key);
+        }
+        return view;
+    }
+
+    /**
+     * Get a view of the list element at the given index.
+     *
+     * @param index the index
+     * @return the view of the element, which is undefined if there is no such element
+     */
+    public ModelView get(int index) {
+        final ModelNode value = resolve();
+        if (value.getType() == ModelType.LIST) {
+            final List<ModelNode> list = value.asList();
+            if (index >= 0 && index < list.size()) {
+                return of(list.get(index));
+            }
+        }
+        return of(UNDEFINED);
+    }
+
+    private static ModelNode childValue(final ModelNode value, final String key) {
+        return value.getType() == ModelType.OBJECT && value.has(key) ? value.get(key) : UNDEFINED;
+    }
+
+    /**
+     * Determine whether the value has the given key.
+     *
+     * @param key the key
+     * @return {@code true} if the key is present
+     */
+    public boolean has(String key) {
+        return childValue(resolve(), key) != UNDEFINED;
+    }
+
+    /**
+     * Determine whether the value is defined.
+     *
+     * @return {@code true} if the value is defined
+     */
+    public boolean isDefined() {
+        return resolve().isDefined();
+    }
+
+    /**
+     * Get the type of the value.
+     *
+     * @return the value type
+     */
+    public ModelType getType() {
+        return resolve().getType();
+    }
+
+    /**
+     * Get the keys of the value.
+     *
+     * @return the keys, or an empty set if the value is not an object
+     */
+    public Set<String> keys() {
+        final ModelNode value = resolve();
+        return value.getType() == ModelType.OBJECT ? Collections.unmodifiableSet(value.keys()) : Collections.<String>emptySet();
+    }
+
+    /**
+     * Get views of the elements of the value.
+     *
+     * @return the element views
+     */
+    public List<ModelView> asList() {
+        final List<ModelNode> list = resolve().asList();
+        final List<ModelView> views = new ArrayList<>(list.size());
+        for (ModelNode element : list) {
+            views.add(of(element));
+        }
+        return views;
+    }
+
+    /**
+     * Get the value as a string.
+     *
+     * @return the string value
+     */
+    public String asString() {
+        return resolve().asString();
+    }
+
+    /**
+     * Get the value as an integer.
+     *
+     * @return the integer value
+     */
+    public int asInt() {
+        return resolve().asInt();
+    }
+
+    /**
+     * Get the value as a long.
+     *
+     * @return the long value
+     */
+    public long asLong() {
+        return resolve().asLong();
+    }
+
+    /**
+     * Get the value as a boolean.
+     *
+     * @return the boolean value
+     */
+    public boolean asBoolean() {
+        return resolve().asBoolean();
+    }
+
+    /**
+     * Get the value as a double.
+     *
+     * @return the double value
+     */
+    public double asDouble() {
+        return resolve().asDouble();
+    }
+
+    /**
+     * Get a mutable copy of the full value.
+     *
+     * @return the value copy
+     */
+    public ModelNode toModelNode() {
+        return resolve().clone();
+    }
+
+    public String toString() {
+        return resolve().toString();
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.wildfly.core.management;
 
+import java.io.IOException;
 import javax.xml.stream.XMLStreamWriter;
 import org.jboss.dmr.ModelNode;
 import org.wildfly.core.management.xml.XMLWriteException;
@@ -50,6 +51,15 @@ public interface Node {
      */
     ModelNode toModelNode();
 
+    /**
+     * Write a DMR representation of this node to a sink, equivalent to the result of {@link #toModelNode()}, without
+     * necessarily materializing it.
+     *
+     * @param sink the target sink
+     * @throws IOException if writing to the sink failed
+     */
+    void writeTo(ModelSink sink) throws IOException;
+
     /**
      * Navigate to a nested resource, if available.
      *
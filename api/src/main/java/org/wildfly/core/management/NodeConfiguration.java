@@ -28,11 +28,13 @@ public final class NodeConfiguration<N> {
     private final ManagedSystem database;
     private final AbstractMutableNode<?> parent;
     private final Class<N> nodeType;
+    private final PathElement pathElement;
 
-    NodeConfiguration(final ManagedSystem database, final AbstractMutableNode<?> parent, final Class<N> nodeType) {
+    NodeConfiguration(final ManagedSystem database, final AbstractMutableNode<?> parent, final Class<N> nodeType, final PathElement pathElement) {
         this.database = database;
         this.parent = parent;
         this.nodeType = nodeType;
+        this.pathElement = pathElement;
     }
 
     ManagedSystem getDatabase() {
@@ -46,4 +48,8 @@ public final class NodeConfiguration<N> {
     Class<N> getNodeType() {
         return nodeType;
     }
+
+    PathElement getPathElement() {
+        return pathElement;
+    }
 }
@@ -25,7 +25,11 @@ public interface NodeConstructionContext {
 
     /**
      * Perform initial node registration, if any.  This may wire an immutable node instance into
-     * the mutable database, or it may simply return the original instance.
+     * the mutable database, or it may simply return the original instance.  When a new version of
+     * a node is derived with {@link AbstractNode#cloneInto(NodeConstructionContext)}, each child
+     * is passed through this method, and the result (which may be the original child, shared with
+     * the previous version, or a replacement for it) is installed in the copy; a {@code null}
+     * result means that the child is removed from the copy.
      *
      * @param original the immutable node
      * @param <N> the node type
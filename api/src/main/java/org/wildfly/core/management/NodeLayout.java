@@ -0,0 +1,268 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The storage layout of the attributes of one node type, shared by every {@link NodeStorage} of that type.
+ * <p>
+ * Boolean attributes are packed into a bit set, along with one "defined" bit for each boolean, {@code int} and
+ * {@code long} attribute; {@code int} attributes are packed two to a word and {@code long} attributes take one word
+ * each, all in a single {@code long} array.  Strings and other objects share a single reference array, in which an
+ * undefined attribute is {@code null}.  A node therefore costs one small object and two arrays, regardless of its
+ * number of attributes.
+ */
+public final class NodeLayout {
+
+    static final byte BOOLEAN = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte STRING = 3;
+    static final byte OBJECT = 4;
+
+    private final String[] names;
+    private final byte[] kinds;
+    // the bit index of the value (booleans), word index (longs), half-word index (ints), or reference index
+    private final int[] slots;
+    // the bit index of the defined flag of primitive attributes
+    private final int[] definedBits;
+    private final int wordCount;
+    private final int refCount;
+    private final Map<String, Integer> indexes;
+
+    NodeLayout(final Builder builder) {
+        final int size = builder.names.size();
+        names = builder.names.toArray(new String[size]);
+        kinds = new byte[size];
+        slots = new int[size];
+        definedBits = new int[size];
+        int bits = 0;
+        int ints = 0;
+        int longs = 0;
+        int refs = 0;
+        for (int i = 0; i < size; i ++) {
+            final byte kind = builder.kinds.get(i).byteValue();
+            kinds[i] = kind;
+            switch (kind) {
+                case BOOLEAN: {
+                    slots[i] = bits ++;
+                    definedBits[i] = bits ++;
+                    break;
+                }
+                case INT: {
+                    slots[i] = ints ++;
+                    definedBits[i] = bits ++;
+                    break;
+                }
+                case LONG: {
+                    slots[i] = longs ++;
+                    definedBits[i] = bits ++;
+                    break;
+                }
+                default: {
+                    slots[i] = refs ++;
+                    definedBits[i] = -1;
+                    break;
+                }
+            }
+        }
+        // lay out the words: bits, then int pairs, then longs
+        final int bitWords = (bits + 63) >>> 6;
+        final int intWords = (ints + 1) >>> 1;
+        for (int i = 0; i < size; i ++) {
+            if (kinds[i] == INT) {
+                slots[i] += bitWords << 1;
+            } else if (kinds[i] == LONG) {
+                slots[i] += bitWords + intWords;
+            }
+        }
+        wordCount = bitWords + intWords + longs;
+        refCount = refs;
+        indexes = Collections.unmodifiableMap(new HashMap<>(builder.indexes));
+    }
+
+    /**
+     * Get a new layout builder.
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get a storage builder for this layout, with every attribute undefined.
+     *
+     * @return the storage builder
+     */
+    public NodeStorage.Builder newStorage() {
+        return new NodeStorage.Builder(this, new long[wordCount], new Object[refCount]);
+    }
+
+    /**
+     * Get the number of attributes of this layout.
+     *
+     * @return the number of attributes
+     */
+    public int getAttributeCount() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of an attribute.
+     *
+     * @param attribute the attribute index
+     * @return the attribute name
+     */
+    public String getName(int attribute) {
+        return names[attribute];
+    }
+
+    /**
+     * Get the index of the attribute with the given name.
+     *
+     * @param name the attribute name
+     * @return the attribute index, or -1 if there is no such attribute
+     */
+    public int indexOf(String name) {
+        final Integer index = indexes.get(name);
+        return index == null ? -1 : index.intValue();
+    }
+
+    /**
+     * Get the estimated heap footprint of a storage instance of this layout on a 64-bit virtual machine with
+     * compressed references, not counting shared strings and objects.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getStorageFootprint() {
+        // storage object: header and three references
+        return align(12 + 3 * 4) + align(16 + 8L * wordCount) + align(16 + 4L * refCount);
+    }
+
+    private static long align(final long size) {
+        return size + 7 & ~7L;
+    }
+
+    byte kind(final int attribute) {
+        return kinds[attribute];
+    }
+
+    int slot(final int attribute) {
+        return slots[attribute];
+    }
+
+    int definedBit(final int attribute) {
+        return definedBits[attribute];
+    }
+
+    /**
+     * A builder for a node layout.  Each {@code add} method returns the index of the new attribute, which generated
+     * code keeps in a constant.
+     */
+    public static final class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<Byte> kinds = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        Builder() {
+        }
+
+        /**
+         * Add a {@code boolean} attribute.
+         *
+         * @param name the attribute name
+         * @return the attribute index
+         */
+        public int addBoolean(String name) {
+            return add(name, BOOLEAN);
+        }
+
+        /**
+         * Add an {@code int} attribute.
+         *
+         * @param name the attribute name
+         * @return the attribute index
+         */
+        public int addInt(String name) {
+            return add(name, INT);
+        }
+
+        /**
+         * Add a {@code long} attribute.
+         *
+         * @param name the attribute name
+         * @return the attribute index
+         */
+        public int addLong(String name) {
+            return add(name, LONG);
+        }
+
+        /**
+         * Add a string attribute.
+         *
+         * @param name the attribute name
+         * @return the attribute index
+         */
+        public int addString(String name) {
+            return add(name, STRING);
+        }
+
+        /**
+         * Add an attribute of any other type.
+         *
+         * @param name the attribute name
+         * @return the attribute index
+         */
+        public int addObject(String name) {
+            return add(name, OBJECT);
+        }
+
+        private int add(final String name, final byte kind) {
+            if (name == null) {
+                throw new IllegalArgumentException(MESSAGES.nullParameter("name"));
+            }
+            if (indexes.containsKey(name)) {
+                throw new IllegalArgumentException(MESSAGES.duplicateAttribute(name));
+            }
+            final int index = names.size();
+            names.add(name);
+            kinds.add(Byte.valueOf(kind));
+            indexes.put(name, Integer.valueOf(index));
+            return index;
+        }
+
+        /**
+         * Build the layout.
+         *
+         * @return the layout
+         */
+        public NodeLayout build() {
+            return new NodeLayout(this);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The compact, immutable attribute storage of a generated node, laid out according to a {@link NodeLayout}.
+ * Primitive attributes are held unboxed and booleans are packed into bits.  Strings are deduplicated through a small
+ * table of weakly referenced instances, so the many resources which repeat the same values (levels, names of shared
+ * handlers and so on) mostly hold references to a single instance.
+ * <p>
+ * Changing an attribute produces a new storage instance, leaving the original unchanged.
+ */
+public final class NodeStorage {
+
+    private static final int DEDUPE_TABLE_SIZE = 4096;
+
+    private static final AtomicReferenceArray<WeakReference<String>> dedupeTable = new AtomicReferenceArray<>(DEDUPE_TABLE_SIZE);
+
+    private final NodeLayout layout;
+    private final long[] words;
+    private final Object[] refs;
+
+    NodeStorage(final NodeLayout layout, final long[] words, final Object[] refs) {
+        this.layout = layout;
+        this.words = words;
+        this.refs = refs;
+    }
+
+    /**
+     * Get the layout of this storage.
+     *
+     * @return the layout
+     */
+    public NodeLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Determine whether an attribute is defined.
+     *
+     * @param attribute the attribute index
+     * @return {@code true} if the attribute has a value
+     */
+    public boolean isDefined(int attribute) {
+        final int bit = layout.definedBit(attribute);
+        return bit == -1 ? refs[layout.slot(attribute)] != null : getBit(words, bit);
+    }
+
+    /**
+     * Get the value of a boolean attribute.
+     *
+     * @param attribute the attribute index
+     * @return the value, or {@code false} if it is undefined
+     */
+    public boolean getBoolean(int attribute) {
+        check(attribute, NodeLayout.BOOLEAN, "boolean");
+        return getBit(words, layout.slot(attribute));
+    }
+
+    /**
+     * Get the value of an {@code int} attribute.
+     *
+     * @param attribute the attribute index
+     * @return the value, or 0 if it is undefined
+     */
+    public int getInt(int attribute) {
+        check(attribute, NodeLayout.INT, "int");
+        final int slot = layout.slot(attribute);
+        return (int) (words[slot >>> 1] >>> ((slot & 1) << 5));
+    }
+
+    /**
+     * Get the value of a {@code long} attribute.
+     *
+     * @param attribute the attribute index
+     * @return the value, or 0 if it is undefined
+     */
+    public long getLong(int attribute) {
+        check(attribute, NodeLayout.LONG, "long");
+        return words[layout.slot(attribute)];
+    }
+
+    /**
+     * Get the value of a string attribute.
+     *
+     * @param attribute the attribute index
+     * @return the value, or {@code null} if it is undefined
+     */
+    public String getString(int attribute) {
+        check(attribute, NodeLayout.STRING, "string");
+        return (String) refs[layout.slot(attribute)];
+    }
+
+    /**
+     * Get the value of an object attribute.
+     *
+     * @param attribute the attribute index
+     * @param type the value type
+     * @param <T> the value type
+     * @return the value, or {@code null} if it is undefined
+     */
+    public <T> T getObject(int attribute, Class<T> type) {
+        check(attribute, NodeLayout.OBJECT, "object");
+        return type.cast(refs[layout.slot(attribute)]);
+    }
+
+    /**
+     * Get a copy of this storage with one attribute changed.
+     *
+     * @param attribute the attribute index
+     * @param value the new value
+     * @return the new storage
+     */
+    public NodeStorage withBoolean(int attribute, boolean value) {
+        final Builder builder = toBuilder();
+        builder.setBoolean(attribute, value);
+        return builder.build();
+    }
+
+    /**
+     * Get a copy of this storage with one attribute changed.
+     *
+     * @param attribute the attribute index
+     * @param value the new value
+     * @return the new storage
+     */
+    public NodeStorage withInt(int attribute, int value) {
+        final Builder builder = toBuilder();
+        builder.setInt(attribute, value);
+        return builder.build();
+    }
+
+    /**
+     * Get a copy of this storage with one attribute changed.
+     *
+     * @param attribute the attribute index
+     * @param value the new value
+     * @return the new storage
+     */
+    public NodeStorage withLong(int attribute, long value) {
+        final Builder builder = toBuilder();
+        builder.setLong(attribute, value);
+        return builder.build();
+    }
+
+    /**
+     * Get a copy of this storage with one attribute changed.
+     *
+     * @param attribute the attribute index
+     * @param value the new value, or {@code null} to undefine it
+     * @return the new storage
+     */
+    public NodeStorage withString(int attribute, String value) {
+        final Builder builder = toBuilder();
+        builder.setString(attribute, value);
+        return builder.build();
+    }
+
+    /**
+     * Get a copy of this storage with one attribute changed.
+     *
+     * @param attribute the attribute index
+     * @param value the new value, or {@code null} to undefine it
+     * @return the new storage
+     */
+    public NodeStorage withObject(int attribute, Object value) {
+        final Builder builder = toBuilder();
+        builder.setObject(attribute, value);
+        return builder.build();
+    }
+
+    /**
+     * Get a copy of this storage with one attribute undefined.
+     *
+     * @param attribute the attribute index
+     * @return the new storage
+     */
+    public NodeStorage without(int attribute) {
+        final Builder builder = toBuilder();
+        builder.undefine(attribute);
+        return builder.build();
+    }
+
+    /**
+     * Get a builder initialized with the content of this storage.
+     *
+     * @return the builder
+     */
+    public Builder toBuilder() {
+        return new Builder(layout, words.clone(), refs.clone());
+    }
+
+    /**
+     * Add every defined primitive and string attribute to the given object model.  Object attributes are left to the
+     * node, which knows how to convert them.
+     *
+     * @param model the target model
+     */
+    public void writeAttributes(ModelNode model) {
+        final int count = layout.getAttributeCount();
+        for (int i = 0; i < count; i ++) {
+            if (! isDefined(i)) {
+                continue;
+            }
+            switch (layout.kind(i)) {
+                case NodeLayout.BOOLEAN: model.get(layout.getName(i)).set(getBoolean(i)); break;
+                case NodeLayout.INT: model.get(layout.getName(i)).set(getInt(i)); break;
+                case NodeLayout.LONG: model.get(layout.getName(i)).set(getLong(i)); break;
+                case NodeLayout.STRING: model.get(layout.getName(i)).set(getString(i)); break;
+            }
+        }
+    }
+
+    /**
+     * Write every defined primitive and string attribute to the given sink, as keys and values of the object which
+     * the caller has started.  Object attributes are left to the node, which knows how to convert them.
+     *
+     * @param sink the target sink
+     * @throws IOException if writing failed
+     */
+    public void writeAttributes(ModelSink sink) throws IOException {
+        final int count = layout.getAttributeCount();
+        for (int i = 0; i < count; i ++) {
+            if (! isDefined(i)) {
+                continue;
+            }
+            final byte kind = layout.kind(i);
+            if (kind == NodeLayout.OBJECT) {
+                continue;
+            }
+            sink.key(layout.getName(i));
+            switch (kind) {
+                case NodeLayout.BOOLEAN: sink.value(getBoolean(i)); break;
+                case NodeLayout.INT: sink.value(getInt(i)); break;
+                case NodeLayout.LONG: sink.value(getLong(i)); break;
+                case NodeLayout.STRING: sink.value(getString(i)); break;
+            }
+        }
+    }
+
+    /**
+     * Get the estimated heap footprint of this storage, not counting shared strings and objects.
+     *
+     * @return the estimated size in bytes
+     * @see NodeLayout#getStorageFootprint()
+     */
+    public long getFootprint() {
+        return layout.getStorageFootprint();
+    }
+
+    public boolean equals(final Object obj) {
+        return obj instanceof NodeStorage && equals((NodeStorage) obj);
+    }
+
+    public boolean equals(final NodeStorage obj) {
+        return obj == this || obj != null && layout == obj.layout && Arrays.equals(words, obj.words) && Arrays.equals(refs, obj.refs);
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(words) * 31 + Arrays.hashCode(refs);
+    }
+
+    private void check(final int attribute, final byte kind, final String kindName) {
+        if (layout.kind(attribute) != kind) {
+            throw new IllegalArgumentException(MESSAGES.wrongAttributeKind(layout.getName(attribute), kindName));
+        }
+    }
+
+    static boolean getBit(final long[] words, final int bit) {
+        return (words[bit >>> 6] & 1L << bit) != 0;
+    }
+
+    static void setBit(final long[] words, final int bit, final boolean value) {
+        if (value) {
+            words[bit >>> 6] |= 1L << bit;
+        } else {
+            words[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+
+    /**
+     * Get the shared instance of a string.  The table has a fixed number of slots, each holding a weak reference to the
+     * last string which hashed to it, so it never grows, takes no lock, and does not keep a string alive once no
+     * storage refers to it.  A string whose slot holds a different value replaces it, so deduplication is best-effort:
+     * values which repeat often stay in the table, and a rare value costs at most one duplicate instance.
+     *
+     * @param string the string
+     * @return the shared instance of an equal string, or {@code string} itself
+     */
+    static String dedupe(final String string) {
+        final int hash = string.hashCode();
+        final int slot = (hash ^ hash >>> 16) & (DEDUPE_TABLE_SIZE - 1);
+        final WeakReference<String> ref = dedupeTable.get(slot);
+        final String existing = ref == null ? null : ref.get();
+        if (existing != null && existing.equals(string)) {
+            return existing;
+        }
+        dedupeTable.lazySet(slot, new WeakReference<>(string));
+        return string;
+    }
+
+    /**
+     * A builder for node storage.  A builder may only be used to build a single storage instance.
+     */
+    public static final class Builder {
+        private final NodeLayout layout;
+        private long[] words;
+        private Object[] refs;
+
+        Builder(final NodeLayout layout, final long[] words, final Object[] refs) {
+            this.layout = layout;
+            this.words = words;
+            this.refs = refs;
+        }
+
+        /**
+         * Set the value of a boolean attribute.
+         *
+         * @param attribute the attribute index
+         * @param value the value
+         * @return this builder
+         */
+        public Builder setBoolean(int attribute, boolean value) {
+            check(attribute, NodeLayout.BOOLEAN, "boolean");
+            setBit(words, layout.slot(attribute), value);
+            setBit(words, layout.definedBit(attribute), true);
+            return this;
+        }
+
+        /**
+         * Set the value of an {@code int} attribute.
+         *
+         * @param attribute the attribute index
+         * @param value the value
+         * @return this builder
+         */
+        public Builder setInt(int attribute, int value) {
+            check(attribute, NodeLayout.INT, "int");
+            final int slot = layout.slot(attribute);
+            final int shift = (slot & 1) << 5;
+            words[slot >>> 1] = words[slot >>> 1] & ~(0xffffffffL << shift) | (value & 0xffffffffL) << shift;
+            setBit(words, layout.definedBit(attribute), true);
+            return this;
+        }
+
+        /**
+         * Set the value of a {@code long} attribute.
+         *
+         * @param attribute the attribute index
+         * @param value the value
+         * @return this builder
+         */
+        public Builder setLong(int attribute, long value) {
+            check(attribute, NodeLayout.LONG, "long");
+            words[layout.slot(attribute)] = value;
+            setBit(words, layout.definedBit(attribute), true);
+            return this;
+        }
+
+        /**
+         * Set the value of a string attribute, or undefine it if the value is {@code null}.
+         *
+         * @param attribute the attribute index
+         * @param value the value
+         * @return this builder
+         */
+        public Builder setString(int attribute, String value) {
+            check(attribute, NodeLayout.STRING, "string");
+            refs[layout.slot(attribute)] = value == null ? null : dedupe(value);
+            return this;
+        }
+
+        /**
+         * Set the value of an object attribute, or undefine it if the value is {@code null}.
+         *
+         * @param attribute the attribute index
+         * @param value the value
+         * @return this builder
+         */
+        public Builder setObject(int attribute, Object value) {
+            check(attribute, NodeLayout.OBJECT, "object");
+            refs[layout.slot(attribute)] = value;
+            return this;
+        }
+
+        /**
+         * Undefine an attribute.
+         *
+         * @param attribute the attribute index
+         * @return this builder
+         */
+        public Builder undefine(int attribute) {
+            final int bit = layout.definedBit(attribute);
+            if (bit == -1) {
+                refs[layout.slot(attribute)] = null;
+                return this;
+            }
+            setBit(words, bit, false);
+            switch (layout.kind(attribute)) {
+                case NodeLayout.BOOLEAN: {
+                    setBit(words, layout.slot(attribute), false);
+                    break;
+                }
+                case NodeLayout.INT: {
+                    final int slot = layout.slot(attribute);
+                    words[slot >>> 1] &= ~(0xffffffffL << ((slot & 1) << 5));
+                    break;
+                }
+                case NodeLayout.LONG: {
+                    words[layout.slot(attribute)] = 0L;
+                    break;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Build the storage.  The builder may not be used afterwards.
+         *
+         * @return the storage
+         */
+        public NodeStorage build() {
+            final NodeStorage storage = new NodeStorage(layout, words, refs);
+            words = null;
+            refs = null;
+            return storage;
+        }
+
+        private void check(final int attribute, final byte kind, final String kindName) {
+            if (layout.kind(attribute) != kind) {
+                throw new IllegalArgumentException(MESSAGES.wrongAttributeKind(layout.getName(attribute), kindName));
+            }
+        }
+    }
+}
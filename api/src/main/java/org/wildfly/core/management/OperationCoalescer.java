@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pre-execution stage which collapses the steps of a batch into their net effect.
+ *
+ * @see CoalescingOperationHandler
+ */
+final class OperationCoalescer {
+
+    private OperationCoalescer() {
+    }
+
+    /**
+     * Determine which steps of a batch are redundant.  A redundant step is not applied, but must still be
+     * {@linkplain OperationPipeline#validateSkipped(WorkingModel, Operation, java.util.Set) validated} at its position
+     * in the batch.  An add and the removal which cancels it are only both dropped if no other step of the batch
+     * touches the resource in between, so that every other dropped step can be validated against the resource it
+     * would have seen.
+     *
+     * @param system the managed system
+     * @param working the working model the batch is about to be applied to
+     * @param operations the operations of the batch
+     * @param skipped the array to populate with {@code true} for each redundant step
+     * @return the number of redundant steps
+     */
+    static int coalesce(final ManagedSystem system, final WorkingModel working, final List<? extends Operation> operations, final boolean[] skipped) {
+        final int size = operations.size();
+        final CoalescingOperationHandler.Effect[] effects = new CoalescingOperationHandler.Effect[size];
+        final Map<PathAddress, Map<String, Integer>> lastWrites = new HashMap<>();
+        int barrier = 0;
+        int count = 0;
+        for (int i = 0; i < size; i ++) {
+            skipped[i] = false;
+            final Operation operation = operations.get(i);
+            final PathAddress address = operation.getAddress();
+            final CoalescingOperationHandler<Operation> handler = getHandler(system, operation);
+            final CoalescingOperationHandler.Effect effect = handler == null || address.isMultiTarget() ? CoalescingOperationHandler.Effect.OTHER : handler.getEffect(operation);
+            effects[i] = effect;
+            switch (effect) {
+                case WRITE: {
+                    Map<String, Integer> writes = lastWrites.get(address);
+                    if (writes == null) {
+                        lastWrites.put(address, writes = new HashMap<>());
+                    }
+                    final Integer previous = writes.put(handler.getWrittenAttribute(operation), Integer.valueOf(i));
+                    if (previous != null && ! skipped[previous.intValue()]) {
+                        skipped[previous.intValue()] = true;
+                        count ++;
+                    }
+                    break;
+                }
+                case REMOVE: {
+                    int add = -1;
+                    boolean nested = false;
+                    boolean removedBefore = false;
+                    for (int j = barrier; j < i; j ++) {
+                        final PathAddress other = operations.get(j).getAddress();
+                        if (! other.startsWith(address)) {
+                            continue;
+                        }
+                        if (add != -1) {
+                            // a step between the add and the removal can only be validated if the add is executed
+                            nested = true;
+                        }
+                        if (skipped[j]) {
+                            continue;
+                        }
+                        if (other.size() > address.size() || effects[j] == CoalescingOperationHandler.Effect.WRITE) {
+                            // superseded by the removal
+                            skipped[j] = true;
+                            count ++;
+                        } else if (effects[j] == CoalescingOperationHandler.Effect.ADD) {
+                            add = j;
+                            nested = false;
+                        } else if (add == -1) {
+                            removedBefore = true;
+                        }
+                    }
+                    // an add which would fail must still be executed, so that the batch fails
+                    if (add != -1 && ! nested && (removedBefore || working.resolve(address) == null)) {
+                        skipped[add] = true;
+                        skipped[i] = true;
+                        count += 2;
+                    }
+                    break;
+                }
+                case OTHER: {
+                    barrier = i + 1;
+                    lastWrites.clear();
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CoalescingOperationHandler<Operation> getHandler(final ManagedSystem system, final Operation operation) {
+        final ModelOperationHandler<?> handler = system.getOperationHandler(operation.getName());
+        return handler instanceof CoalescingOperationHandler ? (CoalescingOperationHandler<Operation>) handler : null;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * An exception which indicates that an operation could not be executed.  Throwing this exception from any stage of
+ * operation execution causes the enclosing transaction to be rolled back.
+ */
+public class OperationFailedException extends Exception {
+
+    private static final long serialVersionUID = -4637392725386391276L;
+
+    /**
+     * Constructs a new {@code OperationFailedException} instance.  The message is left blank ({@code null}), and no
+     * cause is specified.
+     */
+    public OperationFailedException() {
+    }
+
+    /**
+     * Constructs a new {@code OperationFailedException} instance with an initial message.  No cause is specified.
+     *
+     * @param msg the message
+     */
+    public OperationFailedException(final String msg) {
+        super(msg);
+    }
+
+    /**
+     * Constructs a new {@code OperationFailedException} instance with an initial cause.  If a non-{@code null} cause
+     * is specified, its message is used to initialize the message of this {@code OperationFailedException}; otherwise
+     * the message is left blank ({@code null}).
+     *
+     * @param cause the cause
+     */
+    public OperationFailedException(final Throwable cause) {
+        super(cause);
+    }
+
+    /**
+     * Constructs a new {@code OperationFailedException} instance with an initial message and cause.
+     *
+     * @param msg the message
+     * @param cause the cause
+     */
+    public OperationFailedException(final String msg, final Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.jboss.msc.txn.CancellableContext;
+
+/**
+ * The future result of an asynchronously executed operation or batch.
+ * <p>
+ * Cancellation is cooperative: the execution checks for cancellation between pipeline stages, and a cancelled
+ * transaction is never published.  Once a transaction has started to publish its changes it can no longer be
+ * cancelled, so {@link #cancel(boolean)} returns {@code false} from that point on.  If a {@link CancellableContext}
+ * is associated with the operation, a cancellation requested through the context is honored in the same way, and the
+ * context is notified via {@link CancellableContext#cancelled()} once the operation was actually cancelled.
+ *
+ * @param <T> the result type
+ */
+public final class OperationFuture<T> implements Future<T> {
+
+    private static final int ST_RUNNING = 0;
+    private static final int ST_PUBLISHING = 1;
+    private static final int ST_COMPLETE = 2;
+    private static final int ST_FAILED = 3;
+    private static final int ST_CANCELLED = 4;
+
+    private final CancellableContext context;
+    private int state;
+    private T result;
+    private Throwable failure;
+    private List<Listener<? super T>> listeners = new ArrayList<>();
+
+    OperationFuture(final CancellableContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Attempt to cancel the operation.
+     *
+     * @param mayInterruptIfRunning ignored; operations are never interrupted
+     * @return {@code true} if the operation was cancelled, {@code false} if it had already started to publish or had
+     *      completed
+     */
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        final List<Listener<? super T>> listeners;
+        synchronized (this) {
+            if (state != ST_RUNNING) {
+                return state == ST_CANCELLED;
+            }
+            state = ST_CANCELLED;
+            listeners = takeListeners();
+        }
+        notifyListeners(listeners);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        synchronized (this) {
+            return state == ST_CANCELLED;
+        }
+    }
+
+    public boolean isDone() {
+        synchronized (this) {
+            return state > ST_PUBLISHING;
+        }
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (state <= ST_PUBLISHING) {
+                wait();
+            }
+            return getResult();
+        }
+    }
+
+    public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        synchronized (this) {
+            while (state <= ST_PUBLISHING) {
+                if (remaining <= 0L) {
+                    throw new TimeoutException();
+                }
+                final long start = System.nanoTime();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining -= System.nanoTime() - start;
+            }
+            return getResult();
+        }
+    }
+
+    /**
+     * Add a listener which is called when this future completes, fails or is cancelled.  If the future is already
+     * done, the listener is called immediately on the calling thread; otherwise it is called on the thread which
+     * completes the future.
+     *
+     * @param listener the listener
+     */
+    public void addListener(final Listener<? super T> listener) {
+        synchronized (this) {
+            if (state <= ST_PUBLISHING) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.handleDone(this);
+    }
+
+    /**
+     * Check whether cancellation was requested, either directly or through the associated context.
+     *
+     * @return {@code true} if the operation is cancelled
+     */
+    boolean checkCancelled() {
+        if (context != null && context.isCancelRequested() && cancel(false)) {
+            context.cancelled();
+        }
+        return isCancelled();
+    }
+
+    /**
+     * Mark the start of publication, after which the operation can no longer be cancelled.
+     *
+     * @return {@code true} if publication may proceed, {@code false} if the operation was cancelled
+     */
+    boolean beginPublish() {
+        if (context != null && context.isCancelRequested() && cancel(false)) {
+            context.cancelled();
+            return false;
+        }
+        synchronized (this) {
+            if (state == ST_RUNNING) {
+                state = ST_PUBLISHING;
+            }
+            return state == ST_PUBLISHING;
+        }
+    }
+
+    void complete(final T result) {
+        final List<Listener<? super T>> listeners;
+        synchronized (this) {
+            if (state > ST_PUBLISHING) {
+                return;
+            }
+            this.result = result;
+            state = ST_COMPLETE;
+            listeners = takeListeners();
+        }
+        notifyListeners(listeners);
+    }
+
+    void fail(final Throwable failure) {
+        final List<Listener<? super T>> listeners;
+        synchronized (this) {
+            if (state > ST_PUBLISHING) {
+                return;
+            }
+            this.failure = failure;
+            state = ST_FAILED;
+            listeners = takeListeners();
+        }
+        notifyListeners(listeners);
+    }
+
+    private T getResult() throws ExecutionException {
+        assert Thread.holdsLock(this);
+        switch (state) {
+            case ST_COMPLETE: return result;
+            case ST_FAILED: throw new ExecutionException(failure);
+            default: throw new CancellationException();
+        }
+    }
+
+    private List<Listener<? super T>> takeListeners() {
+        assert Thread.holdsLock(this);
+        final List<Listener<? super T>> listeners = this.listeners;
+        this.listeners = null;
+        notifyAll();
+        return listeners;
+    }
+
+    private void notifyListeners(final List<Listener<? super T>> listeners) {
+        for (Listener<? super T> listener : listeners) {
+            listener.handleDone(this);
+        }
+    }
+
+    /**
+     * A listener for the completion of an operation future.
+     *
+     * @param <T> the result type
+     */
+    public interface Listener<T> {
+
+        /**
+         * Handle the completion, failure or cancellation of the future.
+         *
+         * @param future the future
+         */
+        void handleDone(OperationFuture<? extends T> future);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The built-in operation metrics of a managed system.  Latency histograms are kept per operation name and address
+ * pattern, along with histograms of the lock wait time and of the time spent in each {@linkplain OperationPhase
+ * phase} of a transaction.  Each operation of a transaction is charged the latency of the whole transaction, which
+ * is what its caller observes.
+ * <p>
+ * The address pattern of an operation is its address with the value of every element replaced by a wildcard, so
+ * that for example every logger of a logging subsystem shares one histogram.  The number of histograms is therefore
+ * bounded by the number of resource types in the model, however many resources are created over time.  Since
+ * operation names come from clients, the number of operation histograms is also capped; operations beyond the cap
+ * are charged to a single overflow histogram.
+ * <p>
+ * The metrics may be read through the {@value #READ_OPERATION_NAME} operation, which every managed system handles.
+ * Reading them takes no model lock and is not itself recorded as a transaction.
+ */
+public final class OperationMetrics implements OperationMetricsListener {
+
+    /**
+     * The name of the operation which reads the operation metrics.
+     */
+    public static final String READ_OPERATION_NAME = "read-operation-metrics";
+
+    /**
+     * The maximum number of operation histograms.
+     */
+    static final int MAX_OPERATION_HISTOGRAMS = 1024;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<PathAddress, LatencyHistogram>> operations = new ConcurrentHashMap<>();
+    private final AtomicInteger operationHistogramCount = new AtomicInteger();
+    private final LatencyHistogram overflow = new LatencyHistogram();
+    private final LatencyHistogram transactions = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram[] phases;
+
+    OperationMetrics() {
+        final OperationPhase[] values = OperationPhase.values();
+        phases = new LatencyHistogram[values.length];
+        for (int i = 0; i < values.length; i ++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    public void transactionCompleted(final TransactionTiming timing) {
+        final long total = timing.getTotalNanos();
+        transactions.record(total);
+        lockWait.record(timing.getLockWaitNanos());
+        for (OperationPhase phase : OperationPhase.values()) {
+            phases[phase.ordinal()].record(timing.getPhaseNanos(phase));
+        }
+        for (Operation operation : timing.getOperations()) {
+            getHistogram(operation.getName(), operation.getAddress()).record(total);
+        }
+    }
+
+    /**
+     * Get the latency histogram of the transactions.
+     *
+     * @return the transaction histogram
+     */
+    public LatencyHistogram getTransactionLatency() {
+        return transactions;
+    }
+
+    /**
+     * Get the histogram of the time transactions spent waiting for locks.
+     *
+     * @return the lock wait histogram
+     */
+    public LatencyHistogram getLockWait() {
+        return lockWait;
+    }
+
+    /**
+     * Get the histogram of the time transactions spent in a phase.
+     *
+     * @param phase the phase
+     * @return the phase histogram
+     */
+    public LatencyHistogram getPhaseLatency(OperationPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Get the latency histogram of an operation at the addresses matching the pattern of an address.
+     *
+     * @param operationName the operation name
+     * @param address the operation address
+     * @return the histogram, or {@code null} if no such operation was recorded
+     */
+    public LatencyHistogram getOperationLatency(String operationName, PathAddress address) {
+        final ConcurrentHashMap<PathAddress, LatencyHistogram> byPattern = operations.get(operationName);
+        return byPattern == null ? null : byPattern.get(toPattern(address));
+    }
+
+    /**
+     * Clear every histogram.
+     */
+    public void reset() {
+        transactions.reset();
+        lockWait.reset();
+        for (LatencyHistogram histogram : phases) {
+            histogram.reset();
+        }
+        operations.clear();
+        operationHistogramCount.set(0);
+        overflow.reset();
+    }
+
+    /**
+     * Get a DMR representation of the metrics.
+     *
+     * @return the model node
+     */
+    public ModelNode toModelNode() {
+        final ModelNode node = new ModelNode();
+        node.get("transactions").set(transactions.toModelNode());
+        node.get("lock-wait").set(lockWait.toModelNode());
+        final ModelNode phasesNode = node.get("phases");
+        for (OperationPhase phase : OperationPhase.values()) {
+            phasesNode.get(phase.getDisplayName()).set(phases[phase.ordinal()].toModelNode());
+        }
+        final ModelNode operationsNode = node.get("operations");
+        operationsNode.setEmptyObject();
+        for (Map.Entry<String, ConcurrentHashMap<PathAddress, LatencyHistogram>> entry : operations.entrySet()) {
+            final ModelNode operationNode = operationsNode.get(entry.getKey());
+            for (Map.Entry<PathAddress, LatencyHistogram> patternEntry : entry.getValue().entrySet()) {
+                operationNode.get(toString(patternEntry.getKey())).set(patternEntry.getValue().toModelNode());
+            }
+        }
+        node.get("other-operations").set(overflow.toModelNode());
+        return node;
+    }
+
+    private LatencyHistogram getHistogram(final String operationName, final PathAddress address) {
+        final PathAddress pattern = toPattern(address);
+        ConcurrentHashMap<PathAddress, LatencyHistogram> byPattern = operations.get(operationName);
+        if (byPattern != null) {
+            final LatencyHistogram histogram = byPattern.get(pattern);
+            if (histogram != null) {
+                return histogram;
+            }
+        }
+        if (operationHistogramCount.incrementAndGet() > MAX_OPERATION_HISTOGRAMS) {
+            operationHistogramCount.decrementAndGet();
+            return overflow;
+        }
+        if (byPattern == null) {
+            byPattern = new ConcurrentHashMap<>();
+            final ConcurrentHashMap<PathAddress, LatencyHistogram> appearing = operations.putIfAbsent(operationName, byPattern);
+            if (appearing != null) {
+                byPattern = appearing;
+            }
+        }
+        return getHistogram(byPattern, pattern);
+    }
+
+    private LatencyHistogram getHistogram(final ConcurrentMap<PathAddress, LatencyHistogram> byPattern, final PathAddress pattern) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final LatencyHistogram appearing = byPattern.putIfAbsent(pattern, histogram);
+        if (appearing != null) {
+            // another thread created it and took the slot
+            operationHistogramCount.decrementAndGet();
+            return appearing;
+        }
+        return histogram;
+    }
+
+    private static PathAddress toPattern(final PathAddress address) {
+        final List<PathElement> elements = new ArrayList<>(address.size());
+        boolean changed = false;
+        for (PathElement element : address) {
+            if (element.isWildcard()) {
+                elements.add(element);
+            } else {
+                elements.add(PathElement.pathElement(element.getKey()));
+                changed = true;
+            }
+        }
+        return changed ? PathAddress.pathAddress(elements) : address;
+    }
+
+    private static String toString(final PathAddress address) {
+        if (address.size() == 0) {
+            return "/";
+        }
+        final StringBuilder b = new StringBuilder();
+        for (PathElement element : address) {
+            b.append('/').append(element.getKey()).append('=').append(element.getValue());
+        }
+        return b.toString();
+    }
+
+    /**
+     * The handler of the {@value #READ_OPERATION_NAME} operation.
+     */
+    static final class ReadHandler implements ReadOnlyOperationHandler<Operation> {
+        private final OperationMetrics metrics;
+
+        ReadHandler(final OperationMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public void validate(final WorkingModel model, final AbstractMutableNode<?> target, final Operation operation) {
+        }
+
+        public ModelNode apply(final WorkingModel model, final AbstractMutableNode<?> target, final Operation operation) {
+            return metrics.toModelNode();
+        }
+    }
+}
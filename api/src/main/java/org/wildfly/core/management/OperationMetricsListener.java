@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * A listener which receives the timing of every transaction executed by a managed system, for export to an external
+ * metrics system.  Listeners are called synchronously on the executing thread once the transaction has completed, so
+ * they should return quickly; exceptions thrown by a listener are ignored.
+ */
+public interface OperationMetricsListener {
+
+    /**
+     * Handle the timing of a completed transaction.
+     *
+     * @param timing the transaction timing
+     */
+    void transactionCompleted(TransactionTiming timing);
+}
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * The timed phases of a transaction in the operation pipeline.
+ */
+public enum OperationPhase {
+    /**
+     * Resolving the address and handler of each step, validating it, and running the validators.
+     */
+    VALIDATE("validate"),
+    /**
+     * Applying each step to the working copy of the state.
+     */
+    APPLY("apply"),
+    /**
+     * Running the commit listeners.
+     */
+    LISTENERS("listeners"),
+    /**
+     * Appending the change to the change journal.
+     */
+    PERSIST("persist"),
+    /**
+     * Publishing the working copy as the new state.
+     */
+    PUBLISH("publish"),
+    ;
+
+    private final String displayName;
+
+    OperationPhase(final String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Get the name of this phase as it appears in the management model.
+     *
+     * @return the display name
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+}
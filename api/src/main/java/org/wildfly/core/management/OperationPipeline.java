@@ -0,0 +1,536 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The operation execution pipeline of a managed system.  The steps of a batch are first collapsed into their net
+ * effect (see {@link CoalescingOperationHandler}).  Each remaining operation then passes through distinct stages: its
+ * address and handler are resolved, it is validated, it is applied to a working copy of the current state, and the
+ * nodes it changed are checked by the immediate validators of the {@linkplain ValidatorEngine validator engine} (if
+ * any).  Once every step of a transaction has been applied, the commit listeners and the commit-time validators are
+ * run, the change is appended to the {@linkplain ChangeJournal change journal} (if any) and the working copy is
+ * published as the new state, once per transaction.  The time spent waiting for locks and in each
+ * {@linkplain OperationPhase phase} is recorded in a {@link TransactionTiming} and reported to the system's
+ * {@linkplain OperationMetrics metrics}.
+ * <p>
+ * Transactions hold only the {@linkplain StripedModelLock write lock stripes} covering the addresses of their
+ * operations, so transactions on independent parts of the model run in parallel.  In
+ * {@linkplain ExecutionMode#OPTIMISTIC optimistic} mode, transactions hold no lock at all, and are instead validated
+ * against the {@link CommitLog} when they are published.
+ */
+final class OperationPipeline {
+
+    /**
+     * The number of times an optimistic transaction is attempted before falling back to locking.
+     */
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 16;
+
+    private final ManagedSystem system;
+
+    OperationPipeline(final ManagedSystem system) {
+        this.system = system;
+    }
+
+    List<OperationResult> execute(final List<? extends Operation> operations) {
+        return execute(operations, null);
+    }
+
+    /**
+     * Execute a transaction.
+     *
+     * @param operations the operations of the transaction
+     * @param future the future of an asynchronous execution, used to check for cancellation, or {@code null} if
+     *      the execution is synchronous
+     * @return the operation results
+     * @throws CancellationException if the execution was cancelled before it was published
+     */
+    List<OperationResult> execute(final List<? extends Operation> operations, final OperationFuture<?> future) throws CancellationException {
+        if (isReadOnly(operations)) {
+            checkCancelled(future);
+            return read(operations);
+        }
+        final TransactionTiming timing = new TransactionTiming(operations);
+        final long start = System.nanoTime();
+        List<OperationResult> results = null;
+        try {
+            results = execute(operations, future, timing);
+            return results;
+        } finally {
+            timing.complete(System.nanoTime() - start, results);
+            system.recordTiming(timing);
+        }
+    }
+
+    private List<OperationResult> execute(final List<? extends Operation> operations, final OperationFuture<?> future, final TransactionTiming timing) throws CancellationException {
+        final OperationResult[] results = new OperationResult[operations.size()];
+        final boolean[] skipped = new boolean[results.length];
+        if (system.getExecutionMode() == ExecutionMode.OPTIMISTIC) {
+            for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt ++) {
+                final WorkingState working = new WorkingState(system.getState(), true);
+                if (! attempt(working, operations, results, skipped, future, timing) || commit(working, operations, results, skipped, future, true, timing)) {
+                    return Arrays.asList(results);
+                }
+            }
+            // too much contention; fall back to locking
+        }
+        final List<PathAddress> addresses = new ArrayList<>(results.length);
+        for (Operation operation : operations) {
+            addresses.add(operation.getAddress());
+        }
+        final StripedModelLock lock = system.getLock();
+        checkCancelled(future);
+        final long lockStart = System.nanoTime();
+        final int[] stripes = lock.lock(addresses);
+        timing.addLockWait(System.nanoTime() - lockStart);
+        try {
+            for (;;) {
+                // conflicts are only possible with concurrent optimistic transactions
+                final WorkingState working = new WorkingState(system.getState(), false);
+                if (! attempt(working, operations, results, skipped, future, timing) || commit(working, operations, results, skipped, future, false, timing)) {
+                    return Arrays.asList(results);
+                }
+            }
+        } finally {
+            lock.unlock(stripes);
+        }
+    }
+
+    private boolean isReadOnly(final List<? extends Operation> operations) {
+        if (operations.isEmpty()) {
+            return false;
+        }
+        for (Operation operation : operations) {
+            if (! (system.getOperationHandler(operation.getName()) instanceof ReadOnlyOperationHandler)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run a transaction whose handlers are all {@linkplain ReadOnlyOperationHandler read-only} against the current
+     * state, without locking, journaling or publishing anything.
+     *
+     * @param operations the operations
+     * @return the operation results
+     */
+    private List<OperationResult> read(final List<? extends Operation> operations) {
+        final WorkingState working = new WorkingState(system.getState());
+        final OperationResult[] results = new OperationResult[operations.size()];
+        for (int i = 0; i < results.length; i ++) {
+            final Operation operation = operations.get(i);
+            try {
+                final ModelOperationHandler<Operation> handler = resolveHandler(operation);
+                final AbstractMutableNode<?> target = resolveAddress(working, operation);
+                validate(working, handler, target, operation);
+                results[i] = apply(working, handler, target, operation);
+            } catch (OperationFailedException e) {
+                results[i] = new FailedOperationResult(null, operation.getAddress(), operation.getName(), e.getMessage());
+                rollBack(operations, results);
+                break;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Run every step of a transaction against a working state.  The steps are first coalesced into their net effect,
+     * and redundant steps are not run at all.
+     *
+     * @param working the working state
+     * @param operations the operations
+     * @param results the array to populate with the operation results
+     * @param skipped the array to populate with the redundant steps
+     * @param future the asynchronous execution future, or {@code null} if there is none
+     * @param timing the timing of the transaction
+     * @return {@code true} if the transaction may be published, {@code false} if it failed
+     * @throws CancellationException if the execution was cancelled
+     */
+    private boolean attempt(final WorkingState working, final List<? extends Operation> operations, final OperationResult[] results, final boolean[] skipped, final OperationFuture<?> future, final TransactionTiming timing) throws CancellationException {
+        Arrays.fill(results, null);
+        coalesce(working, operations, skipped);
+        final Set<PathAddress> droppedAdds = new HashSet<>();
+        for (int i = 0; i < results.length; i ++) {
+            checkCancelled(future);
+            final Operation operation = operations.get(i);
+            try {
+                if (skipped[i]) {
+                    validateSkipped(working, operation, droppedAdds);
+                    results[i] = new SuccessfulOperationResult(null, operation.getAddress(), operation.getName(), null);
+                    continue;
+                }
+                long t = System.nanoTime();
+                final ModelOperationHandler<Operation> handler = resolveHandler(operation);
+                final AbstractMutableNode<?> target = resolveAddress(working, operation);
+                validate(working, handler, target, operation);
+                t = timing.mark(OperationPhase.VALIDATE, t);
+                working.beginStep();
+                results[i] = apply(working, handler, target, operation);
+                t = timing.mark(OperationPhase.APPLY, t);
+                validateStep(working);
+                timing.mark(OperationPhase.VALIDATE, t);
+            } catch (OperationFailedException e) {
+                results[i] = new FailedOperationResult(null, operation.getAddress(), operation.getName(), e.getMessage());
+                rollBack(operations, results);
+                return false;
+            }
+        }
+        checkCancelled(future);
+        try {
+            long t = System.nanoTime();
+            runListeners(working);
+            t = timing.mark(OperationPhase.LISTENERS, t);
+            validateCommit(working);
+            timing.mark(OperationPhase.VALIDATE, t);
+        } catch (OperationFailedException e) {
+            failAll(operations, results, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Persist and publish a transaction which has passed every stage.
+     *
+     * @param working the working state
+     * @param operations the operations
+     * @param results the operation results
+     * @param skipped the redundant steps, which are not journaled
+     * @param future the asynchronous execution future, or {@code null} if there is none
+     * @param validateReads {@code true} to check the transaction's reads for conflicts
+     * @param timing the timing of the transaction
+     * @return {@code true} if the transaction is finished, {@code false} if it conflicts and must be retried
+     * @throws CancellationException if the execution was cancelled before it started to publish
+     */
+    private boolean commit(final WorkingState working, final List<? extends Operation> operations, final OperationResult[] results, final boolean[] skipped, final OperationFuture<?> future, final boolean validateReads, final TransactionTiming timing) throws CancellationException {
+        beginPublish(future);
+        long t = System.nanoTime();
+        final ChangeJournal.Entry entry;
+        try {
+            entry = persist(working, effectiveOperations(operations, skipped));
+        } catch (OperationFailedException e) {
+            failAll(operations, results, e.getMessage());
+            return true;
+        }
+        t = timing.mark(OperationPhase.PERSIST, t);
+        boolean published = false;
+        try {
+            published = publish(working, validateReads);
+            timing.mark(OperationPhase.PUBLISH, t);
+            return published;
+        } finally {
+            if (entry != null) {
+                entry.complete(published);
+            }
+        }
+    }
+
+    /**
+     * Import a set of nodes beneath a single parent as one transaction.  The nodes are put into one working state
+     * sized for all of them, the validators run once over the whole import rather than once per node, and the result
+     * is journaled and published once.
+     *
+     * @param parentAddress the address of the parent, which must exist
+     * @param nodes the mutable nodes to import
+     * @param values the values of the nodes, in the same order
+     * @throws OperationFailedException if the import is invalid or was rejected
+     */
+    void importNodes(final PathAddress parentAddress, final List<AbstractMutableNode<?>> nodes, final List<AbstractNode> values) throws OperationFailedException {
+        final TransactionTiming timing = new TransactionTiming(Collections.<Operation>emptyList());
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            importNodes(parentAddress, nodes, values, timing);
+            ok = true;
+        } finally {
+            timing.complete(System.nanoTime() - start, ok ? Collections.<OperationResult>emptyList() : null);
+            system.recordTiming(timing);
+        }
+    }
+
+    private void importNodes(final PathAddress parentAddress, final List<AbstractMutableNode<?>> nodes, final List<AbstractNode> values, final TransactionTiming timing) throws OperationFailedException {
+        final StripedModelLock lock = system.getLock();
+        final long lockStart = System.nanoTime();
+        final int[] stripes = lock.lock(Collections.singletonList(parentAddress));
+        timing.addLockWait(System.nanoTime() - lockStart);
+        try {
+            for (;;) {
+                final WorkingState working = new WorkingState(system.getState(), false, nodes.size());
+                if (working.resolve(parentAddress) == null) {
+                    throw new OperationFailedException(MESSAGES.noSuchResource(parentAddress));
+                }
+                long t = System.nanoTime();
+                for (int i = 0; i < nodes.size(); i ++) {
+                    try {
+                        putNode(working, nodes.get(i), values.get(i));
+                    } catch (IllegalArgumentException e) {
+                        throw new OperationFailedException(e.getMessage(), e);
+                    }
+                }
+                // reject orphans, including those whose parent was removed since they were staged
+                for (AbstractMutableNode<?> mutableNode : nodes) {
+                    if (working.getNode((AbstractMutableNode<?>) mutableNode.getParent()) == null) {
+                        throw new OperationFailedException(MESSAGES.missingParentResource(mutableNode.getAddress()));
+                    }
+                }
+                t = timing.mark(OperationPhase.APPLY, t);
+                // no step was begun, so the step changes cover the whole import
+                validateStep(working);
+                t = timing.mark(OperationPhase.VALIDATE, t);
+                runListeners(working);
+                t = timing.mark(OperationPhase.LISTENERS, t);
+                validateCommit(working);
+                t = timing.mark(OperationPhase.VALIDATE, t);
+                final ChangeJournal.Entry entry = persist(working, Collections.<Operation>emptyList());
+                t = timing.mark(OperationPhase.PERSIST, t);
+                boolean published = false;
+                try {
+                    published = publish(working, false);
+                    timing.mark(OperationPhase.PUBLISH, t);
+                } finally {
+                    if (entry != null) {
+                        entry.complete(published);
+                    }
+                }
+                if (published) {
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock(stripes);
+        }
+    }
+
+    private static <N extends Node> void putNode(final WorkingState working, final AbstractMutableNode<N> mutableNode, final AbstractNode value) {
+        working.putNode(mutableNode, mutableNode.cast(value));
+    }
+
+    // stages
+
+    /**
+     * Collapse the steps of a batch into their net effect.
+     *
+     * @param working the working state
+     * @param operations the operations
+     * @param skipped the array to populate with the redundant steps
+     */
+    void coalesce(final WorkingModel working, final List<? extends Operation> operations, final boolean[] skipped) {
+        if (operations.size() > 1) {
+            OperationCoalescer.coalesce(system, working, operations, skipped);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    ModelOperationHandler<Operation> resolveHandler(final Operation operation) throws OperationFailedException {
+        final ModelOperationHandler<?> handler = system.getOperationHandler(operation.getName());
+        if (handler == null) {
+            throw new OperationFailedException(MESSAGES.noOperationHandler(operation.getName()));
+        }
+        return (ModelOperationHandler<Operation>) handler;
+    }
+
+    AbstractMutableNode<?> resolveAddress(final WorkingModel working, final Operation operation) throws OperationFailedException {
+        final PathAddress address = operation.getAddress();
+        if (address.isMultiTarget()) {
+            throw new OperationFailedException(MESSAGES.multiTargetAddress(address));
+        }
+        return working.resolve(address);
+    }
+
+    void validate(final WorkingModel working, final ModelOperationHandler<Operation> handler, final AbstractMutableNode<?> target, final Operation operation) throws OperationFailedException {
+        handler.validate(working, target, operation);
+    }
+
+    /**
+     * Validate a step which was dropped by coalescing, against the working model as it stands at the step's position
+     * in the batch.  Besides the handler's validation, the checks which applying the step would have made are
+     * repeated: an add must not find an existing resource and must find its parent, and any other step must find its
+     * target.  The removal which cancels a dropped add targets a resource which was never added, and is not checked.
+     *
+     * @param working the working model
+     * @param operation the dropped operation
+     * @param droppedAdds the addresses of the dropped adds whose removal has not been reached yet
+     * @throws OperationFailedException if the step would have failed
+     */
+    @SuppressWarnings("unchecked")
+    void validateSkipped(final WorkingModel working, final Operation operation, final Set<PathAddress> droppedAdds) throws OperationFailedException {
+        final ModelOperationHandler<Operation> handler = resolveHandler(operation);
+        final AbstractMutableNode<?> target = resolveAddress(working, operation);
+        final PathAddress address = operation.getAddress();
+        switch (((CoalescingOperationHandler<Operation>) handler).getEffect(operation)) {
+            case ADD: {
+                if (target != null) {
+                    throw new OperationFailedException(MESSAGES.duplicateResource(address));
+                }
+                if (address.size() > 0 && working.resolve(address.subAddress(0, address.size() - 1)) == null) {
+                    throw new OperationFailedException(MESSAGES.missingParentResource(address));
+                }
+                droppedAdds.add(address);
+                break;
+            }
+            case REMOVE: {
+                if (droppedAdds.remove(address)) {
+                    return;
+                }
+                // fall through
+            }
+            default: {
+                if (target == null) {
+                    throw new OperationFailedException(MESSAGES.noSuchResource(address));
+                }
+                break;
+            }
+        }
+        validate(working, handler, target, operation);
+    }
+
+    OperationResult apply(final WorkingModel working, final ModelOperationHandler<Operation> handler, final AbstractMutableNode<?> target, final Operation operation) throws OperationFailedException {
+        final ModelNode result = handler.apply(working, target, operation);
+        return new SuccessfulOperationResult(null, operation.getAddress(), operation.getName(), result);
+    }
+
+    void validateStep(final WorkingState working) throws OperationFailedException {
+        final ValidatorEngine engine = system.getValidatorEngine();
+        if (engine != null) {
+            engine.validateStep(working);
+        }
+    }
+
+    void validateCommit(final WorkingState working) throws OperationFailedException {
+        final ValidatorEngine engine = system.getValidatorEngine();
+        if (engine != null) {
+            engine.validateCommit(working);
+        }
+    }
+
+    void runListeners(final WorkingState working) throws OperationFailedException {
+        for (ModelCommitListener listener : system.getCommitListeners()) {
+            listener.beforeCommit(working);
+        }
+        final ListenerDispatcher dispatcher = system.getListenerDispatcher();
+        if (dispatcher != null) {
+            dispatcher.dispatch(working);
+        }
+    }
+
+    /**
+     * Append the changes of the working state to the change journal, if there is one.  The record is written ahead of
+     * publication, so a change is never visible before it is durable.
+     *
+     * @param working the working state
+     * @param operations the operations
+     * @return the journal entry to complete once the transaction is published or abandoned, or {@code null} if
+     *      nothing was journaled
+     * @throws OperationFailedException if the change could not be journaled
+     */
+    ChangeJournal.Entry persist(final WorkingState working, final List<? extends Operation> operations) throws OperationFailedException {
+        final ChangeJournal journal = system.getChangeJournal();
+        if (journal == null || ! working.isChanged()) {
+            return null;
+        }
+        try {
+            return journal.append(operations, working);
+        } catch (IOException e) {
+            throw new OperationFailedException(MESSAGES.journalAppendFailed(), e);
+        }
+    }
+
+    /**
+     * Publish the working state.  Other transactions may have published since the working state was derived; unless
+     * one of them wrote an address which overlaps this transaction's writes (or, if requested, its reads), the
+     * recorded changes are merged into the latest state and the result is published with a compare-and-set.
+     *
+     * @param working the working state
+     * @param validateReads {@code true} to also check the transaction's reads for conflicts
+     * @return {@code true} if the working state was published, {@code false} if it conflicts and must be retried
+     */
+    boolean publish(final WorkingState working, final boolean validateReads) {
+        if (! working.isChanged()) {
+            return true;
+        }
+        final CommitLog commitLog = system.getCommitLog();
+        final Set<PathAddress> reads = validateReads ? working.getReadSet() : Collections.<PathAddress>emptySet();
+        final Set<PathAddress> writes = working.getWriteSet();
+        final ManagedSystem.State base = working.getBase();
+        ManagedSystem.State current = base;
+        for (;;) {
+            if (current != base && commitLog.conflicts(base.getVersion(), current.getVersion(), reads, writes)) {
+                return false;
+            }
+            final ManagedSystem.State next = working.applyTo(current);
+            if (system.compareAndPublish(current, next)) {
+                commitLog.record(next.getVersion(), writes);
+                system.getReferenceIndex().update(working.getChangedNodes());
+                return true;
+            }
+            current = system.getState();
+        }
+    }
+
+    private static List<? extends Operation> effectiveOperations(final List<? extends Operation> operations, final boolean[] skipped) {
+        final List<Operation> effective = new ArrayList<>(operations.size());
+        for (int i = 0; i < skipped.length; i ++) {
+            if (! skipped[i]) {
+                effective.add(operations.get(i));
+            }
+        }
+        return effective.size() == operations.size() ? operations : effective;
+    }
+
+    private static void checkCancelled(final OperationFuture<?> future) throws CancellationException {
+        if (future != null && future.checkCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static void beginPublish(final OperationFuture<?> future) throws CancellationException {
+        if (future != null && ! future.beginPublish()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static void failAll(final List<? extends Operation> operations, final OperationResult[] results, final String message) {
+        for (int i = 0; i < results.length; i ++) {
+            final Operation operation = operations.get(i);
+            results[i] = new FailedOperationResult(null, operation.getAddress(), operation.getName(), message);
+        }
+    }
+
+    private static void rollBack(final List<? extends Operation> operations, final OperationResult[] results) {
+        for (int i = 0; i < results.length; i ++) {
+            if (results[i] == null || results[i].getStatus() == OperationStatus.SUCCESS) {
+                final Operation operation = operations.get(i);
+                results[i] = new FailedOperationResult(null, operation.getAddress(), operation.getName(), MESSAGES.operationRolledBack());
+            }
+        }
+    }
+}
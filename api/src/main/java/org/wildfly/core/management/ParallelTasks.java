@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Utilities for running a group of independent tasks and awaiting their completion.
+ */
+final class ParallelTasks {
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Run every task and wait for all of them to finish.  Tasks are submitted to the executor if there is more than
+     * one; a task which the executor rejects is run by the calling thread.  Tasks should not throw exceptions.
+     * Interruption does not stop the wait.
+     *
+     * @param tasks the tasks to run
+     * @param executor the executor, or {@code null} to run every task from the calling thread
+     * @return {@code true} if the calling thread was interrupted while waiting, in which case the caller should
+     *      restore the interrupt status
+     */
+    static boolean runAll(final List<? extends Runnable> tasks, final Executor executor) {
+        if (executor == null || tasks.size() <= 1) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            return false;
+        }
+        final CountDownLatch latch = new CountDownLatch(tasks.size());
+        for (final Runnable task : tasks) {
+            final Runnable wrapper = new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            };
+            try {
+                executor.execute(wrapper);
+            } catch (RejectedExecutionException e) {
+                wrapper.run();
+            }
+        }
+        boolean intr = false;
+        for (;;) {
+            try {
+                latch.await();
+                return intr;
+            } catch (InterruptedException e) {
+                intr = true;
+            }
+        }
+    }
+}
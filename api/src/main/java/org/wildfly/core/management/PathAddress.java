@@ -260,6 +260,27 @@ public final class PathAddress implements Iterable<PathElement> {
         return false;
     }
 
+    /**
+     * Determine whether this address is equal to, or nested beneath, the given address.
+     *
+     * @param prefix the candidate prefix address
+     * @return {@code true} if every element of {@code prefix} matches the corresponding leading element of this address
+     */
+    public boolean startsWith(PathAddress prefix) {
+        final List<PathElement> list = pathAddressList;
+        final List<PathElement> prefixList = prefix.pathAddressList;
+        final int size = prefixList.size();
+        if (size > list.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; i ++) {
+            if (! list.get(i).equals(prefixList.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Get the size of this path, in elements.
      *
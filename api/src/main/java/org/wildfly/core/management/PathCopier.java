@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The node construction context which derives a new version of the immutable node graph by path copying.
+ * <p>
+ * Only the changed nodes and their ancestors up to the root are new in the derived version; every other subtree is
+ * reused by reference.  Each ancestor is copied with {@link AbstractNode#cloneInto(NodeConstructionContext)}, which
+ * passes each of its children back through {@link #registerNode(Node)}: a child on a changed path is replaced by its
+ * new version (or dropped, if it was removed), and any other child is returned as-is; children which did not exist
+ * in the target state are then handed to the copy of their parent by
+ * {@link AbstractNode#getAddedChildren(NodeConstructionContext, Node)}.  The allocation of a commit is thus
+ * proportional to the depth of the changed nodes rather than to the size of their subtrees.
+ * <p>
+ * Since untouched subtrees are shared, the immutable parent of a shared node is the one it was created with; use the
+ * mutable nodes to navigate upwards in the current version.
+ */
+final class PathCopier implements NodeConstructionContext {
+
+    private final Map<AbstractMutableNode<?>, AbstractNode> changes;
+    private final IdentityHashMap<Node, AbstractMutableNode<?>> handles = new IdentityHashMap<>();
+    private final Set<AbstractMutableNode<?>> ancestors = Collections.newSetFromMap(new IdentityHashMap<AbstractMutableNode<?>, Boolean>());
+    private final IdentityHashMap<AbstractMutableNode<?>, AbstractNode> copies = new IdentityHashMap<>();
+    /**
+     * The nodes which do not exist in the target state, keyed by their parent mutable node.
+     */
+    private final IdentityHashMap<AbstractMutableNode<?>, List<AbstractMutableNode<?>>> added = new IdentityHashMap<>();
+
+    private PathCopier(final ManagedSystem.State target, final Map<AbstractMutableNode<?>, AbstractNode> changes) {
+        this.changes = changes;
+        for (Map.Entry<AbstractMutableNode<?>, AbstractNode> entry : changes.entrySet()) {
+            final AbstractMutableNode<?> mutableNode = entry.getKey();
+            addHandle(target, mutableNode);
+            AbstractMutableNode<?> parent = (AbstractMutableNode<?>) mutableNode.getParent();
+            if (entry.getValue() != null) {
+                handles.put(entry.getValue(), mutableNode);
+                if (parent != null && target.getResource(mutableNode) == null) {
+                    List<AbstractMutableNode<?>> children = added.get(parent);
+                    if (children == null) {
+                        added.put(parent, children = new ArrayList<>());
+                    }
+                    children.add(mutableNode);
+                }
+            }
+            while (parent != null && ancestors.add(parent)) {
+                addHandle(target, parent);
+                parent = (AbstractMutableNode<?>) parent.getParent();
+            }
+        }
+    }
+
+    private void addHandle(final ManagedSystem.State target, final AbstractMutableNode<?> mutableNode) {
+        final Node original = target.getResource(mutableNode);
+        if (original != null) {
+            handles.put(original, mutableNode);
+        }
+    }
+
+    /**
+     * Derive the new versions of the ancestors of the changed nodes, and install them, along with the changes
+     * themselves, into the given node map.
+     *
+     * @param target the state the changes are applied to
+     * @param changes the changed nodes, mapped to their new version or {@code null} if removed
+     * @param root the root mutable node
+     * @param nodeMap the node map of the derived state, which must already contain the changes
+     * @return the node map with the copied ancestors installed
+     */
+    static PersistentMap<AbstractMutableNode<?>, AbstractNode> copyPaths(final ManagedSystem.State target, final Map<AbstractMutableNode<?>, AbstractNode> changes, final AbstractMutableNode<?> root, PersistentMap<AbstractMutableNode<?>, AbstractNode> nodeMap) {
+        final PathCopier copier = new PathCopier(target, changes);
+        final Node rootNode = target.getResource(root);
+        if (rootNode != null) {
+            copier.registerNode(rootNode);
+        }
+        for (Map.Entry<AbstractMutableNode<?>, AbstractNode> entry : copier.copies.entrySet()) {
+            if (entry.getValue() == null) {
+                nodeMap = nodeMap.minus(entry.getKey());
+            } else {
+                nodeMap = nodeMap.plus(entry.getKey(), entry.getValue());
+            }
+        }
+        return nodeMap;
+    }
+
+    public <N extends Node> N registerNode(final N original) {
+        final AbstractMutableNode<?> mutableNode = handles.get(original);
+        if (mutableNode == null) {
+            // not on any changed path; share it
+            return original;
+        }
+        if (copies.containsKey(mutableNode)) {
+            return cast(original, copies.get(mutableNode));
+        }
+        AbstractNode current = changes.containsKey(mutableNode) ? changes.get(mutableNode) : (AbstractNode) original;
+        if (current != null && ancestors.contains(mutableNode)) {
+            current = (AbstractNode) current.cloneInto(this);
+        }
+        copies.put(mutableNode, current);
+        return cast(original, current);
+    }
+
+    List<Node> getAddedChildren(final Node original) {
+        final AbstractMutableNode<?> mutableNode = handles.get(original);
+        final List<AbstractMutableNode<?>> children = mutableNode == null ? null : added.get(mutableNode);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        final List<Node> nodes = new ArrayList<>(children.size());
+        for (AbstractMutableNode<?> child : children) {
+            final Node node = registerNode((Node) changes.get(child));
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <N extends Node> N cast(final N original, final Node replacement) {
+        return (N) original.getClass().cast(replacement);
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash array mapped trie.  Each update returns a new map which shares every untouched branch of the
+ * trie with the map it was derived from, so deriving a map costs time and space proportional to the number of changed
+ * entries (times the logarithmic depth of the trie) rather than to the size of the map.
+ * <p>
+ * Keys are compared either by equality or by identity, as selected when the empty map is obtained.  Keys may not be
+ * {@code null}.  The mutator methods of {@link java.util.Map} are not supported; use {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} instead.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(false, null, 0);
+    private static final PersistentMap<Object, Object> EMPTY_IDENTITY = new PersistentMap<>(true, null, 0);
+
+    private static final Object NOT_FOUND = new Object();
+
+    private final boolean identity;
+    private final TrieNode root;
+    private final int size;
+    private Set<Entry<K, V>> entrySet;
+
+    private PersistentMap(final boolean identity, final TrieNode root, final int size) {
+        this.identity = identity;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty map whose keys are compared by equality.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Get the empty map whose keys are compared by identity.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> emptyIdentity() {
+        return (PersistentMap<K, V>) EMPTY_IDENTITY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(final Object key) {
+        return root != null && key != null && root.find(this, 0, hash(key), key) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(final Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        final Object value = root.find(this, 0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * Derive a map which maps the given key to the given value.
+     *
+     * @param key the key (must not be {@code null})
+     * @param value the value
+     * @return the derived map, or this map if the key is already mapped to the same value
+     */
+    PersistentMap<K, V> plus(final K key, final V value) {
+        if (key == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("key"));
+        }
+        final boolean[] added = new boolean[1];
+        final TrieNode newRoot = (root == null ? BitmapNode.EMPTY : root).put(this, 0, hash(key), key, value, added);
+        return newRoot == root ? this : new PersistentMap<K, V>(identity, newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Derive a map which does not contain the given key.
+     *
+     * @param key the key
+     * @return the derived map, or this map if the key is not present
+     */
+    PersistentMap<K, V> minus(final Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        final TrieNode newRoot = root.remove(this, 0, hash(key), key);
+        return newRoot == root ? this : new PersistentMap<K, V>(identity, newRoot, size - 1);
+    }
+
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            this.entrySet = entrySet = new AbstractSet<Entry<K, V>>() {
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    int hash(final Object key) {
+        return identity ? System.identityHashCode(key) : key.hashCode();
+    }
+
+    boolean same(final Object key, final Object other) {
+        return identity ? key == other : key.equals(other);
+    }
+
+    static int bit(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * A node of the trie.  Each node holds an array of key/value pairs; in a {@link BitmapNode}, a pair with a
+     * {@code null} key holds a child node in place of the value.
+     */
+    abstract static class TrieNode {
+        final Object[] array;
+
+        TrieNode(final Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object find(PersistentMap<?, ?> map, int shift, int hash, Object key);
+
+        abstract TrieNode put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Remove a key.
+         *
+         * @return the new node, {@code this} if the key is not present, or {@code null} if the node is now empty
+         */
+        abstract TrieNode remove(PersistentMap<?, ?> map, int shift, int hash, Object key);
+    }
+
+    static final class BitmapNode extends TrieNode {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        BitmapNode(final int bitmap, final Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        private int index(final int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) << 1;
+        }
+
+        Object find(final PersistentMap<?, ?> map, final int shift, final int hash, final Object key) {
+            final int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            final int idx = index(bit);
+            final Object k = array[idx];
+            final Object v = array[idx + 1];
+            if (k == null) {
+                return ((TrieNode) v).find(map, shift + 5, hash, key);
+            }
+            return map.same(key, k) ? v : NOT_FOUND;
+        }
+
+        TrieNode put(final PersistentMap<?, ?> map, final int shift, final int hash, final Object key, final Object value, final boolean[] added) {
+            final int bit = bit(hash, shift);
+            final int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                final Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, idx);
+                newArray[idx] = key;
+                newArray[idx + 1] = value;
+                System.arraycopy(array, idx, newArray, idx + 2, array.length - idx);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            final Object k = array[idx];
+            final Object v = array[idx + 1];
+            if (k == null) {
+                final TrieNode child = ((TrieNode) v).put(map, shift + 5, hash, key, value, added);
+                return child == v ? this : with(idx + 1, child);
+            }
+            if (map.same(key, k)) {
+                return v == value ? this : with(idx + 1, value);
+            }
+            added[0] = true;
+            final TrieNode child = split(map, shift + 5, k, v, hash, key, value);
+            final Object[] newArray = array.clone();
+            newArray[idx] = null;
+            newArray[idx + 1] = child;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        TrieNode remove(final PersistentMap<?, ?> map, final int shift, final int hash, final Object key) {
+            final int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            final int idx = index(bit);
+            final Object k = array[idx];
+            final Object v = array[idx + 1];
+            if (k == null) {
+                final TrieNode child = ((TrieNode) v).remove(map, shift + 5, hash, key);
+                if (child == v) {
+                    return this;
+                }
+                if (child != null) {
+                    return with(idx + 1, child);
+                }
+            } else if (! map.same(key, k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            final Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+
+        private BitmapNode with(final int idx, final Object value) {
+            final Object[] newArray = array.clone();
+            newArray[idx] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static TrieNode split(final PersistentMap<?, ?> map, final int shift, final Object key1, final Object value1, final int hash2, final Object key2, final Object value2) {
+            final int hash1 = map.hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+            }
+            final boolean[] added = new boolean[1];
+            return EMPTY.put(map, shift, hash1, key1, value1, added).put(map, shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * A node holding the keys which share a full hash code.
+     */
+    static final class CollisionNode extends TrieNode {
+        private final int hash;
+
+        CollisionNode(final int hash, final Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        private int indexOf(final PersistentMap<?, ?> map, final Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (map.same(key, array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Object find(final PersistentMap<?, ?> map, final int shift, final int hash, final Object key) {
+            if (hash != this.hash) {
+                return NOT_FOUND;
+            }
+            final int idx = indexOf(map, key);
+            return idx == -1 ? NOT_FOUND : array[idx + 1];
+        }
+
+        TrieNode put(final PersistentMap<?, ?> map, final int shift, final int hash, final Object key, final Object value, final boolean[] added) {
+            if (hash != this.hash) {
+                // nest this node one level down and try again
+                return new BitmapNode(bit(this.hash, shift), new Object[] { null, this }).put(map, shift, hash, key, value, added);
+            }
+            final int idx = indexOf(map, key);
+            if (idx != -1) {
+                if (array[idx + 1] == value) {
+                    return this;
+                }
+                final Object[] newArray = array.clone();
+                newArray[idx + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            final Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        TrieNode remove(final PersistentMap<?, ?> map, final int shift, final int hash, final Object key) {
+            final int idx = hash == this.hash ? indexOf(map, key) : -1;
+            if (idx == -1) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            final Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+            return new CollisionNode(hash, newArray);
+        }
+    }
+
+    static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final ArrayDeque<Object[]> arrays = new ArrayDeque<>();
+        private final ArrayDeque<Integer> positions = new ArrayDeque<>();
+        private Entry<K, V> next;
+
+        EntryIterator(final TrieNode root) {
+            if (root != null) {
+                arrays.push(root.array);
+                positions.push(Integer.valueOf(0));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (next == null && ! arrays.isEmpty()) {
+                final Object[] array = arrays.peek();
+                final int position = positions.pop().intValue();
+                if (position == array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(Integer.valueOf(position + 2));
+                final Object key = array[position];
+                if (key == null) {
+                    arrays.push(((TrieNode) array[position + 1]).array);
+                    positions.push(Integer.valueOf(0));
+                } else {
+                    next = new SimpleImmutableEntry<>((K) key, (V) array[position + 1]);
+                }
+            }
+            return next != null;
+        }
+
+        public Entry<K, V> next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<K, V> next = this.next;
+            this.next = null;
+            return next;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * A source of property values for expression resolution.
+ */
+public interface PropertySource {
+
+    /**
+     * Get the value of a property.
+     *
+     * @param name the property name
+     * @return the property value, or {@code null} if the property is not defined
+     */
+    String getProperty(String name);
+
+    /**
+     * The property source of the system properties.  Properties whose name starts with {@code env.} are read from
+     * the environment instead.
+     */
+    PropertySource SYSTEM = new PropertySource() {
+        public String getProperty(final String name) {
+            if (name.startsWith("env.")) {
+                return System.getenv(name.substring(4));
+            }
+            return System.getProperty(name);
+        }
+    };
+}
@@ -0,0 +1,30 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+/**
+ * A model handler which never modifies the model.  A transaction whose operations all have read-only handlers is run
+ * directly against the current state: it takes no lock stripes, is not journaled or published, and is not recorded
+ * as a transaction in the {@linkplain OperationMetrics operation metrics}.
+ *
+ * @param <P> the operation payload type
+ */
+interface ReadOnlyOperationHandler<P extends Operation> extends ModelOperationHandler<P> {
+}
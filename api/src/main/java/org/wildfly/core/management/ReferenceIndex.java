@@ -0,0 +1,352 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementLogger.ROOT_LOGGER;
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A reverse index from each referenced resource to the resources and attributes which refer to it, such as the
+ * {@link ResourceLink} attributes of a resource or attributes annotated with {@code @Reference}.  When a referenced
+ * resource changes, its dependents can be found in time proportional to their number rather than by scanning the
+ * model.
+ * <p>
+ * The references of a node are obtained from the {@link ReferenceExtractor} registered for its type; extractors are
+ * normally registered by generated code.  After each transaction is published, the nodes that it changed are queued
+ * for re-indexing; publication never waits for the index.  The queue is drained by whichever publisher finds the index
+ * idle, and by every query before it reads the index, so queries always reflect the latest published state.
+ */
+public final class ReferenceIndex {
+
+    private final ManagedSystem system;
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Class<?>, Binding> bindings = new ConcurrentHashMap<>();
+    /**
+     * Incremented after every registration; bindings built from an older generation are stale.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Collection<AbstractMutableNode<?>>> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * Guards {@link #outgoing} and {@link #incoming}.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final IdentityHashMap<AbstractMutableNode<?>, List<Reference>> outgoing = new IdentityHashMap<>();
+    private final HashMap<PathAddress, Set<Reference>> incoming = new HashMap<>();
+
+    ReferenceIndex(final ManagedSystem system) {
+        this.system = system;
+    }
+
+    /**
+     * An extractor of the references held by nodes of some type.
+     *
+     * @param <R> the node type
+     */
+    public interface ReferenceExtractor<R> {
+
+        /**
+         * Report every reference held by the given node.
+         *
+         * @param node the node
+         * @param collector the collector to report references to
+         */
+        void extractReferences(R node, ReferenceCollector collector);
+    }
+
+    /**
+     * The receiver of the references reported by a {@link ReferenceExtractor}.
+     */
+    public interface ReferenceCollector {
+
+        /**
+         * Report a reference.
+         *
+         * @param attributeName the name of the attribute which holds the reference
+         * @param target the address of the referenced resource
+         */
+        void addReference(String attributeName, PathAddress target);
+    }
+
+    /**
+     * A reference from an attribute of one resource to another resource.
+     */
+    public static final class Reference {
+        private final PathAddress source;
+        private final String attributeName;
+        private final PathAddress target;
+        private final int hashCode;
+
+        Reference(final PathAddress source, final String attributeName, final PathAddress target) {
+            this.source = source;
+            this.attributeName = attributeName;
+            this.target = target;
+            hashCode = (source.hashCode() * 31 + attributeName.hashCode()) * 31 + target.hashCode();
+        }
+
+        /**
+         * Get the address of the referring resource.
+         *
+         * @return the source address
+         */
+        public PathAddress getSource() {
+            return source;
+        }
+
+        /**
+         * Get the name of the referring attribute.
+         *
+         * @return the attribute name
+         */
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        /**
+         * Get the address of the referenced resource.
+         *
+         * @return the target address
+         */
+        public PathAddress getTarget() {
+            return target;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Reference && equals((Reference) obj);
+        }
+
+        public boolean equals(final Reference obj) {
+            return obj == this || obj != null && hashCode == obj.hashCode && source.equals(obj.source) && attributeName.equals(obj.attributeName) && target.equals(obj.target);
+        }
+
+        public String toString() {
+            return source + "." + attributeName + " -> " + target;
+        }
+    }
+
+    /**
+     * Register the reference extractor for nodes of the given type or any of its subtypes.  The existing nodes of the
+     * model are indexed with the new extractor.
+     *
+     * @param nodeType the node type
+     * @param extractor the extractor
+     * @param <R> the node type
+     */
+    public <R extends Node> void addExtractor(Class<R> nodeType, ReferenceExtractor<? super R> extractor) {
+        if (nodeType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("nodeType"));
+        }
+        if (extractor == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("extractor"));
+        }
+        registrations.add(new Registration(nodeType, extractor));
+        generation.incrementAndGet();
+        final List<AbstractMutableNode<?>> affected = new ArrayList<>();
+        for (AbstractMutableNode<?> mutableNode : system.getState().getNodeMap().keySet()) {
+            if (nodeType.isAssignableFrom(mutableNode.getNodeType())) {
+                affected.add(mutableNode);
+            }
+        }
+        pending.add(affected);
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the references to the resource at the given address.
+     *
+     * @param target the address of the referenced resource
+     * @return the references to the resource (not {@code null})
+     */
+    public Set<Reference> getReferrers(PathAddress target) {
+        lock.lock();
+        try {
+            drain();
+            final Set<Reference> set = incoming.get(target);
+            return set == null ? Collections.<Reference>emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(set));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the references held by the resource at the given address.
+     *
+     * @param source the address of the referring resource
+     * @return the references held by the resource (not {@code null})
+     */
+    public List<Reference> getReferences(PathAddress source) {
+        final AbstractMutableNode<?> mutableNode = system.getState().resolve(source);
+        if (mutableNode == null) {
+            return Collections.emptyList();
+        }
+        lock.lock();
+        try {
+            drain();
+            final List<Reference> list = outgoing.get(mutableNode);
+            return list == null ? Collections.<Reference>emptyList() : Collections.unmodifiableList(new ArrayList<>(list));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue the given nodes to be re-indexed, and drain the queue if no other thread is using the index.  This method
+     * never blocks.
+     *
+     * @param changed the changed nodes
+     */
+    void update(final Collection<AbstractMutableNode<?>> changed) {
+        if (registrations.isEmpty()) {
+            return;
+        }
+        pending.add(changed);
+        // a publisher which queues while another is draining may miss the lock; the next publisher or query catches up
+        while (! pending.isEmpty() && lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Re-index the queued nodes from the latest published state.  Nodes which no longer exist are removed from the
+     * index.  A node whose extractor fails is indexed as holding no references.  Since every node is indexed from the
+     * latest state rather than from the state which queued it, the order in which batches are drained does not
+     * matter.  Must be called with the lock held.
+     */
+    private void drain() {
+        Collection<AbstractMutableNode<?>> changed;
+        while ((changed = pending.poll()) != null) {
+            reindex(system.getState(), changed);
+        }
+    }
+
+    private void reindex(final ManagedSystem.State state, final Collection<AbstractMutableNode<?>> changed) {
+        for (AbstractMutableNode<?> mutableNode : changed) {
+            final List<Reference> old = outgoing.remove(mutableNode);
+            if (old != null) {
+                for (Reference reference : old) {
+                    final Set<Reference> set = incoming.get(reference.getTarget());
+                    if (set != null && set.remove(reference) && set.isEmpty()) {
+                        incoming.remove(reference.getTarget());
+                    }
+                }
+            }
+            final Node node = state.getResource(mutableNode);
+            if (node == null) {
+                continue;
+            }
+            final List<ReferenceExtractor<Object>> extractors = getExtractors(mutableNode.getNodeType());
+            if (extractors.isEmpty()) {
+                continue;
+            }
+            final PathAddress source = mutableNode.getAddress();
+            final List<Reference> references = new ArrayList<>();
+            final ReferenceCollector collector = new ReferenceCollector() {
+                public void addReference(final String attributeName, final PathAddress target) {
+                    references.add(new Reference(source, attributeName, target));
+                }
+            };
+            try {
+                for (ReferenceExtractor<Object> extractor : extractors) {
+                    extractor.extractReferences(node, collector);
+                }
+            } catch (RuntimeException e) {
+                ROOT_LOGGER.referenceExtractionFailed(e, source);
+                continue;
+            }
+            if (references.isEmpty()) {
+                continue;
+            }
+            outgoing.put(mutableNode, references);
+            for (Reference reference : references) {
+                Set<Reference> set = incoming.get(reference.getTarget());
+                if (set == null) {
+                    incoming.put(reference.getTarget(), set = new LinkedHashSet<>());
+                }
+                set.add(reference);
+            }
+        }
+    }
+
+    private List<ReferenceExtractor<Object>> getExtractors(final Class<?> nodeType) {
+        // read the generation before the registrations, so that a binding is never newer than its generation claims
+        final int generation = this.generation.get();
+        Binding binding = bindings.get(nodeType);
+        if (binding == null || binding.generation != generation) {
+            binding = new Binding(nodeType, generation);
+            bindings.put(nodeType, binding);
+        }
+        return binding.extractors;
+    }
+
+    /**
+     * The extractors which apply to one concrete node type.
+     */
+    final class Binding {
+        private final int generation;
+        private final List<ReferenceExtractor<Object>> extractors = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        Binding(final Class<?> nodeType, final int generation) {
+            this.generation = generation;
+            for (Registration registration : registrations) {
+                if (registration.nodeType.isAssignableFrom(nodeType)) {
+                    extractors.add((ReferenceExtractor<Object>) registration.extractor);
+                }
+            }
+        }
+    }
+
+    static final class Registration {
+        private final Class<?> nodeType;
+        private final ReferenceExtractor<?> extractor;
+
+        Registration(final Class<?> nodeType, final ReferenceExtractor<?> extractor) {
+            this.nodeType = nodeType;
+            this.extractor = extractor;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A bulk import of resources beneath one parent resource, such as the deployments of a domain or the loggers of a
+ * logging subsystem.  Nodes are staged with {@link #add(AbstractMutableNode, Node) add()} and are published together
+ * by {@link #commit()}, as a single transaction: the state is published once, and the validators run in one pass
+ * over the whole import instead of once per resource.
+ * <p>
+ * Imports are not thread-safe.
+ */
+public final class ResourceImport {
+
+    private final ManagedSystem system;
+    private final PathAddress parentAddress;
+    private ArrayList<AbstractMutableNode<?>> nodes;
+    private ArrayList<AbstractNode> values;
+    private Set<AbstractMutableNode<?>> staged = newStagedSet();
+    private AbstractMutableNode<?> parentNode;
+
+    ResourceImport(final ManagedSystem system, final PathAddress parentAddress, final int expectedSize) {
+        this.system = system;
+        this.parentAddress = parentAddress;
+        nodes = new ArrayList<>(Math.max(0, expectedSize));
+        values = new ArrayList<>(Math.max(0, expectedSize));
+    }
+
+    /**
+     * Get the address of the resource which the nodes are imported beneath.
+     *
+     * @return the parent address
+     */
+    public PathAddress getParentAddress() {
+        return parentAddress;
+    }
+
+    /**
+     * Get the number of nodes staged so far.
+     *
+     * @return the number of staged nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Stage a node for import.  The node may be nested at any depth beneath the parent, as long as its own parent
+     * exists or is part of the import.
+     *
+     * @param mutableNode the mutable node
+     * @param value the value of the node
+     * @param <N> the node type
+     * @throws IllegalArgumentException if the node is not beneath the parent address, or if its own parent neither
+     *      exists nor was staged
+     */
+    public <N extends Node> void add(AbstractMutableNode<N> mutableNode, N value) throws IllegalArgumentException {
+        if (mutableNode == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("mutableNode"));
+        }
+        if (value == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("value"));
+        }
+        final PathAddress address = mutableNode.getAddress();
+        if (address.size() <= parentAddress.size() || ! address.startsWith(parentAddress)) {
+            throw new IllegalArgumentException(MESSAGES.notBeneathAddress(address, parentAddress));
+        }
+        final AbstractMutableNode<?> parent = (AbstractMutableNode<?>) mutableNode.getParent();
+        if (parent == null || ! parent.getAddress().equals(parentAddress) && ! staged.contains(parent) && system.getState().getResource(parent) == null) {
+            throw new IllegalArgumentException(MESSAGES.missingParentResource(address));
+        }
+        staged.add(mutableNode);
+        nodes.add(mutableNode);
+        values.add((AbstractNode) mutableNode.cast(value));
+    }
+
+    /**
+     * Construct a resource from its builder as a direct child of the parent, and stage it for import.  Nodes nested
+     * beneath the constructed resource are not staged, and should be added separately.
+     *
+     * @param builder the resource builder
+     * @param value the value of the resource
+     * @param <R> the resource type
+     * @return the constructed mutable resource node
+     * @throws IllegalArgumentException if the parent resource does not exist
+     */
+    public <R extends ResourceNode> AbstractMutableResourceNode<R> add(AbstractResourceBuilder<R> builder, R value) throws IllegalArgumentException {
+        if (builder == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("builder"));
+        }
+        AbstractMutableNode<?> parentNode = this.parentNode;
+        if (parentNode == null) {
+            parentNode = system.getState().resolve(parentAddress);
+            if (parentNode == null) {
+                throw new IllegalArgumentException(MESSAGES.noSuchResource(parentAddress));
+            }
+            this.parentNode = parentNode;
+        }
+        final AbstractMutableResourceNode<R> mutableNode = builder.construct(parentNode);
+        add(mutableNode, value);
+        return mutableNode;
+    }
+
+    /**
+     * Publish every staged node as a single transaction.  On success, the import is emptied and may be reused.
+     *
+     * @throws OperationFailedException if the parent does not exist, if a staged node conflicts with an existing one,
+     *      or if the import was rejected by a validator or commit listener
+     */
+    public void commit() throws OperationFailedException {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        system.getPipeline().importNodes(parentAddress, nodes, values);
+        nodes = new ArrayList<>();
+        values = new ArrayList<>();
+        staged = newStagedSet();
+    }
+
+    private static Set<AbstractMutableNode<?>> newStagedSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<AbstractMutableNode<?>, Boolean>());
+    }
+}
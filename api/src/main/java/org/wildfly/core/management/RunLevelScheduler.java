@@ -0,0 +1,494 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import org.jboss.msc.txn.CancellableContext;
+
+/**
+ * The scheduler which starts and stops the services of a managed system as its run level changes.
+ * <p>
+ * Each service is registered with the run level at which it is installed and the names of the services it depends
+ * on, as declared by the {@code @ResourceService}, {@code @InjectedService} and {@code @Dependency} metadata of its
+ * resource.  A transition moves one run level at a time.  On the way up, the services of each level are started in
+ * waves: every service in a wave depends only on services which are already running, so the services of a wave are
+ * started in parallel.  On the way down, services are stopped in the reverse order, each before the services it
+ * depends on.  If a service fails to start, every service started by the transition is stopped again and the
+ * scheduler returns to its original run level.
+ * <p>
+ * The time spent entering or leaving each run level during the last transition is recorded.
+ */
+public final class RunLevelScheduler implements Controller {
+
+    private final Executor executor;
+    private final Map<String, ServiceEntry> services = new LinkedHashMap<>();
+    private final EnumMap<RunLevel, Long> transitionTimes = new EnumMap<>(RunLevel.class);
+    private RunLevel runLevel = RunLevel.STOPPED;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param executor the executor used to start and stop the services of a wave in parallel, ideally a
+     *      work-stealing pool, or {@code null} to start and stop every service from the calling thread
+     */
+    public RunLevelScheduler(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the work-stealing pool shared by the schedulers of every managed system in this JVM which was not given an
+     * executor of its own.  It is created on first use, and its threads are daemon threads, so it never keeps the JVM
+     * alive.
+     *
+     * @return the shared executor
+     */
+    static Executor sharedExecutor() {
+        return SharedPool.POOL;
+    }
+
+    static final class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /**
+     * A service which is started and stopped with the run level of its managed system.
+     */
+    public interface Service {
+
+        /**
+         * Start the service.
+         *
+         * @throws OperationFailedException if the service failed to start
+         */
+        void start() throws OperationFailedException;
+
+        /**
+         * Stop the service.  A service which fails to stop is considered to be stopped.
+         */
+        void stop();
+    }
+
+    /**
+     * Register a service.  A service registered for a run level which the scheduler has already reached is started by
+     * the next upward transition.
+     *
+     * @param name the unique service name
+     * @param runLevel the run level at which the service is installed; must not be {@link RunLevel#STOPPED}
+     * @param service the service
+     * @param dependencies the names of the services which must be running before this service is started
+     * @param optionalDependencies the names of the services which, if registered, must be started before this service
+     * @throws IllegalArgumentException if the name is already registered or the run level is invalid
+     */
+    public synchronized void addService(String name, RunLevel runLevel, Service service, Collection<String> dependencies, Collection<String> optionalDependencies) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("name"));
+        }
+        if (runLevel == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("runLevel"));
+        }
+        if (service == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("service"));
+        }
+        if (runLevel == RunLevel.STOPPED) {
+            throw new IllegalArgumentException(MESSAGES.invalidServiceRunLevel(name, runLevel));
+        }
+        if (services.containsKey(name)) {
+            throw new IllegalArgumentException(MESSAGES.duplicateService(name));
+        }
+        services.put(name, new ServiceEntry(name, runLevel, service,
+            dependencies == null ? Collections.<String>emptySet() : new LinkedHashSet<>(dependencies),
+            optionalDependencies == null ? Collections.<String>emptySet() : new LinkedHashSet<>(optionalDependencies)));
+    }
+
+    /**
+     * Remove a service, stopping it first if it is running.  The running services which depend on it, directly or
+     * through other services, are stopped before it, each before the services it depends on; they remain registered,
+     * and are started again by the next upward transition once their dependencies are satisfied.
+     *
+     * @param name the service name
+     * @return {@code true} if the service was removed, {@code false} if no such service was registered
+     */
+    public synchronized boolean removeService(String name) {
+        final ServiceEntry entry = services.get(name);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.started) {
+            for (List<ServiceEntry> wave : stopWaves(runningDependents(entry))) {
+                stopWave(wave);
+            }
+        }
+        services.remove(name);
+        return true;
+    }
+
+    /**
+     * Get a running service along with every running service which depends on it, directly or transitively.
+     *
+     * @param entry the running service
+     * @return the service and its running dependents
+     */
+    private Set<ServiceEntry> runningDependents(final ServiceEntry entry) {
+        final Map<ServiceEntry, List<ServiceEntry>> dependents = new HashMap<>();
+        for (ServiceEntry candidate : services.values()) {
+            if (candidate.started) {
+                for (ServiceEntry dependency : candidate.resolveAll(services)) {
+                    List<ServiceEntry> list = dependents.get(dependency);
+                    if (list == null) {
+                        dependents.put(dependency, list = new ArrayList<>());
+                    }
+                    list.add(candidate);
+                }
+            }
+        }
+        final Set<ServiceEntry> affected = new LinkedHashSet<>();
+        final List<ServiceEntry> queue = new ArrayList<>();
+        affected.add(entry);
+        queue.add(entry);
+        for (int i = 0; i < queue.size(); i ++) {
+            final List<ServiceEntry> list = dependents.get(queue.get(i));
+            if (list != null) {
+                for (ServiceEntry dependent : list) {
+                    if (affected.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Get the current run level of the services.
+     *
+     * @return the run level
+     */
+    public synchronized RunLevel getRunLevel() {
+        return runLevel;
+    }
+
+    /**
+     * Get the time spent entering or leaving each run level during the last transition which passed through it.
+     *
+     * @return the transition times in nanoseconds, keyed by run level
+     */
+    public synchronized Map<RunLevel, Long> getTransitionTimes() {
+        return Collections.unmodifiableMap(new EnumMap<>(transitionTimes));
+    }
+
+    /**
+     * Transition the services to the given run level.  If the transactional context is a {@link CancellableContext},
+     * cancellation is checked between waves; a cancelled transition is rolled back.
+     *
+     * @param newLevel the target run level
+     * @param transactionalContext the transactional context, or {@code null} for none
+     * @throws OperationFailedException if a service failed to start or the service dependencies are not satisfiable
+     * @throws CancellationException if the transition was cancelled
+     */
+    public synchronized void transition(RunLevel newLevel, Object transactionalContext) throws OperationFailedException, CancellationException {
+        if (newLevel == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("newLevel"));
+        }
+        final CancellableContext cancellable = transactionalContext instanceof CancellableContext ? (CancellableContext) transactionalContext : null;
+        final RunLevel oldLevel = runLevel;
+        final List<List<ServiceEntry>> started = new ArrayList<>();
+        try {
+            while (runLevel.compareTo(newLevel) < 0) {
+                final RunLevel next = RunLevel.values()[runLevel.ordinal() + 1];
+                final long start = System.nanoTime();
+                final List<List<ServiceEntry>> waves = startWaves(next);
+                for (List<ServiceEntry> wave : waves) {
+                    checkCancelled(cancellable);
+                    started.add(wave);
+                    startWave(wave);
+                }
+                runLevel = next;
+                transitionTimes.put(next, Long.valueOf(System.nanoTime() - start));
+            }
+        } catch (OperationFailedException | RuntimeException e) {
+            for (int i = started.size() - 1; i >= 0; i --) {
+                stopWave(started.get(i));
+            }
+            runLevel = oldLevel;
+            if (e instanceof CancellationException && cancellable != null) {
+                cancellable.cancelled();
+            }
+            throw e;
+        }
+        while (runLevel.compareTo(newLevel) > 0) {
+            final long start = System.nanoTime();
+            for (List<ServiceEntry> wave : stopWaves(runLevel)) {
+                stopWave(wave);
+            }
+            transitionTimes.put(runLevel, Long.valueOf(System.nanoTime() - start));
+            runLevel = RunLevel.values()[runLevel.ordinal() - 1];
+        }
+    }
+
+    private static void checkCancelled(final CancellableContext cancellable) throws CancellationException {
+        if (cancellable != null && cancellable.isCancelRequested()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Compute the waves in which to start the services which are not running and are installed at or below the given
+     * run level.  Each wave only depends on services which are running or in earlier waves.
+     *
+     * @param level the run level being entered
+     * @return the waves
+     * @throws OperationFailedException if a required dependency is missing or the dependencies are circular
+     */
+    private List<List<ServiceEntry>> startWaves(final RunLevel level) throws OperationFailedException {
+        final Map<ServiceEntry, Set<ServiceEntry>> pending = new LinkedHashMap<>();
+        for (ServiceEntry entry : services.values()) {
+            if (! entry.started && entry.runLevel.compareTo(level) <= 0) {
+                pending.put(entry, new LinkedHashSet<ServiceEntry>());
+            }
+        }
+        for (Map.Entry<ServiceEntry, Set<ServiceEntry>> mapEntry : pending.entrySet()) {
+            final ServiceEntry entry = mapEntry.getKey();
+            for (String name : entry.dependencies) {
+                final ServiceEntry dependency = services.get(name);
+                if (dependency == null || ! dependency.started && ! pending.containsKey(dependency)) {
+                    throw new OperationFailedException(MESSAGES.missingServiceDependency(entry.name, name));
+                }
+                if (! dependency.started) {
+                    mapEntry.getValue().add(dependency);
+                }
+            }
+            for (String name : entry.optionalDependencies) {
+                final ServiceEntry dependency = services.get(name);
+                if (dependency != null && pending.containsKey(dependency)) {
+                    mapEntry.getValue().add(dependency);
+                }
+            }
+        }
+        return layer(pending);
+    }
+
+    /**
+     * Compute the waves in which to stop the running services which are installed at or above the given run level.
+     * Each service is stopped before the services it depends on.
+     *
+     * @param level the run level being left
+     * @return the waves
+     * @throws IllegalStateException if the dependencies are circular, which registration order prevents
+     */
+    private List<List<ServiceEntry>> stopWaves(final RunLevel level) {
+        final List<ServiceEntry> running = new ArrayList<>();
+        for (ServiceEntry entry : services.values()) {
+            if (entry.started && entry.runLevel.compareTo(level) >= 0) {
+                running.add(entry);
+            }
+        }
+        return stopWaves(running);
+    }
+
+    /**
+     * Compute the waves in which to stop the given running services.  Each service is stopped before the services it
+     * depends on.
+     *
+     * @param running the services to stop
+     * @return the waves
+     * @throws IllegalStateException if the dependencies are circular, which registration order prevents
+     */
+    private List<List<ServiceEntry>> stopWaves(final Collection<ServiceEntry> running) {
+        final Map<ServiceEntry, Set<ServiceEntry>> pending = new LinkedHashMap<>();
+        for (ServiceEntry entry : running) {
+            pending.put(entry, new LinkedHashSet<ServiceEntry>());
+        }
+        for (ServiceEntry entry : pending.keySet()) {
+            for (ServiceEntry dependency : entry.resolveAll(services)) {
+                final Set<ServiceEntry> dependents = pending.get(dependency);
+                if (dependents != null) {
+                    // the dependency must wait for this service to stop
+                    dependents.add(entry);
+                }
+            }
+        }
+        try {
+            return layer(pending);
+        } catch (OperationFailedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Arrange the given nodes of a dependency graph into waves.
+     *
+     * @param graph the nodes, each mapped to the nodes which must precede it
+     * @return the waves, in order
+     * @throws OperationFailedException if the graph has a cycle
+     */
+    private static List<List<ServiceEntry>> layer(final Map<ServiceEntry, Set<ServiceEntry>> graph) throws OperationFailedException {
+        final Map<ServiceEntry, List<ServiceEntry>> successors = new HashMap<>();
+        final Map<ServiceEntry, Integer> remaining = new HashMap<>();
+        List<ServiceEntry> wave = new ArrayList<>();
+        for (Map.Entry<ServiceEntry, Set<ServiceEntry>> entry : graph.entrySet()) {
+            remaining.put(entry.getKey(), Integer.valueOf(entry.getValue().size()));
+            if (entry.getValue().isEmpty()) {
+                wave.add(entry.getKey());
+            }
+            for (ServiceEntry predecessor : entry.getValue()) {
+                List<ServiceEntry> list = successors.get(predecessor);
+                if (list == null) {
+                    successors.put(predecessor, list = new ArrayList<>());
+                }
+                list.add(entry.getKey());
+            }
+        }
+        final List<List<ServiceEntry>> waves = new ArrayList<>();
+        int count = 0;
+        while (! wave.isEmpty()) {
+            waves.add(wave);
+            count += wave.size();
+            final List<ServiceEntry> nextWave = new ArrayList<>();
+            for (ServiceEntry entry : wave) {
+                final List<ServiceEntry> list = successors.get(entry);
+                if (list != null) {
+                    for (ServiceEntry successor : list) {
+                        final int left = remaining.get(successor).intValue() - 1;
+                        remaining.put(successor, Integer.valueOf(left));
+                        if (left == 0) {
+                            nextWave.add(successor);
+                        }
+                    }
+                }
+            }
+            wave = nextWave;
+        }
+        if (count < graph.size()) {
+            final List<String> names = new ArrayList<>();
+            for (Map.Entry<ServiceEntry, Integer> entry : remaining.entrySet()) {
+                if (entry.getValue().intValue() > 0) {
+                    names.add(entry.getKey().name);
+                }
+            }
+            throw new OperationFailedException(MESSAGES.serviceDependencyCycle(names));
+        }
+        return waves;
+    }
+
+    private void startWave(final List<ServiceEntry> wave) throws OperationFailedException {
+        final Queue<OperationFailedException> failures = new ConcurrentLinkedQueue<>();
+        final List<Runnable> tasks = new ArrayList<>(wave.size());
+        for (final ServiceEntry entry : wave) {
+            tasks.add(new Runnable() {
+                public void run() {
+                    try {
+                        entry.start();
+                    } catch (OperationFailedException e) {
+                        failures.add(e);
+                    } catch (Throwable t) {
+                        failures.add(new OperationFailedException(MESSAGES.serviceStartFailed(entry.name), t));
+                    }
+                }
+            });
+        }
+        if (ParallelTasks.runAll(tasks, executor)) {
+            Thread.currentThread().interrupt();
+        }
+        final OperationFailedException failure = failures.poll();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void stopWave(final List<ServiceEntry> wave) {
+        final List<Runnable> tasks = new ArrayList<>(wave.size());
+        for (final ServiceEntry entry : wave) {
+            tasks.add(new Runnable() {
+                public void run() {
+                    if (entry.started) {
+                        entry.stop();
+                    }
+                }
+            });
+        }
+        if (ParallelTasks.runAll(tasks, executor)) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static final class ServiceEntry {
+        private final String name;
+        private final RunLevel runLevel;
+        private final Service service;
+        private final Set<String> dependencies;
+        private final Set<String> optionalDependencies;
+        private volatile boolean started;
+
+        ServiceEntry(final String name, final RunLevel runLevel, final Service service, final Set<String> dependencies, final Set<String> optionalDependencies) {
+            this.name = name;
+            this.runLevel = runLevel;
+            this.service = service;
+            this.dependencies = dependencies;
+            this.optionalDependencies = optionalDependencies;
+        }
+
+        void start() throws OperationFailedException {
+            service.start();
+            started = true;
+        }
+
+        void stop() {
+            started = false;
+            try {
+                service.stop();
+            } catch (Throwable ignored) {
+                // considered stopped
+            }
+        }
+
+        List<ServiceEntry> resolveAll(final Map<String, ServiceEntry> services) {
+            final List<ServiceEntry> list = new ArrayList<>(dependencies.size() + optionalDependencies.size());
+            for (String name : dependencies) {
+                final ServiceEntry entry = services.get(name);
+                if (entry != null) {
+                    list.add(entry);
+                }
+            }
+            for (String name : optionalDependencies) {
+                final ServiceEntry entry = services.get(name);
+                if (entry != null) {
+                    list.add(entry);
+                }
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.wildfly.core.management.xml.XMLWriteException;
+
+/**
+ * An XML stream writer which splices the previously written content of unchanged child nodes into its output instead
+ * of serializing them again.  Output is streamed to the target writer as it is produced.  Only the children at one
+ * configured depth of {@link #writeChild(Node)} nesting are captured as fragments, keyed by the identity of the child
+ * node, for reuse by the next pass; shallower children are always serialized, and deeper ones are serialized as part
+ * of their enclosing fragment.
+ * <p>
+ * Spliced text bypasses the delegate writer, so a fragment is only reused if the namespace bindings in scope where it
+ * is spliced are the ones that were in scope where it was captured.  The bindings are tracked by this writer as they
+ * pass through it; if the caller replaces the whole namespace context, they can no longer be known and nothing is
+ * spliced or captured.
+ */
+final class SplicingXMLStreamWriter implements XMLStreamWriter {
+
+    private final Tee output;
+    private final XMLStreamWriter delegate;
+    private final int fragmentDepth;
+    private final IdentityHashMap<Node, Fragment> previousFragments;
+    private final Set<Node> dirtyNodes;
+    private final IdentityHashMap<Node, Fragment> fragments = new IdentityHashMap<>();
+    private Scope scope = new Scope(null);
+    private boolean emptyElementOpen;
+    private boolean unknownContext;
+    private int depth;
+    private int reused;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param target the writer to stream the document to
+     * @param fragmentDepth the {@link #writeChild(Node)} nesting depth at which fragments are captured and reused,
+     *      where the children written by the root are at depth 1
+     * @param previousFragments the fragments captured by the previous pass
+     * @param dirtyNodes the nodes whose previous content may not be reused even if they are identical, because
+     *      something beneath them changed
+     * @throws XMLStreamException if the underlying writer could not be created
+     */
+    SplicingXMLStreamWriter(final Writer target, final int fragmentDepth, final IdentityHashMap<Node, Fragment> previousFragments, final Set<Node> dirtyNodes) throws XMLStreamException {
+        this.fragmentDepth = fragmentDepth;
+        this.previousFragments = previousFragments;
+        this.dirtyNodes = dirtyNodes;
+        output = new Tee(target);
+        delegate = XMLOutputFactory.newInstance().createXMLStreamWriter(output);
+    }
+
+    void writeChild(final Node child) throws XMLWriteException {
+        depth ++;
+        try {
+            if (depth != fragmentDepth || unknownContext) {
+                child.toXML(this);
+                return;
+            }
+            final Map<String, String> context = scope.bindings;
+            final Fragment previous = dirtyNodes.contains(child) ? null : previousFragments.get(child);
+            sync();
+            if (previous != null && previous.context.equals(context)) {
+                output.write(previous.content);
+                fragments.put(child, previous);
+                reused ++;
+            } else {
+                output.startCapture();
+                child.toXML(this);
+                sync();
+                fragments.put(child, new Fragment(output.endCapture(), new HashMap<>(context)));
+            }
+        } catch (XMLStreamException e) {
+            throw XMLWriteException.toWriteException(e);
+        } catch (IOException e) {
+            throw new XMLWriteException(e);
+        } finally {
+            depth --;
+        }
+    }
+
+    /**
+     * Close any pending start tag and flush the delegate, so that the target can be written to directly.
+     *
+     * @throws XMLStreamException if the delegate fails
+     */
+    private void sync() throws XMLStreamException {
+        delegate.writeCharacters("");
+        delegate.flush();
+    }
+
+    IdentityHashMap<Node, Fragment> getFragments() {
+        return fragments;
+    }
+
+    int getReusedCount() {
+        return reused;
+    }
+
+    private void startElement() {
+        emptyElementOpen = false;
+        scope = new Scope(scope);
+    }
+
+    private void bind(final String prefix, final String namespaceURI) {
+        if (emptyElementOpen) {
+            // the declaration is scoped to the empty element
+            return;
+        }
+        scope.bind(prefix, namespaceURI);
+    }
+
+    /**
+     * The content and namespace context of a captured child.
+     */
+    static final class Fragment {
+        private final String content;
+        private final Map<String, String> context;
+
+        Fragment(final String content, final Map<String, String> context) {
+            this.content = content;
+            this.context = context;
+        }
+    }
+
+    /**
+     * The namespace bindings of an open element.  The bindings of the parent are shared until the element binds a
+     * prefix of its own.
+     */
+    static final class Scope {
+        private final Scope parent;
+        private Map<String, String> bindings;
+        private boolean owned;
+
+        Scope(final Scope parent) {
+            this.parent = parent;
+            bindings = parent == null ? Collections.<String, String>emptyMap() : parent.bindings;
+        }
+
+        void bind(final String prefix, final String namespaceURI) {
+            if (! owned) {
+                bindings = new HashMap<>(bindings);
+                owned = true;
+            }
+            bindings.put(prefix, namespaceURI);
+        }
+    }
+
+    /**
+     * A writer which passes everything through to the target, optionally keeping a copy.  Flushes are not passed
+     * through, since the delegate is flushed once per child; the owner flushes the target when the document is
+     * complete.
+     */
+    static final class Tee extends Writer {
+        private final Writer target;
+        private StringBuilder capture;
+
+        Tee(final Writer target) {
+            this.target = target;
+        }
+
+        void startCapture() {
+            capture = new StringBuilder();
+        }
+
+        String endCapture() {
+            final String captured = capture.toString();
+            capture = null;
+            return captured;
+        }
+
+        public void write(final int c) throws IOException {
+            target.write(c);
+            if (capture != null) {
+                capture.append((char) c);
+            }
+        }
+
+        public void write(final char[] chars, final int off, final int len) throws IOException {
+            target.write(chars, off, len);
+            if (capture != null) {
+                capture.append(chars, off, len);
+            }
+        }
+
+        public void write(final String str, final int off, final int len) throws IOException {
+            target.write(str, off, len);
+            if (capture != null) {
+                capture.append(str, off, off + len);
+            }
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+    // delegated methods
+
+    public void writeStartElement(final String localName) throws XMLStreamException {
+        startElement();
+        delegate.writeStartElement(localName);
+    }
+
+    public void writeStartElement(final String namespaceURI, final String localName) throws XMLStreamException {
+        startElement();
+        delegate.writeStartElement(namespaceURI, localName);
+    }
+
+    public void writeStartElement(final String prefix, final String localName, final String namespaceURI) throws XMLStreamException {
+        startElement();
+        delegate.writeStartElement(prefix, localName, namespaceURI);
+    }
+
+    public void writeEmptyElement(final String namespaceURI, final String localName) throws XMLStreamException {
+        emptyElementOpen = true;
+        delegate.writeEmptyElement(namespaceURI, localName);
+    }
+
+    public void writeEmptyElement(final String prefix, final String localName, final String namespaceURI) throws XMLStreamException {
+        emptyElementOpen = true;
+        delegate.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    public void writeEmptyElement(final String localName) throws XMLStreamException {
+        emptyElementOpen = true;
+        delegate.writeEmptyElement(localName);
+    }
+
+    public void writeEndElement() throws XMLStreamException {
+        emptyElementOpen = false;
+        if (scope.parent != null) {
+            scope = scope.parent;
+        }
+        delegate.writeEndElement();
+    }
+
+    public void writeEndDocument() throws XMLStreamException {
+        delegate.writeEndDocument();
+    }
+
+    public void close() throws XMLStreamException {
+        delegate.close();
+    }
+
+    public void flush() throws XMLStreamException {
+        delegate.flush();
+        try {
+            output.target.flush();
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    public void writeAttribute(final String localName, final String value) throws XMLStreamException {
+        delegate.writeAttribute(localName, value);
+    }
+
+    public void writeAttribute(final String prefix, final String namespaceURI, final String localName, final String value) throws XMLStreamException {
+        delegate.writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    public void writeAttribute(final String namespaceURI, final String localName, final String value) throws XMLStreamException {
+        delegate.writeAttribute(namespaceURI, localName, value);
+    }
+
+    public void writeNamespace(final String prefix, final String namespaceURI) throws XMLStreamException {
+        bind(prefix == null || prefix.equals(XMLConstants.XMLNS_ATTRIBUTE) ? XMLConstants.DEFAULT_NS_PREFIX : prefix, namespaceURI);
+        delegate.writeNamespace(prefix, namespaceURI);
+    }
+
+    public void writeDefaultNamespace(final String namespaceURI) throws XMLStreamException {
+        bind(XMLConstants.DEFAULT_NS_PREFIX, namespaceURI);
+        delegate.writeDefaultNamespace(namespaceURI);
+    }
+
+    public void writeComment(final String data) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeComment(data);
+    }
+
+    public void writeProcessingInstruction(final String target) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeProcessingInstruction(target);
+    }
+
+    public void writeProcessingInstruction(final String target, final String data) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeProcessingInstruction(target, data);
+    }
+
+    public void writeCData(final String data) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeCData(data);
+    }
+
+    public void writeDTD(final String dtd) throws XMLStreamException {
+        delegate.writeDTD(dtd);
+    }
+
+    public void writeEntityRef(final String name) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeEntityRef(name);
+    }
+
+    public void writeStartDocument() throws XMLStreamException {
+        delegate.writeStartDocument();
+    }
+
+    public void writeStartDocument(final String version) throws XMLStreamException {
+        delegate.writeStartDocument(version);
+    }
+
+    public void writeStartDocument(final String encoding, final String version) throws XMLStreamException {
+        delegate.writeStartDocument(encoding, version);
+    }
+
+    public void writeCharacters(final String text) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeCharacters(text);
+    }
+
+    public void writeCharacters(final char[] text, final int start, final int len) throws XMLStreamException {
+        emptyElementOpen = false;
+        delegate.writeCharacters(text, start, len);
+    }
+
+    public String getPrefix(final String uri) throws XMLStreamException {
+        return delegate.getPrefix(uri);
+    }
+
+    public void setPrefix(final String prefix, final String uri) throws XMLStreamException {
+        scope.bind(prefix, uri);
+        delegate.setPrefix(prefix, uri);
+    }
+
+    public void setDefaultNamespace(final String uri) throws XMLStreamException {
+        scope.bind(XMLConstants.DEFAULT_NS_PREFIX, uri);
+        delegate.setDefaultNamespace(uri);
+    }
+
+    public void setNamespaceContext(final NamespaceContext context) throws XMLStreamException {
+        unknownContext = true;
+        delegate.setNamespaceContext(context);
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        return delegate.getNamespaceContext();
+    }
+
+    public Object getProperty(final String name) throws IllegalArgumentException {
+        return delegate.getProperty(name);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical, striped write lock for a managed system's model.  Each address is mapped to a stripe by its lock
+ * prefix, which is its leading element by default (for example {@code /subsystem=logging}); the prefix depth can be
+ * configured per leading key, so that for example {@code /profile=default/subsystem=logging} and
+ * {@code /profile=default/subsystem=threads} lock independently.  An address which is shorter than its prefix depth
+ * covers every prefix beneath it, so it acquires every stripe.
+ * <p>
+ * To be deadlock-free, stripes are always acquired in ascending index order and released in the reverse order.
+ */
+final class StripedModelLock {
+
+    private final ReentrantLock[] stripes;
+    private volatile Map<String, Integer> prefixDepths = Collections.emptyMap();
+
+    StripedModelLock(final int stripeCount) {
+        final int size = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i ++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Acquire the stripes covering all of the given addresses.
+     *
+     * @param addresses the addresses to lock
+     * @return the acquired stripe indices, which must be passed to {@link #unlock(int[])}
+     */
+    int[] lock(final List<PathAddress> addresses) {
+        for (;;) {
+            final Map<String, Integer> prefixDepths = this.prefixDepths;
+            final int[] indices = stripesFor(addresses, prefixDepths);
+            lock(indices);
+            if (this.prefixDepths == prefixDepths) {
+                return indices;
+            }
+            // the configuration changed while we were waiting; our stripes may be stale
+            unlock(indices);
+        }
+    }
+
+    /**
+     * Acquire every stripe.
+     *
+     * @return the acquired stripe indices, which must be passed to {@link #unlock(int[])}
+     */
+    int[] lockAll() {
+        final int[] indices = allStripes();
+        lock(indices);
+        return indices;
+    }
+
+    void unlock(final int[] indices) {
+        for (int i = indices.length - 1; i >= 0; i --) {
+            stripes[indices[i]].unlock();
+        }
+    }
+
+    /**
+     * Set the lock prefix depth for addresses whose first element has the given key.  Every stripe is held while the
+     * configuration is changed, so no write is in progress under the previous configuration.
+     *
+     * @param key the leading address key
+     * @param depth the prefix depth, at least 1
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    void setPrefixDepth(final String key, final int depth) throws IllegalArgumentException {
+        if (depth < 1) {
+            throw new IllegalArgumentException(MESSAGES.invalidLockPrefixDepth(depth));
+        }
+        final int[] indices = lockAll();
+        try {
+            final Map<String, Integer> newDepths = new HashMap<>(prefixDepths);
+            newDepths.put(key, Integer.valueOf(depth));
+            prefixDepths = newDepths;
+        } finally {
+            unlock(indices);
+        }
+    }
+
+    private void lock(final int[] indices) {
+        for (int index : indices) {
+            stripes[index].lock();
+        }
+    }
+
+    private int[] stripesFor(final List<PathAddress> addresses, final Map<String, Integer> prefixDepths) {
+        final int mask = stripes.length - 1;
+        final boolean[] selected = new boolean[stripes.length];
+        int count = 0;
+        for (PathAddress address : addresses) {
+            if (address.size() == 0) {
+                return allStripes();
+            }
+            final Integer depthValue = prefixDepths.get(address.getElement(0).getKey());
+            final int depth = depthValue == null ? 1 : depthValue.intValue();
+            if (address.size() < depth) {
+                return allStripes();
+            }
+            int h = address.subAddress(0, depth).hashCode();
+            h ^= h >>> 16;
+            final int index = h & mask;
+            if (! selected[index]) {
+                selected[index] = true;
+                count ++;
+            }
+        }
+        final int[] indices = new int[count];
+        int j = 0;
+        for (int i = 0; i < selected.length; i ++) {
+            if (selected[i]) {
+                indices[j ++] = i;
+            }
+        }
+        return indices;
+    }
+
+    private int[] allStripes() {
+        final int[] indices = new int[stripes.length];
+        for (int i = 0; i < indices.length; i ++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+}
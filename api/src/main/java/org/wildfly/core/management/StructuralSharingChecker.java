@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An assertion-mode checker which verifies the structural sharing of a derived state: exactly the changed nodes and
+ * their ancestors are new instances, every other node is shared by reference with the original state, and every
+ * address of the derived state is reachable through the child references of its new root.
+ */
+final class StructuralSharingChecker {
+
+    private StructuralSharingChecker() {
+    }
+
+    /**
+     * Check the sharing between two node maps.  Intended to be called from an {@code assert} statement.
+     *
+     * @param before the node map of the original state
+     * @param after the node map of the derived state
+     * @param addressMap the address map of the derived state
+     * @param root the root mutable node
+     * @param changed the changed mutable nodes
+     * @return {@code true} always
+     * @throws AssertionError if the sharing is violated
+     */
+    static boolean check(final Map<AbstractMutableNode<?>, AbstractNode> before, final Map<AbstractMutableNode<?>, AbstractNode> after, final Map<PathAddress, AbstractMutableNode<?>> addressMap, final AbstractMutableNode<?> root, final Set<AbstractMutableNode<?>> changed) {
+        final Set<AbstractMutableNode<?>> ancestors = Collections.newSetFromMap(new IdentityHashMap<AbstractMutableNode<?>, Boolean>());
+        for (AbstractMutableNode<?> mutableNode : changed) {
+            AbstractMutableNode<?> parent = (AbstractMutableNode<?>) mutableNode.getParent();
+            while (parent != null && ancestors.add(parent)) {
+                parent = (AbstractMutableNode<?>) parent.getParent();
+            }
+        }
+        for (Map.Entry<AbstractMutableNode<?>, AbstractNode> entry : after.entrySet()) {
+            final AbstractMutableNode<?> mutableNode = entry.getKey();
+            final AbstractNode original = before.get(mutableNode);
+            if (changed.contains(mutableNode)) {
+                continue;
+            }
+            if (ancestors.contains(mutableNode)) {
+                if (original != null && original == entry.getValue()) {
+                    throw new AssertionError("Ancestor " + mutableNode.getAddress() + " of a changed node was not copied");
+                }
+            } else if (original != entry.getValue()) {
+                throw new AssertionError("Untouched node " + mutableNode.getAddress() + " was not shared");
+            }
+        }
+        final Node rootNode = after.get(root);
+        if (rootNode == null) {
+            return true;
+        }
+        for (Map.Entry<PathAddress, AbstractMutableNode<?>> entry : addressMap.entrySet()) {
+            final PathAddress address = entry.getKey();
+            Node node = rootNode;
+            for (PathElement element : address) {
+                node = node.navigate(element);
+                if (node == null) {
+                    throw new AssertionError("Node " + address + " is not reachable from the root");
+                }
+            }
+            if (node != after.get(entry.getValue())) {
+                throw new AssertionError("Node " + address + " is not referenced by its parent");
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.io.IOException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.core.management.xml.XMLWriteException;
+
+/**
+ * An operation result representing a success.
+ */
+public final class SuccessfulOperationResult implements OperationResult {
+    private final OperationResult parent;
+    private final PathAddress address;
+    private final String name;
+    private final ModelNode result;
+
+    public SuccessfulOperationResult(final OperationResult parent, final PathAddress address, final String name, final ModelNode result) {
+        this.parent = parent;
+        this.address = address;
+        this.name = name;
+        this.result = result;
+    }
+
+    public OperationResult getParent() {
+        return parent;
+    }
+
+    public PathAddress getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the result value of the operation.
+     *
+     * @return the result value, or {@code null} if the operation has no result value
+     */
+    public ModelNode getResult() {
+        return result;
+    }
+
+    public OperationStatus getStatus() {
+        return OperationStatus.SUCCESS;
+    }
+
+    public ModelNode toModelNode() {
+        final ModelNode node = new ModelNode();
+        node.get("outcome").set("success");
+        if (result != null) {
+            node.get("result").set(result);
+        }
+        return node;
+    }
+
+    public void writeTo(final ModelSink sink) throws IOException {
+        sink.startObject();
+        sink.key("outcome");
+        sink.value("success");
+        if (result != null) {
+            sink.key("result");
+            ModelSinks.write(result, sink);
+        }
+        sink.endObject();
+    }
+
+    public Node navigate(final PathElement pathElement) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void toXML(final XMLStreamWriter writer) throws XMLWriteException {
+        try {
+            writer.writeEmptyElement("success");
+        } catch (XMLStreamException e) {
+            throw new XMLWriteException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.List;
+
+/**
+ * The timing of one transaction of the operation pipeline, as reported to {@linkplain OperationMetricsListener
+ * metrics listeners}.  All times are in nanoseconds; a phase which was run more than once (for example because an
+ * optimistic transaction was retried) is reported as the sum of its runs.
+ */
+public final class TransactionTiming {
+
+    private final List<? extends Operation> operations;
+    private final long[] phaseNanos = new long[OperationPhase.values().length];
+    private long lockWaitNanos;
+    private long totalNanos;
+    private boolean successful;
+
+    TransactionTiming(final List<? extends Operation> operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * Get the operations of the transaction.
+     *
+     * @return the operations
+     */
+    public List<? extends Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Get the time from the submission of the transaction until its completion.
+     *
+     * @return the total time
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Get the time spent waiting for model write locks.
+     *
+     * @return the lock wait time
+     */
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    /**
+     * Get the time spent in a phase.
+     *
+     * @param phase the phase
+     * @return the time spent in the phase, or 0 if the phase was not run
+     */
+    public long getPhaseNanos(OperationPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Determine whether every operation of the transaction succeeded.
+     *
+     * @return {@code true} if the transaction succeeded, {@code false} if it failed or was cancelled
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Add the time since the given start time to a phase.
+     *
+     * @param phase the phase
+     * @param start the start time, from {@link System#nanoTime()}
+     * @return the current time, which may be used as the start time of the next phase
+     */
+    long mark(final OperationPhase phase, final long start) {
+        final long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    void addLockWait(final long nanos) {
+        lockWaitNanos += nanos;
+    }
+
+    void complete(final long totalNanos, final List<OperationResult> results) {
+        this.totalNanos = totalNanos;
+        boolean successful = results != null;
+        if (successful) {
+            for (OperationResult result : results) {
+                if (result.getStatus() != OperationStatus.SUCCESS) {
+                    successful = false;
+                    break;
+                }
+            }
+        }
+        this.successful = successful;
+    }
+}
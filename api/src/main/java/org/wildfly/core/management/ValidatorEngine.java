@@ -0,0 +1,338 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.txn.ValidateContext;
+
+/**
+ * The runtime for {@link AttributeValidator} and {@link ResourceValidator} instances, corresponding to the
+ * {@code @ValidatedAttribute} and {@code @ValidatedResource} annotations.
+ * <p>
+ * Only nodes whose instance differs from the transaction's base state are validated; unchanged nodes are shared with
+ * the base state, which was already valid.  Immediate attribute validators run after each step, against the nodes
+ * that step changed.  All other validators run in a single pass before the transaction commits, in which a node
+ * instance that already passed immediate validation is not validated by immediate validators again.  Within a pass,
+ * independent resources are validated in parallel when an executor is given.  A validator only applies while the
+ * model is at or above its run level.
+ * <p>
+ * Problems are reported to a {@link ValidateContext} obtained from the {@link ContextFactory} for each pass; the
+ * factory decides whether the reported problems fail the transaction.
+ */
+public final class ValidatorEngine {
+
+    private final ContextFactory contextFactory;
+    private final Executor executor;
+    private final CopyOnWriteArrayList<ResourceValidation> resourceValidations = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<AttributeValidation> attributeValidations = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Class<?>, Binding> bindings = new ConcurrentHashMap<>();
+    /**
+     * Incremented after every registration; bindings built from an older generation are stale.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param contextFactory the factory for validation contexts
+     * @param executor the executor for parallel validation, or {@code null} to validate from the calling thread
+     */
+    public ValidatorEngine(final ContextFactory contextFactory, final Executor executor) {
+        if (contextFactory == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("contextFactory"));
+        }
+        this.contextFactory = contextFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * A source of validation contexts.
+     */
+    public interface ContextFactory {
+
+        /**
+         * Create the context for a validation pass.  The context is shared by the validators of every resource in
+         * the pass, which may run concurrently.
+         *
+         * @param model the working model being validated
+         * @return the validation context
+         */
+        ValidateContext begin(WorkingModel model);
+
+        /**
+         * Finish a validation pass.
+         *
+         * @param context the context returned by {@link #begin(WorkingModel)}
+         * @throws OperationFailedException if the problems reported to the context should fail the transaction
+         */
+        void end(ValidateContext context) throws OperationFailedException;
+    }
+
+    /**
+     * Register a validator for resources of the given node type or any of its subtypes.  Resource validators always
+     * run in the commit-time pass.
+     *
+     * @param nodeType the node type
+     * @param validator the validator
+     * @param runLevel the lowest run level at which the validator applies
+     * @param <R> the node type
+     */
+    public <R extends Node> void addResourceValidator(Class<R> nodeType, ResourceValidator<? super R> validator, RunLevel runLevel) {
+        if (nodeType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("nodeType"));
+        }
+        if (validator == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("validator"));
+        }
+        if (runLevel == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("runLevel"));
+        }
+        resourceValidations.add(new ResourceValidation(nodeType, validator, runLevel));
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Register a validator for an attribute of resources of the given node type or any of its subtypes.
+     *
+     * @param nodeType the node type
+     * @param attributeName the attribute name
+     * @param validator the validator
+     * @param runLevel the lowest run level at which the validator applies
+     * @param immediate {@code true} to validate after each step, {@code false} to validate once before commit
+     * @param <R> the node type
+     */
+    public <R extends Node> void addAttributeValidator(Class<R> nodeType, String attributeName, AttributeValidator<? super R, ModelNode> validator, RunLevel runLevel, boolean immediate) {
+        if (nodeType == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("nodeType"));
+        }
+        if (attributeName == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("attributeName"));
+        }
+        if (validator == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("validator"));
+        }
+        if (runLevel == null) {
+            throw new IllegalArgumentException(MESSAGES.nullParameter("runLevel"));
+        }
+        attributeValidations.add(new AttributeValidation(nodeType, attributeName, validator, runLevel, immediate));
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Validate the nodes changed by the current step with the immediate attribute validators.
+     *
+     * @param working the working state
+     * @throws OperationFailedException if validation failed
+     */
+    void validateStep(final WorkingState working) throws OperationFailedException {
+        final Collection<AbstractMutableNode<?>> changed = working.getStepChanges();
+        if (! changed.isEmpty()) {
+            validate(working, changed, true);
+        }
+    }
+
+    /**
+     * Run the commit-time validation pass over every node changed by the transaction.
+     *
+     * @param working the working state
+     * @throws OperationFailedException if validation failed
+     */
+    void validateCommit(final WorkingState working) throws OperationFailedException {
+        if (working.isChanged()) {
+            validate(working, working.getChangedNodes(), false);
+        }
+    }
+
+    private void validate(final WorkingState working, final Collection<AbstractMutableNode<?>> changed, final boolean immediatePass) throws OperationFailedException {
+        final RunLevel runLevel = working.getRunLevel();
+        final IdentityHashMap<AbstractMutableNode<?>, Node> validated = working.getValidatedNodes();
+        final List<Task> tasks = new ArrayList<>();
+        for (AbstractMutableNode<?> mutableNode : changed) {
+            final Node node = working.getNode(mutableNode);
+            final Node original = working.getOriginalNode(mutableNode);
+            if (node == null || node == original) {
+                // removed, or changed back to the base instance
+                continue;
+            }
+            final Binding binding = getBinding(mutableNode.getNodeType());
+            final boolean runImmediate = validated.get(mutableNode) != node;
+            final Task task = new Task(mutableNode, original, node, binding, runLevel, immediatePass, runImmediate);
+            if (task.hasWork()) {
+                tasks.add(task);
+            }
+            if (runImmediate) {
+                validated.put(mutableNode, node);
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        final ValidateContext context = contextFactory.begin(working);
+        for (Task task : tasks) {
+            task.context = context;
+        }
+        if (ParallelTasks.runAll(tasks, executor)) {
+            Thread.currentThread().interrupt();
+        }
+        contextFactory.end(context);
+    }
+
+    private Binding getBinding(final Class<?> nodeType) {
+        // read the generation before the validations, so that a binding is never newer than its generation claims
+        final int generation = this.generation.get();
+        Binding binding = bindings.get(nodeType);
+        if (binding == null || binding.generation != generation) {
+            binding = new Binding(nodeType, generation);
+            bindings.put(nodeType, binding);
+        }
+        return binding;
+    }
+
+    static final class ResourceValidation {
+        private final Class<?> nodeType;
+        private final ResourceValidator<Object> validator;
+        private final RunLevel runLevel;
+
+        @SuppressWarnings("unchecked")
+        ResourceValidation(final Class<?> nodeType, final ResourceValidator<?> validator, final RunLevel runLevel) {
+            this.nodeType = nodeType;
+            this.validator = (ResourceValidator<Object>) validator;
+            this.runLevel = runLevel;
+        }
+    }
+
+    static final class AttributeValidation {
+        private final Class<?> nodeType;
+        private final String attributeName;
+        private final AttributeValidator<Object, ModelNode> validator;
+        private final RunLevel runLevel;
+        private final boolean immediate;
+
+        @SuppressWarnings("unchecked")
+        AttributeValidation(final Class<?> nodeType, final String attributeName, final AttributeValidator<?, ModelNode> validator, final RunLevel runLevel, final boolean immediate) {
+            this.nodeType = nodeType;
+            this.attributeName = attributeName;
+            this.validator = (AttributeValidator<Object, ModelNode>) validator;
+            this.runLevel = runLevel;
+            this.immediate = immediate;
+        }
+    }
+
+    /**
+     * The validations which apply to one concrete node type.
+     */
+    final class Binding {
+        private final int generation;
+        private final List<ResourceValidation> resources = new ArrayList<>();
+        private final List<AttributeValidation> attributes = new ArrayList<>();
+
+        Binding(final Class<?> nodeType, final int generation) {
+            this.generation = generation;
+            for (ResourceValidation validation : resourceValidations) {
+                if (validation.nodeType.isAssignableFrom(nodeType)) {
+                    resources.add(validation);
+                }
+            }
+            for (AttributeValidation validation : attributeValidations) {
+                if (validation.nodeType.isAssignableFrom(nodeType)) {
+                    attributes.add(validation);
+                }
+            }
+        }
+    }
+
+    /**
+     * The validation of a single changed node within a pass.
+     */
+    static final class Task implements Runnable {
+        private final AbstractMutableNode<?> mutableNode;
+        private final Node original;
+        private final Node node;
+        private final List<ResourceValidation> resources = new ArrayList<>();
+        private final List<AttributeValidation> attributes = new ArrayList<>();
+        ValidateContext context;
+
+        Task(final AbstractMutableNode<?> mutableNode, final Node original, final Node node, final Binding binding, final RunLevel runLevel, final boolean immediatePass, final boolean runImmediate) {
+            this.mutableNode = mutableNode;
+            this.original = original;
+            this.node = node;
+            if (! immediatePass) {
+                for (ResourceValidation validation : binding.resources) {
+                    if (runLevel.compareTo(validation.runLevel) >= 0) {
+                        resources.add(validation);
+                    }
+                }
+            }
+            for (AttributeValidation validation : binding.attributes) {
+                if (runLevel.compareTo(validation.runLevel) < 0) {
+                    continue;
+                }
+                if (validation.immediate ? runImmediate : ! immediatePass) {
+                    attributes.add(validation);
+                }
+            }
+        }
+
+        boolean hasWork() {
+            return ! resources.isEmpty() || ! attributes.isEmpty();
+        }
+
+        public void run() {
+            if (! attributes.isEmpty()) {
+                final Map<String, ModelDiff.AttributeChange> changes;
+                try {
+                    changes = new ModelDiff.ResourceChange(mutableNode, original, node).getChangedAttributes();
+                } catch (Throwable t) {
+                    context.addProblem(MESSAGES.validatorFailed(mutableNode.getAddress()), t);
+                    return;
+                }
+                for (AttributeValidation validation : attributes) {
+                    final ModelDiff.AttributeChange change = changes.get(validation.attributeName);
+                    if (change == null) {
+                        continue;
+                    }
+                    try {
+                        validation.validator.validate(node, change.getName(), change.getBefore(), change.getAfter(), context);
+                    } catch (Throwable t) {
+                        context.addProblem(MESSAGES.validatorFailed(mutableNode.getAddress()), t);
+                    }
+                }
+            }
+            for (ResourceValidation validation : resources) {
+                try {
+                    validation.validator.validate(node, context);
+                } catch (Throwable t) {
+                    context.addProblem(MESSAGES.validatorFailed(mutableNode.getAddress()), t);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.Set;
+
+/**
+ * A private, mutable working copy of a managed system's state.  Changes made to a working model are visible only to
+ * the transaction which owns it until the transaction is published.
+ */
+public interface WorkingModel {
+
+    /**
+     * Get the version of the state from which this working model was derived.
+     *
+     * @return the base state version
+     */
+    long getBaseVersion();
+
+    /**
+     * Get the run level of the managed system.
+     *
+     * @return the run level
+     */
+    RunLevel getRunLevel();
+
+    /**
+     * Resolve the mutable node at the given address.
+     *
+     * @param address the node address
+     * @return the mutable node, or {@code null} if there is no node at the given address
+     */
+    AbstractMutableNode<?> resolve(PathAddress address);
+
+    /**
+     * Get the current value of a node in this working model.
+     *
+     * @param mutableNode the mutable node
+     * @param <N> the node type
+     * @return the node value, or {@code null} if the node does not exist in this working model
+     */
+    <N extends Node> N getNode(AbstractMutableNode<N> mutableNode);
+
+    /**
+     * Get the value of a node as of the base state, ignoring any change made in this working model.
+     *
+     * @param mutableNode the mutable node
+     * @param <N> the node type
+     * @return the original node value, or {@code null} if the node did not exist in the base state
+     */
+    <N extends Node> N getOriginalNode(AbstractMutableNode<N> mutableNode);
+
+    /**
+     * Add or replace the value of a node.
+     *
+     * @param mutableNode the mutable node
+     * @param newValue the new node value
+     * @param <N> the node type
+     * @throws IllegalArgumentException if a different node already exists at the address of the given node
+     */
+    <N extends Node> void putNode(AbstractMutableNode<N> mutableNode, N newValue) throws IllegalArgumentException;
+
+    /**
+     * Remove a node, along with every node nested beneath it.
+     *
+     * @param mutableNode the mutable node to remove
+     */
+    void removeNode(AbstractMutableNode<?> mutableNode);
+
+    /**
+     * Get the nodes which were added, replaced or removed in this working model.
+     *
+     * @return the changed nodes
+     */
+    Set<AbstractMutableNode<?>> getChangedNodes();
+}
@@ -0,0 +1,293 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.wildfly.core.management._private.CoreManagementMessages.MESSAGES;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A working copy of a {@link ManagedSystem.State}.  Only the changes relative to the base state are recorded, so
+ * deriving a working copy is free.  The maps of a state are persistent, so a commit derives the next state by
+ * applying only the recorded changes to them, at a cost proportional to the number of changed nodes rather than to
+ * the size of the model.
+ */
+final class WorkingState implements WorkingModel {
+
+    private final ManagedSystem.State base;
+
+    /**
+     * Changed nodes, mapped to their new value, or to {@code null} if they were removed.
+     */
+    private final IdentityHashMap<AbstractMutableNode<?>, AbstractNode> changes;
+
+    /**
+     * Changed addresses, mapped to their new mutable node, or to {@code null} if they were removed.
+     */
+    private final HashMap<PathAddress, AbstractMutableNode<?>> addresses;
+
+    /**
+     * The nodes added by this transaction at addresses which did not exist, keyed by their parent.
+     */
+    private final IdentityHashMap<AbstractMutableNode<?>, List<AbstractMutableNode<?>>> addedChildren = new IdentityHashMap<>();
+
+    /**
+     * The addresses read by this transaction, or {@code null} if reads are not tracked.
+     */
+    private final HashSet<PathAddress> reads;
+
+    private final Set<AbstractMutableNode<?>> stepChanges = Collections.newSetFromMap(new IdentityHashMap<AbstractMutableNode<?>, Boolean>());
+
+    private final IdentityHashMap<AbstractMutableNode<?>, Node> validatedNodes = new IdentityHashMap<>();
+
+    WorkingState(final ManagedSystem.State base) {
+        this(base, false);
+    }
+
+    WorkingState(final ManagedSystem.State base, final boolean trackReads) {
+        this(base, trackReads, 32);
+    }
+
+    /**
+     * Construct a new instance whose change maps are sized for the given number of changes.
+     *
+     * @param base the base state
+     * @param trackReads {@code true} to record the addresses read by the transaction
+     * @param expectedChanges the expected number of changed nodes
+     */
+    WorkingState(final ManagedSystem.State base, final boolean trackReads, final int expectedChanges) {
+        this.base = base;
+        reads = trackReads ? new HashSet<PathAddress>() : null;
+        changes = new IdentityHashMap<>(expectedChanges);
+        addresses = new HashMap<>(Math.max(16, (int) (expectedChanges / 0.75f) + 1));
+    }
+
+    ManagedSystem.State getBase() {
+        return base;
+    }
+
+    public long getBaseVersion() {
+        return base.getVersion();
+    }
+
+    public RunLevel getRunLevel() {
+        return base.getRunLevel();
+    }
+
+    public AbstractMutableNode<?> resolve(final PathAddress address) {
+        recordRead(address);
+        return addresses.containsKey(address) ? addresses.get(address) : base.resolve(address);
+    }
+
+    public <N extends Node> N getNode(final AbstractMutableNode<N> mutableNode) {
+        recordRead(mutableNode.getAddress());
+        return changes.containsKey(mutableNode) ? mutableNode.cast(changes.get(mutableNode)) : base.getResource(mutableNode);
+    }
+
+    public <N extends Node> N getOriginalNode(final AbstractMutableNode<N> mutableNode) {
+        recordRead(mutableNode.getAddress());
+        return base.getResource(mutableNode);
+    }
+
+    public <N extends Node> void putNode(final AbstractMutableNode<N> mutableNode, final N newValue) throws IllegalArgumentException {
+        final PathAddress address = mutableNode.getAddress();
+        final AbstractMutableNode<?> existing = resolve(address);
+        if (existing == null) {
+            addresses.put(address, mutableNode);
+            final AbstractMutableNode<?> parent = (AbstractMutableNode<?>) mutableNode.getParent();
+            if (parent != null) {
+                List<AbstractMutableNode<?>> children = addedChildren.get(parent);
+                if (children == null) {
+                    addedChildren.put(parent, children = new ArrayList<>());
+                }
+                children.add(mutableNode);
+            }
+        } else if (existing != mutableNode) {
+            throw new IllegalArgumentException(MESSAGES.duplicateResource(address));
+        }
+        changes.put(mutableNode, (AbstractNode) mutableNode.cast(newValue));
+        stepChanges.add(mutableNode);
+    }
+
+    public void removeNode(final AbstractMutableNode<?> mutableNode) {
+        // walk the subtree through the base state's child index and the children added by this transaction
+        final ArrayDeque<AbstractMutableNode<?>> stack = new ArrayDeque<>();
+        stack.push(mutableNode);
+        while (! stack.isEmpty()) {
+            final AbstractMutableNode<?> node = stack.pop();
+            if (! isPresent(node)) {
+                continue;
+            }
+            for (AbstractMutableNode<?> child : base.getChildren(node)) {
+                stack.push(child);
+            }
+            final List<AbstractMutableNode<?>> added = addedChildren.get(node);
+            if (added != null) {
+                for (AbstractMutableNode<?> child : added) {
+                    stack.push(child);
+                }
+            }
+            changes.put(node, null);
+            addresses.put(node.getAddress(), null);
+            stepChanges.add(node);
+        }
+    }
+
+    private boolean isPresent(final AbstractMutableNode<?> mutableNode) {
+        final PathAddress address = mutableNode.getAddress();
+        return (addresses.containsKey(address) ? addresses.get(address) : base.resolve(address)) == mutableNode;
+    }
+
+    public Set<AbstractMutableNode<?>> getChangedNodes() {
+        return Collections.unmodifiableSet(changes.keySet());
+    }
+
+    /**
+     * Start tracking the nodes changed by the next step.
+     */
+    void beginStep() {
+        stepChanges.clear();
+    }
+
+    /**
+     * Get the nodes changed since the last call to {@link #beginStep()}.
+     *
+     * @return the nodes changed by the current step
+     */
+    Set<AbstractMutableNode<?>> getStepChanges() {
+        return stepChanges;
+    }
+
+    /**
+     * Get the node instances which have already passed immediate validation in this transaction, keyed by their
+     * mutable node.
+     *
+     * @return the validated node instances
+     */
+    IdentityHashMap<AbstractMutableNode<?>, Node> getValidatedNodes() {
+        return validatedNodes;
+    }
+
+    boolean isChanged() {
+        return ! changes.isEmpty();
+    }
+
+    /**
+     * Get the addresses read by this transaction.
+     *
+     * @return the read set, which is empty if reads are not tracked
+     */
+    Set<PathAddress> getReadSet() {
+        return reads == null ? Collections.<PathAddress>emptySet() : reads;
+    }
+
+    /**
+     * Get the addresses written by this transaction.
+     *
+     * @return the write set
+     */
+    Set<PathAddress> getWriteSet() {
+        final HashSet<PathAddress> writes = new HashSet<>(changes.size());
+        for (AbstractMutableNode<?> node : changes.keySet()) {
+            writes.add(node.getAddress());
+        }
+        return writes;
+    }
+
+    private void recordRead(final PathAddress address) {
+        if (reads != null) {
+            reads.add(address);
+        }
+    }
+
+    /**
+     * Apply the recorded changes to a state, producing the next state version.
+     *
+     * @param target the state to apply the changes to
+     * @return the new state, or {@code target} if there are no changes
+     */
+    ManagedSystem.State applyTo(final ManagedSystem.State target) {
+        if (changes.isEmpty()) {
+            return target;
+        }
+        PersistentMap<AbstractMutableNode<?>, AbstractNode> nodeMap = target.getNodeMap();
+        for (Map.Entry<AbstractMutableNode<?>, AbstractNode> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                nodeMap = nodeMap.minus(entry.getKey());
+            } else {
+                nodeMap = nodeMap.plus(entry.getKey(), entry.getValue());
+            }
+        }
+        final AbstractMutableResourceNode<?> root = target.getRootResource();
+        nodeMap = PathCopier.copyPaths(target, changes, root, nodeMap);
+        PersistentMap<PathAddress, AbstractMutableNode<?>> addressMap = target.getAddressMap();
+        PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex = target.getChildIndex();
+        for (Map.Entry<PathAddress, AbstractMutableNode<?>> entry : addresses.entrySet()) {
+            final AbstractMutableNode<?> previous = addressMap.get(entry.getKey());
+            final AbstractMutableNode<?> mutableNode = entry.getValue();
+            if (previous == mutableNode) {
+                continue;
+            }
+            if (previous != null) {
+                childIndex = unlinkChild(childIndex, previous);
+            }
+            if (mutableNode == null) {
+                addressMap = addressMap.minus(entry.getKey());
+            } else {
+                addressMap = addressMap.plus(entry.getKey(), mutableNode);
+                childIndex = linkChild(childIndex, mutableNode);
+            }
+        }
+        assert StructuralSharingChecker.check(target.getNodeMap(), nodeMap, addressMap, root, changes.keySet());
+        return target.derive(nodeMap, addressMap, childIndex);
+    }
+
+    private static PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> linkChild(final PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex, final AbstractMutableNode<?> child) {
+        final AbstractMutableNode<?> parent = (AbstractMutableNode<?>) child.getParent();
+        if (parent == null) {
+            return childIndex;
+        }
+        PersistentMap<AbstractMutableNode<?>, Boolean> children = childIndex.get(parent);
+        if (children == null) {
+            children = PersistentMap.emptyIdentity();
+        }
+        return childIndex.plus(parent, children.plus(child, Boolean.TRUE));
+    }
+
+    private static PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> unlinkChild(PersistentMap<AbstractMutableNode<?>, PersistentMap<AbstractMutableNode<?>, Boolean>> childIndex, final AbstractMutableNode<?> child) {
+        // a removed node's own children are removed along with it
+        childIndex = childIndex.minus(child);
+        final AbstractMutableNode<?> parent = (AbstractMutableNode<?>) child.getParent();
+        final PersistentMap<AbstractMutableNode<?>, Boolean> children = parent == null ? null : childIndex.get(parent);
+        if (children == null) {
+            return childIndex;
+        }
+        final PersistentMap<AbstractMutableNode<?>, Boolean> remaining = children.minus(child);
+        return remaining.isEmpty() ? childIndex.minus(parent) : childIndex.plus(parent, remaining);
+    }
+}
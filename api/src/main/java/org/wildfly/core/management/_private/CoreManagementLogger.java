@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management._private;
+
+import static org.jboss.logging.Logger.Level.WARN;
+
+import org.jboss.logging.BasicLogger;
+import org.jboss.logging.Logger;
+import org.jboss.logging.annotations.Cause;
+import org.jboss.logging.annotations.LogMessage;
+import org.jboss.logging.annotations.Message;
+import org.jboss.logging.annotations.MessageLogger;
+
+/**
+ * The log messages of the management core.  Message IDs are shared with {@link CoreManagementMessages}, and are
+ * allocated from 1000 upwards to keep clear of the exception messages.
+ */
+@MessageLogger(projectCode = "WFCM")
+public interface CoreManagementLogger extends BasicLogger {
+
+    CoreManagementLogger ROOT_LOGGER = Logger.getMessageLogger(CoreManagementLogger.class, "org.wildfly.core.management");
+
+    // Model log messages
+
+    @LogMessage(level = WARN)
+    @Message(id = 1000, value = "Failed to extract the references of %s; the resource is indexed as holding no references")
+    void referenceExtractionFailed(@Cause Throwable cause, Object address);
+
+    // Persistence log messages
+
+    @LogMessage(level = WARN)
+    @Message(id = 1100, value = "Journal segment %s ends with an incomplete or corrupt record at offset %d; the journal is truncated there")
+    void journalTruncated(Object file, int offset);
+
+    @LogMessage(level = WARN)
+    @Message(id = 1101, value = "Discarding unreadable boot snapshot %s; the XML configuration is parsed instead")
+    void bootSnapshotDiscarded(@Cause Throwable cause, Object file);
+}
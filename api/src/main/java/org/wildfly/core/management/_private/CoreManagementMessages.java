@@ -21,6 +21,7 @@ package org.wildfly.core.management._private;
 import org.jboss.logging.Messages;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageBundle;
+import org.wildfly.core.management.RunLevel;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -37,4 +38,111 @@ public interface CoreManagementMessages {
 
     @Message(id = 2, value = "Invalid resource address element '%s'. The value '%s' is not valid for an element in a resource address. Character '%s' is not allowed.")
     String invalidPathElementValue(String element, String value, char character);
+
+    // General messages
+
+    @Message(id = 3, value = "Parameter '%s' may not be null")
+    String nullParameter(String name);
+
+    // Model messages
+
+    @Message(id = 100, value = "Model snapshot is closed")
+    String snapshotClosed();
+
+    @Message(id = 101, value = "Model snapshots belong to different managed systems")
+    String differentSystems();
+
+    @Message(id = 102, value = "Duplicate attribute \"%s\"")
+    String duplicateAttribute(String name);
+
+    @Message(id = 103, value = "Attribute \"%s\" is not stored as %s")
+    String wrongAttributeKind(String name, String kind);
+
+    @Message(id = 104, value = "Invalid expression \"%s\" at offset %d")
+    String invalidExpression(String expression, int offset);
+
+    @Message(id = 105, value = "Expression \"%s\" cannot be resolved")
+    String unresolvableExpression(String expression);
+
+    @Message(id = 106, value = "Value \"%s\" is not a valid boolean")
+    String invalidBoolean(String value);
+
+    // Operation messages
+
+    @Message(id = 200, value = "A model handler is already registered for operation \"%s\"")
+    String duplicateOperationHandler(String operationName);
+
+    @Message(id = 201, value = "No model handler is registered for operation \"%s\"")
+    String noOperationHandler(String operationName);
+
+    @Message(id = 202, value = "Operation address %s may not refer to multiple resources")
+    String multiTargetAddress(Object address);
+
+    @Message(id = 203, value = "A resource already exists at address %s")
+    String duplicateResource(Object address);
+
+    @Message(id = 204, value = "Operation was rolled back")
+    String operationRolledBack();
+
+    @Message(id = 205, value = "Invalid lock prefix depth %d")
+    String invalidLockPrefixDepth(int depth);
+
+    @Message(id = 206, value = "Listener failed for resource %s")
+    String listenerFailed(Object address);
+
+    @Message(id = 207, value = "Validator failed for resource %s")
+    String validatorFailed(Object address);
+
+    @Message(id = 208, value = "A service named \"%s\" is already registered")
+    String duplicateService(String name);
+
+    @Message(id = 209, value = "Service \"%s\" may not be installed at run level %s")
+    String invalidServiceRunLevel(String name, RunLevel runLevel);
+
+    @Message(id = 210, value = "Service \"%s\" requires service \"%s\", which is not available")
+    String missingServiceDependency(String name, String dependency);
+
+    @Message(id = 211, value = "Services %s have a circular dependency")
+    String serviceDependencyCycle(Object names);
+
+    @Message(id = 212, value = "Service \"%s\" failed to start")
+    String serviceStartFailed(String name);
+
+    @Message(id = 213, value = "No resource exists at address %s")
+    String noSuchResource(Object address);
+
+    @Message(id = 214, value = "Address %s is not beneath address %s")
+    String notBeneathAddress(Object address, Object parentAddress);
+
+    @Message(id = 215, value = "The parent of the resource at address %s does not exist")
+    String missingParentResource(Object address);
+
+    @Message(id = 216, value = "A listener dispatcher must have a context factory to be installed in a managed system")
+    String noListenerContextFactory();
+
+    // Persistence messages
+
+    @Message(id = 300, value = "Failed to append change to the journal")
+    String journalAppendFailed();
+
+    @Message(id = 301, value = "The change journal is closed")
+    String journalClosed();
+
+    @Message(id = 302, value = "The change journal has failed and no longer accepts changes")
+    String journalFailed();
+
+    @Message(id = 303, value = "No checkpoint policy is configured for the change journal")
+    String noCheckpointPolicy();
+
+    @Message(id = 304, value = "Cannot create journal directory %s")
+    String cannotCreateJournalDirectory(Object directory);
+
+    @Message(id = 305, value = "Cannot delete journal segment %s")
+    String cannotDeleteJournalSegment(Object file);
+
+    @Message(id = 306, value = "Boot snapshot %s is corrupt")
+    String invalidBootSnapshot(Object file);
+
+    @Message(id = 307, value = "Invalid fragment depth %d; the depth must be at least 1")
+    String invalidFragmentDepth(int depth);
 }
@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.wildfly.core.management.TestModel.add;
+import static org.wildfly.core.management.TestModel.remove;
+import static org.wildfly.core.management.TestModel.writeValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the appending, replaying, recovery and checkpointing of a {@link ChangeJournal}.
+ */
+public class ChangeJournalTestCase {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final Executor INLINE = new Executor() {
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private File directory;
+    private TestModel model;
+    private ManagedSystem system;
+    private ChangeJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+        model = new TestModel();
+        system = model.getSystem();
+        journal = ChangeJournal.open(directory, SEGMENT_SIZE, true);
+        system.setChangeJournal(journal);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private List<ChangeRecord> reopenAndReplay() throws IOException, OperationFailedException {
+        journal.close();
+        journal = ChangeJournal.open(directory, SEGMENT_SIZE, true);
+        final List<ChangeRecord> records = new ArrayList<>();
+        journal.replay(system, new ChangeJournal.ReplayHandler() {
+            public void replay(final ManagedSystem system, final ChangeRecord record) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+
+    private static void assertChange(final ChangeRecord.Change change, final String address) {
+        assertEquals(TestModel.address(address), change.getAddress());
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        system.executeOperation(add("a=1", 1));
+        system.executeBatch(Arrays.asList(add("a=2", 2), writeValue("a=1", 3)));
+        system.executeOperation(remove("a=2"));
+        final List<ChangeRecord> records = reopenAndReplay();
+        assertEquals(3, records.size());
+        assertEquals(Collections.singletonList(TestModel.ADD), records.get(0).getOperationNames());
+        assertEquals(1, records.get(0).getChanges().size());
+        assertChange(records.get(0).getChanges().get(0), "a=1");
+        // an added resource has no previous value
+        assertNull(records.get(0).getChanges().get(0).getBefore());
+        assertEquals(Arrays.asList(TestModel.ADD, TestModel.WRITE_VALUE), records.get(1).getOperationNames());
+        assertEquals(2, records.get(1).getChanges().size());
+        assertEquals(Collections.singletonList(TestModel.REMOVE), records.get(2).getOperationNames());
+        assertChange(records.get(2).getChanges().get(0), "a=2");
+        // a removed resource has no new value
+        assertNull(records.get(2).getChanges().get(0).getAfter());
+        assertTrue(records.get(0).getSequence() < records.get(1).getSequence());
+        assertTrue(records.get(1).getSequence() < records.get(2).getSequence());
+    }
+
+    @Test
+    public void testFailedTransactionIsNotJournaled() throws Exception {
+        system.executeOperation(add("a=1", 1));
+        system.executeOperation(add("a=1", 2));
+        system.executeBatch(Arrays.asList(add("a=2", 2), writeValue("a=3", 3)));
+        assertEquals(1, reopenAndReplay().size());
+    }
+
+    @Test
+    public void testAbortedEntryIsNotReplayed() throws Exception {
+        system.executeOperation(add("a=1", 1));
+        final WorkingState working = new WorkingState(system.getState());
+        final TestModel.TestResource root = model.getRoot();
+        working.putNode(root, working.getNode(root).withValue(9));
+        journal.append(Collections.singletonList(writeValue("", 9)), working).complete(false);
+        system.executeOperation(add("a=2", 2));
+        final List<ChangeRecord> records = reopenAndReplay();
+        assertEquals(2, records.size());
+        assertChange(records.get(0).getChanges().get(0), "a=1");
+        assertChange(records.get(1).getChanges().get(0), "a=2");
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws Exception {
+        system.executeOperation(add("a=1", 1));
+        system.executeOperation(add("a=2", 2));
+        system.executeOperation(add("a=3", 3));
+        journal.close();
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            // damage the body of the second record, leaving its length intact
+            final long second = 8 + file.readInt();
+            final long position = second + 8 + 9;
+            file.seek(position);
+            final int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xff);
+        }
+        List<ChangeRecord> records = reopenAndReplay();
+        assertEquals(1, records.size());
+        assertChange(records.get(0).getChanges().get(0), "a=1");
+        // the journal continues after the last intact record
+        system.setChangeJournal(journal);
+        system.executeOperation(add("a=4", 4));
+        records = reopenAndReplay();
+        assertEquals(2, records.size());
+        assertChange(records.get(1).getChanges().get(0), "a=4");
+        assertTrue(records.get(0).getSequence() < records.get(1).getSequence());
+    }
+
+    @Test
+    public void testSegmentsRoll() throws Exception {
+        for (int i = 0; i < 200; i ++) {
+            assertEquals(OperationStatus.SUCCESS, system.executeOperation(add("a=" + i, i)).getStatus());
+        }
+        assertTrue(directory.listFiles().length > 1);
+        final List<ChangeRecord> records = reopenAndReplay();
+        assertEquals(200, records.size());
+        for (int i = 0; i < 200; i ++) {
+            assertChange(records.get(i).getChanges().get(0), "a=" + i);
+        }
+    }
+
+    @Test
+    public void testCheckpointOnCallingThread() throws Exception {
+        final List<Long> versions = new ArrayList<>();
+        // an executor which runs the checkpoint inline must not deadlock against the entry which triggered it
+        journal.setCheckpointPolicy(system, new ChangeJournal.Checkpointer() {
+            public void writeCheckpoint(final ModelSnapshot snapshot) {
+                versions.add(Long.valueOf(snapshot.getVersion()));
+            }
+        }, 1L, INLINE);
+        system.executeOperation(add("a=1", 1));
+        // the checkpoint includes the change which triggered it
+        assertEquals(Collections.singletonList(Long.valueOf(system.getVersion())), versions);
+        system.executeOperation(add("a=2", 2));
+        assertEquals(2, versions.size());
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(0, reopenAndReplay().size());
+    }
+
+    @Test
+    public void testExplicitCheckpoint() throws Exception {
+        final List<Long> versions = new ArrayList<>();
+        journal.setCheckpointPolicy(system, new ChangeJournal.Checkpointer() {
+            public void writeCheckpoint(final ModelSnapshot snapshot) {
+                versions.add(Long.valueOf(snapshot.getVersion()));
+            }
+        }, Long.MAX_VALUE, INLINE);
+        system.executeOperation(add("a=1", 1));
+        assertTrue(versions.isEmpty());
+        journal.checkpoint();
+        assertEquals(1, versions.size());
+        system.executeOperation(add("a=2", 2));
+        final List<ChangeRecord> records = reopenAndReplay();
+        assertEquals(1, records.size());
+        assertChange(records.get(0).getChanges().get(0), "a=2");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckpointWithoutPolicy() throws Exception {
+        journal.checkpoint();
+    }
+
+    @Test
+    public void testClosedJournalRejectsChanges() throws Exception {
+        journal.close();
+        final long version = system.getVersion();
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(add("a=1", 1)).getStatus());
+        assertEquals(version, system.getVersion());
+        assertNull(model.getValue("a=1"));
+    }
+}
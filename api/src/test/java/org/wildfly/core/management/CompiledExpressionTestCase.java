@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests of the parsing and typed resolution of {@link CompiledExpression}.
+ */
+public class CompiledExpressionTestCase {
+
+    private static final PropertySource EMPTY = source();
+
+    private static PropertySource source(final String... pairs) {
+        final Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            properties.put(pairs[i], pairs[i + 1]);
+        }
+        return new PropertySource() {
+            public String getProperty(final String name) {
+                return properties.get(name);
+            }
+        };
+    }
+
+    private static void assertInvalid(final String expression) {
+        try {
+            CompiledExpression.compile(expression);
+            fail("Expected " + expression + " to be invalid");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testConstant() {
+        final CompiledExpression expression = CompiledExpression.compile("plain text");
+        assertTrue(expression.isConstant());
+        assertTrue(expression.getReferencedProperties().isEmpty());
+        assertEquals("plain text", expression.resolveAsString(EMPTY));
+        assertEquals("plain text", expression.getExpression());
+        assertEquals("", CompiledExpression.compile("").resolveAsString(EMPTY));
+        // escaped and unmatched dollar signs are literal
+        assertEquals("$x$ ${", CompiledExpression.compile("$$x$ $${").resolveAsString(EMPTY));
+        assertTrue(CompiledExpression.compile("$${a}").isConstant());
+    }
+
+    @Test
+    public void testFoldedConstants() {
+        assertEquals(42, CompiledExpression.compile("42").resolveAsInt(null));
+        assertEquals(-7L, CompiledExpression.compile("-7").resolveAsLong(null));
+        assertEquals(1.5, CompiledExpression.compile("1.5").resolveAsDouble(null), 0.0);
+        assertEquals(42.0, CompiledExpression.compile("42").resolveAsDouble(null), 0.0);
+        assertTrue(CompiledExpression.compile("TRUE").resolveAsBoolean(null));
+        assertFalse(CompiledExpression.compile("false").resolveAsBoolean(null));
+        assertEquals(3000000000L, CompiledExpression.compile("3000000000").resolveAsLong(null));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testConstantOutOfIntRange() {
+        CompiledExpression.compile("3000000000").resolveAsInt(null);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testConstantNotANumber() {
+        CompiledExpression.compile("forty-two").resolveAsLong(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstantNotABoolean() {
+        CompiledExpression.compile("yes").resolveAsBoolean(null);
+    }
+
+    @Test
+    public void testSingleReference() {
+        final CompiledExpression expression = CompiledExpression.compile("${port}");
+        assertFalse(expression.isConstant());
+        assertEquals(Arrays.asList("port"), Arrays.asList(expression.getReferencedProperties().toArray()));
+        final PropertySource source = source("port", "8080");
+        assertEquals("8080", expression.resolveAsString(source));
+        assertEquals(8080, expression.resolveAsInt(source));
+        assertEquals(8080L, expression.resolveAsLong(source));
+        assertEquals(8080.0, expression.resolveAsDouble(source), 0.0);
+        assertTrue(CompiledExpression.compile("${flag}").resolveAsBoolean(source("flag", "True")));
+    }
+
+    @Test
+    public void testMixed() {
+        final CompiledExpression expression = CompiledExpression.compile("${host}:${port}/$$");
+        assertEquals("localhost:8080/$", expression.resolveAsString(source("host", "localhost", "port", "8080")));
+        assertEquals(12, CompiledExpression.compile("1${digit}").resolveAsInt(source("digit", "2")));
+    }
+
+    @Test
+    public void testFirstDefinedName() {
+        final CompiledExpression expression = CompiledExpression.compile("${a,b,c}");
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(expression.getReferencedProperties().toArray()));
+        assertEquals("B", expression.resolveAsString(source("b", "B", "c", "C")));
+        assertEquals("A", expression.resolveAsString(source("a", "A", "b", "B")));
+    }
+
+    @Test
+    public void testDefault() {
+        final CompiledExpression expression = CompiledExpression.compile("${port:9990}");
+        assertEquals(9990, expression.resolveAsInt(EMPTY));
+        assertEquals("9990", expression.resolveAsString(EMPTY));
+        assertEquals(8080, expression.resolveAsInt(source("port", "8080")));
+        assertTrue(CompiledExpression.compile("${flag:true}").resolveAsBoolean(EMPTY));
+        assertEquals("", CompiledExpression.compile("${a:}").resolveAsString(EMPTY));
+        assertEquals("x:y", CompiledExpression.compile("${a:x:y}").resolveAsString(EMPTY));
+    }
+
+    @Test
+    public void testNestedDefault() {
+        final CompiledExpression expression = CompiledExpression.compile("${a:${b:${c:last}}-suffix}");
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(expression.getReferencedProperties().toArray()));
+        assertEquals("last-suffix", expression.resolveAsString(EMPTY));
+        assertEquals("C-suffix", expression.resolveAsString(source("c", "C")));
+        assertEquals("B-suffix", expression.resolveAsString(source("b", "B", "c", "C")));
+        assertEquals("A", expression.resolveAsString(source("a", "A", "b", "B")));
+        assertEquals(5, CompiledExpression.compile("${a:${b:5}}").resolveAsInt(EMPTY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUndefinedProperty() {
+        CompiledExpression.compile("${undefined}").resolveAsString(EMPTY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUndefinedPropertyAsInt() {
+        CompiledExpression.compile("${undefined}").resolveAsInt(EMPTY);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testReferenceNotANumber() {
+        CompiledExpression.compile("${a}").resolveAsInt(source("a", "x"));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertInvalid("${");
+        assertInvalid("${}");
+        assertInvalid("${a");
+        assertInvalid("${a,}");
+        assertInvalid("${:x}");
+        assertInvalid("${a:x");
+        assertInvalid("${a${b}}");
+        assertInvalid("${a{b}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullExpression() {
+        CompiledExpression.compile(null);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Reports the per-node heap footprint of {@link NodeStorage}, using the attributes of a thread factory resource.
+ */
+public class NodeStorageFootprintTestCase {
+
+    private static final int NODE_COUNT = 100000;
+
+    private static final NodeLayout LAYOUT;
+    private static final int GROUP_NAME;
+    private static final int THREAD_NAME_PATTERN;
+    private static final int PRIORITY;
+    private static final int DAEMON;
+
+    static {
+        final NodeLayout.Builder builder = NodeLayout.builder();
+        GROUP_NAME = builder.addString("group-name");
+        THREAD_NAME_PATTERN = builder.addString("thread-name-pattern");
+        PRIORITY = builder.addInt("priority");
+        DAEMON = builder.addBoolean("daemon");
+        LAYOUT = builder.build();
+    }
+
+    private static NodeStorage newStorage(final int i) {
+        // build fresh, equal strings each time, as a parser would
+        return LAYOUT.newStorage()
+                .setString(GROUP_NAME, new StringBuilder("group-").append(i % 8).toString())
+                .setString(THREAD_NAME_PATTERN, new StringBuilder("%G-").append(i % 8).append("-%t").toString())
+                .setInt(PRIORITY, i % 10 + 1)
+                .setBoolean(DAEMON, (i & 1) == 0)
+                .build();
+    }
+
+    @Test
+    public void testEstimatedFootprint() {
+        final long bytes = LAYOUT.getStorageFootprint();
+        System.out.printf("Estimated storage footprint: %d bytes per node (%d attributes)%n", Long.valueOf(bytes), Integer.valueOf(LAYOUT.getAttributeCount()));
+        // object header and three references, two words (bits, one int pair) and two references
+        assertEquals(24 + 32 + 24, bytes);
+    }
+
+    @Test
+    public void testMeasuredFootprint() {
+        final NodeStorage[] storages = new NodeStorage[NODE_COUNT];
+        final long before = usedMemory();
+        for (int i = 0; i < NODE_COUNT; i ++) {
+            storages[i] = newStorage(i);
+        }
+        final long after = usedMemory();
+        final long bytesPerNode = (after - before) / NODE_COUNT;
+        System.out.printf("Measured storage footprint: %d bytes per node over %d nodes (estimate %d)%n", Long.valueOf(bytesPerNode), Integer.valueOf(NODE_COUNT), Long.valueOf(LAYOUT.getStorageFootprint()));
+        // the measurement is approximate, but duplicated strings would add well over a hundred bytes per node
+        assertTrue("footprint of " + bytesPerNode + " bytes per node", bytesPerNode < 2 * LAYOUT.getStorageFootprint());
+        // keeps the storages reachable until after the measurement
+        assertEquals((NODE_COUNT - 1) % 10 + 1, storages[NODE_COUNT - 1].getInt(PRIORITY));
+    }
+
+    @Test
+    public void testStringsAreShared() {
+        final NodeStorage first = newStorage(3);
+        final NodeStorage second = newStorage(11);
+        assertEquals("group-3", first.getString(GROUP_NAME));
+        assertSame(first.getString(GROUP_NAME), second.getString(GROUP_NAME));
+        assertSame(first.getString(THREAD_NAME_PATTERN), second.getString(THREAD_NAME_PATTERN));
+    }
+
+    @Test
+    public void testPrimitives() {
+        final NodeStorage storage = newStorage(4);
+        assertEquals(5, storage.getInt(PRIORITY));
+        assertTrue(storage.getBoolean(DAEMON));
+        final NodeStorage changed = storage.withInt(PRIORITY, 9);
+        assertEquals(9, changed.getInt(PRIORITY));
+        assertEquals(5, storage.getInt(PRIORITY));
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i ++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
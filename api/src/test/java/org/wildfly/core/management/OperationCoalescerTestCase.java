@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.wildfly.core.management.TestModel.add;
+import static org.wildfly.core.management.TestModel.remove;
+import static org.wildfly.core.management.TestModel.touch;
+import static org.wildfly.core.management.TestModel.writeValue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the collapsing of batches into their net effect by {@link OperationCoalescer}, and of the validation of
+ * the dropped steps by the pipeline.
+ */
+public class OperationCoalescerTestCase {
+
+    private TestModel model;
+    private ManagedSystem system;
+
+    @Before
+    public void setUp() {
+        model = new TestModel();
+        system = model.getSystem();
+        system.executeBatch(Arrays.asList(add("a=1", 1), add("a=1/b=1", 2)));
+    }
+
+    private boolean[] coalesce(final Operation... operations) {
+        final boolean[] skipped = new boolean[operations.length];
+        OperationCoalescer.coalesce(system, new WorkingState(system.getState()), Arrays.asList(operations), skipped);
+        return skipped;
+    }
+
+    private static void assertSkipped(final boolean[] skipped, final boolean... expected) {
+        // JUnit 4.11 has no boolean array assertion
+        assertEquals(Arrays.toString(expected), Arrays.toString(skipped));
+    }
+
+    private static void assertSuccess(final List<OperationResult> results) {
+        for (OperationResult result : results) {
+            assertEquals(OperationStatus.SUCCESS, result.getStatus());
+        }
+    }
+
+    private static void assertFailure(final List<OperationResult> results) {
+        for (OperationResult result : results) {
+            assertEquals(OperationStatus.FAILURE, result.getStatus());
+        }
+    }
+
+    @Test
+    public void testSupersededWrite() {
+        assertSkipped(coalesce(writeValue("a=1", 3), writeValue("a=1/b=1", 4), writeValue("a=1", 5)), true, false, false);
+        assertSuccess(system.executeBatch(Arrays.asList(writeValue("a=1", 3), writeValue("a=1/b=1", 4), writeValue("a=1", 5))));
+        assertEquals(Integer.valueOf(5), model.getValue("a=1"));
+        assertEquals(Integer.valueOf(4), model.getValue("a=1/b=1"));
+    }
+
+    @Test
+    public void testWritesBeforeRemove() {
+        assertSkipped(coalesce(writeValue("a=1", 3), writeValue("a=1/b=1", 4), remove("a=1")), true, true, false);
+        assertSuccess(system.executeBatch(Arrays.asList(writeValue("a=1", 3), writeValue("a=1/b=1", 4), remove("a=1"))));
+        assertNull(model.getValue("a=1"));
+    }
+
+    @Test
+    public void testAddThenRemove() {
+        final long version = system.getVersion();
+        assertSkipped(coalesce(add("a=2", 1), remove("a=2")), true, true);
+        assertSuccess(system.executeBatch(Arrays.asList(add("a=2", 1), remove("a=2"))));
+        // nothing was applied, so nothing was published
+        assertEquals(version, system.getVersion());
+        assertNull(model.getValue("a=2"));
+    }
+
+    @Test
+    public void testRemoveAddThenRemove() {
+        assertSkipped(coalesce(remove("a=1"), add("a=1", 3), remove("a=1")), false, true, true);
+        assertSuccess(system.executeBatch(Arrays.asList(remove("a=1"), add("a=1", 3), remove("a=1"))));
+        assertNull(model.getValue("a=1"));
+    }
+
+    @Test
+    public void testAddExistingThenRemoveIsExecuted() {
+        // the add would fail, so it must not be dropped
+        assertSkipped(coalesce(add("a=1", 3), remove("a=1")), false, false);
+        assertFailure(system.executeBatch(Arrays.asList(add("a=1", 3), remove("a=1"))));
+        assertEquals(Integer.valueOf(1), model.getValue("a=1"));
+    }
+
+    @Test
+    public void testStepBetweenAddAndRemoveKeepsAdd() {
+        // the write can only be validated against the added resource
+        assertSkipped(coalesce(add("a=2", 1), writeValue("a=2", 2), remove("a=2")), false, true, false);
+        assertSuccess(system.executeBatch(Arrays.asList(add("a=2", 1), writeValue("a=2", 2), remove("a=2"))));
+        assertNull(model.getValue("a=2"));
+    }
+
+    @Test
+    public void testBarrier() {
+        assertSkipped(coalesce(writeValue("a=1", 3), touch("a=1"), writeValue("a=1", 5)), false, false, false);
+        assertSkipped(coalesce(add("a=2", 1), touch("a=1"), remove("a=2")), false, false, false);
+    }
+
+    @Test
+    public void testDroppedAddOfExistingChildFails() {
+        // the add of a=1/b=1 is superseded by the removal of a=1, but would have failed
+        assertSkipped(coalesce(add("a=1/b=1", 3), remove("a=1")), true, false);
+        assertFailure(system.executeBatch(Arrays.asList(add("a=1/b=1", 3), remove("a=1"))));
+        assertEquals(Integer.valueOf(2), model.getValue("a=1/b=1"));
+    }
+
+    @Test
+    public void testDroppedAddWithoutParentFails() {
+        assertSkipped(coalesce(add("a=1/b=2/c=1", 3), remove("a=1")), true, false);
+        assertFailure(system.executeBatch(Arrays.asList(add("a=1/b=2/c=1", 3), remove("a=1"))));
+        assertEquals(Integer.valueOf(1), model.getValue("a=1"));
+    }
+
+    @Test
+    public void testDroppedInvalidWriteFails() {
+        assertSkipped(coalesce(writeValue("a=1", -1), remove("a=1")), true, false);
+        assertFailure(system.executeBatch(Arrays.asList(writeValue("a=1", -1), remove("a=1"))));
+        assertFailure(system.executeBatch(Arrays.asList(writeValue("a=1", -1), writeValue("a=1", 3))));
+        assertEquals(Integer.valueOf(1), model.getValue("a=1"));
+    }
+
+    @Test
+    public void testDroppedWriteOfMissingResourceFails() {
+        assertSkipped(coalesce(writeValue("a=2", 3), add("a=2", 1), writeValue("a=2", 4)), true, false, false);
+        assertFailure(system.executeBatch(Arrays.asList(writeValue("a=2", 3), add("a=2", 1), writeValue("a=2", 4))));
+        assertNull(model.getValue("a=2"));
+    }
+}
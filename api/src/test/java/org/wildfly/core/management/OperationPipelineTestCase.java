@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.wildfly.core.management.TestModel.add;
+import static org.wildfly.core.management.TestModel.remove;
+import static org.wildfly.core.management.TestModel.touch;
+import static org.wildfly.core.management.TestModel.writeValue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.jboss.dmr.ModelNode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the staged execution of operations and batches by {@link OperationPipeline}.
+ */
+public class OperationPipelineTestCase {
+
+    private TestModel model;
+    private ManagedSystem system;
+
+    @Before
+    public void setUp() {
+        model = new TestModel();
+        system = model.getSystem();
+    }
+
+    private static void assertStatus(final List<OperationResult> results, final OperationStatus... expected) {
+        assertEquals(expected.length, results.size());
+        for (int i = 0; i < expected.length; i ++) {
+            assertEquals("status of step " + i, expected[i], results.get(i).getStatus());
+        }
+    }
+
+    @Test
+    public void testAddWriteRemove() {
+        final long version = system.getVersion();
+        assertEquals(OperationStatus.SUCCESS, system.executeOperation(add("a=1", 1)).getStatus());
+        assertEquals(Integer.valueOf(1), model.getValue("a=1"));
+        assertEquals(OperationStatus.SUCCESS, system.executeOperation(writeValue("a=1", 2)).getStatus());
+        assertEquals(Integer.valueOf(2), model.getValue("a=1"));
+        assertEquals(OperationStatus.SUCCESS, system.executeOperation(remove("a=1")).getStatus());
+        assertNull(model.getValue("a=1"));
+        assertEquals(version + 3, system.getVersion());
+    }
+
+    @Test
+    public void testInvalidOperations() {
+        final long version = system.getVersion();
+        // validation failures
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(add("a=1", -1)).getStatus());
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(add("a=1/b=1", 1)).getStatus());
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(writeValue("a=1", 1)).getStatus());
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(remove("a=1")).getStatus());
+        // no handler
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(new TestModel.TestOperation("no-such-operation", PathAddress.EMPTY_ADDRESS, 0)).getStatus());
+        // multi-target address
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(touch("a=*")).getStatus());
+        assertEquals(version, system.getVersion());
+        assertNull(model.getValue("a=1"));
+    }
+
+    @Test
+    public void testDuplicateAdd() {
+        system.executeOperation(add("a=1", 1));
+        final long version = system.getVersion();
+        assertEquals(OperationStatus.FAILURE, system.executeOperation(add("a=1", 2)).getStatus());
+        assertEquals(Integer.valueOf(1), model.getValue("a=1"));
+        assertEquals(version, system.getVersion());
+    }
+
+    @Test
+    public void testBatchIsPublishedOnce() {
+        final long version = system.getVersion();
+        final List<OperationResult> results = system.executeBatch(Arrays.asList(add("a=1", 1), add("a=1/b=1", 2), add("a=1/b=1/c=1", 3), writeValue("a=1", 4)));
+        assertStatus(results, OperationStatus.SUCCESS, OperationStatus.SUCCESS, OperationStatus.SUCCESS, OperationStatus.SUCCESS);
+        assertEquals(version + 1, system.getVersion());
+        assertEquals(Integer.valueOf(4), model.getValue("a=1"));
+        assertEquals(Integer.valueOf(2), model.getValue("a=1/b=1"));
+        assertEquals(Integer.valueOf(3), model.getValue("a=1/b=1/c=1"));
+    }
+
+    @Test
+    public void testFailedBatchIsRolledBack() {
+        system.executeOperation(add("a=1", 1));
+        final long version = system.getVersion();
+        final List<OperationResult> results = system.executeBatch(Arrays.asList(writeValue("a=1", 2), add("a=2", 2), writeValue("a=3", 3), add("a=4", 4)));
+        // every step fails: the failing step with its own error, the others as rolled back
+        assertStatus(results, OperationStatus.FAILURE, OperationStatus.FAILURE, OperationStatus.FAILURE, OperationStatus.FAILURE);
+        assertEquals(version, system.getVersion());
+        assertEquals(Integer.valueOf(1), model.getValue("a=1"));
+        assertNull(model.getValue("a=2"));
+        assertNull(model.getValue("a=4"));
+    }
+
+    @Test
+    public void testStepsSeeEarlierSteps() {
+        // the remove and the second add only validate against the working state left by the earlier steps
+        final List<OperationResult> results = system.executeBatch(Arrays.asList(add("a=1", 1), touch("a=1"), remove("a=1"), add("a=1", 2)));
+        assertStatus(results, OperationStatus.SUCCESS, OperationStatus.SUCCESS, OperationStatus.SUCCESS, OperationStatus.SUCCESS);
+        assertEquals(Integer.valueOf(2), model.getValue("a=1"));
+    }
+
+    @Test
+    public void testRemoveSubtree() {
+        system.executeBatch(Arrays.asList(add("a=1", 1), add("a=1/b=1", 2), add("a=1/b=2", 3), add("a=1/b=1/c=1", 4), add("a=2", 5)));
+        system.executeOperation(add("a=1/b=1/c=2", 6));
+        assertEquals(OperationStatus.SUCCESS, system.executeOperation(remove("a=1")).getStatus());
+        assertNull(model.getValue("a=1"));
+        assertNull(model.getValue("a=1/b=1"));
+        assertNull(model.getValue("a=1/b=2"));
+        assertNull(model.getValue("a=1/b=1/c=1"));
+        assertNull(model.getValue("a=1/b=1/c=2"));
+        assertEquals(Integer.valueOf(5), model.getValue("a=2"));
+        // the removed subtree does not come back with its parent
+        assertEquals(OperationStatus.SUCCESS, system.executeOperation(add("a=1", 7)).getStatus());
+        assertEquals(Integer.valueOf(7), model.getValue("a=1"));
+        assertNull(model.getValue("a=1/b=1"));
+        assertEquals(OperationStatus.SUCCESS, system.executeOperation(add("a=1/b=1", 8)).getStatus());
+        assertNull(model.getValue("a=1/b=1/c=1"));
+    }
+
+    @Test
+    public void testRemoveSubtreeAddedInSameBatch() {
+        system.executeOperation(add("a=1", 1));
+        final List<OperationResult> results = system.executeBatch(Arrays.asList(add("a=1/b=1", 2), add("a=1/b=1/c=1", 3), touch("a=1"), remove("a=1")));
+        assertStatus(results, OperationStatus.SUCCESS, OperationStatus.SUCCESS, OperationStatus.SUCCESS, OperationStatus.SUCCESS);
+        assertNull(model.getValue("a=1"));
+        assertNull(model.getValue("a=1/b=1"));
+        assertNull(model.getValue("a=1/b=1/c=1"));
+    }
+
+    @Test
+    public void testSnapshotIsolation() {
+        system.executeBatch(Arrays.asList(add("a=1", 1), add("a=2", 2)));
+        try (ModelSnapshot snapshot = system.openSnapshot()) {
+            final Node untouched = snapshot.navigate(TestModel.address("a=2"));
+            system.executeOperation(writeValue("a=1", 10));
+            system.executeOperation(add("a=3", 3));
+            assertEquals(Integer.valueOf(1), TestModel.getValue(snapshot, "a=1"));
+            assertNull(TestModel.getValue(snapshot, "a=3"));
+            try (ModelSnapshot current = system.openSnapshot()) {
+                assertEquals(Integer.valueOf(10), TestModel.getValue(current, "a=1"));
+                // the untouched sibling is shared between the versions
+                assertEquals(untouched, current.navigate(TestModel.address("a=2")));
+            }
+        }
+    }
+
+    @Test
+    public void testOptimisticExecution() {
+        system.setExecutionMode(ExecutionMode.OPTIMISTIC);
+        testAddWriteRemove();
+        testFailedBatchIsRolledBack();
+    }
+
+    @Test
+    public void testOptimisticConflictIsRetried() {
+        system.executeBatch(Arrays.asList(add("a=1", 1), add("a=2", 2)));
+        system.setExecutionMode(ExecutionMode.OPTIMISTIC);
+        // the first attempt of the batch reads a=1, then a concurrent transaction commits a write to it
+        final Interference interference = new Interference(writeValue("a=1", 5));
+        system.registerOperationHandler("interfere", interference);
+        final List<OperationResult> results = system.executeBatch(Arrays.asList(writeValue("a=1", 3), new TestModel.TestOperation("interfere", TestModel.address("a=1"), 0)));
+        assertStatus(results, OperationStatus.SUCCESS, OperationStatus.SUCCESS);
+        assertEquals(2, interference.calls);
+        assertEquals(Integer.valueOf(3), model.getValue("a=1"));
+    }
+
+    @Test
+    public void testOptimisticDisjointCommitIsMerged() {
+        system.executeBatch(Arrays.asList(add("a=1", 1), add("a=2", 2)));
+        system.setExecutionMode(ExecutionMode.OPTIMISTIC);
+        final Interference interference = new Interference(writeValue("a=2", 5));
+        system.registerOperationHandler("interfere", interference);
+        // the batch only reads and writes a=1, which does not overlap a=2
+        final List<OperationResult> results = system.executeBatch(Arrays.asList(writeValue("a=1", 3), new TestModel.TestOperation("interfere", TestModel.address("a=1"), 0)));
+        assertStatus(results, OperationStatus.SUCCESS, OperationStatus.SUCCESS);
+        assertEquals(1, interference.calls);
+        assertEquals(Integer.valueOf(3), model.getValue("a=1"));
+        assertEquals(Integer.valueOf(5), model.getValue("a=2"));
+    }
+
+    /**
+     * A handler which, the first time it is applied, executes another operation as a separate transaction.
+     */
+    final class Interference implements ModelOperationHandler<Operation> {
+        private final Operation operation;
+        int calls;
+
+        Interference(final Operation operation) {
+            this.operation = operation;
+        }
+
+        public void validate(final WorkingModel model, final AbstractMutableNode<?> target, final Operation operation) {
+        }
+
+        public ModelNode apply(final WorkingModel model, final AbstractMutableNode<?> target, final Operation operation) {
+            if (calls ++ == 0) {
+                assertEquals(OperationStatus.SUCCESS, system.executeOperation(this.operation).getStatus());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.core.management;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.stream.XMLStreamWriter;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A minimal managed system for exercising the operation pipeline.  Every resource holds a single int value, and is
+ * managed by the {@code add}, {@code write-value} and {@code remove} operations, which describe their effect for
+ * coalescing; the {@code touch} operation changes nothing and is a coalescing barrier.  Negative values are rejected
+ * by validation.
+ */
+final class TestModel {
+
+    static final String ADD = "add";
+    static final String WRITE_VALUE = "write-value";
+    static final String REMOVE = "remove";
+    static final String TOUCH = "touch";
+
+    private final TestResource root;
+    private final ManagedSystem system;
+
+    /**
+     * Create a managed system whose root resource exists and has the value {@code 0}.
+     */
+    TestModel() {
+        root = new TestResource(new NodeConfiguration<>(null, null, TestNode.class, null));
+        system = new ManagedSystem("test", root);
+        system.registerOperationHandler(ADD, new AddHandler());
+        system.registerOperationHandler(WRITE_VALUE, new WriteValueHandler());
+        system.registerOperationHandler(REMOVE, new RemoveHandler());
+        system.registerOperationHandler(TOUCH, new TouchHandler());
+        if (system.executeOperation(add("", 0)).getStatus() != OperationStatus.SUCCESS) {
+            throw new IllegalStateException("Root resource was not added");
+        }
+    }
+
+    ManagedSystem getSystem() {
+        return system;
+    }
+
+    TestResource getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the value of the resource at an address in the current state.
+     *
+     * @param address the address, as {@code key=value} pairs separated by {@code /}
+     * @return the value, or {@code null} if there is no such resource
+     */
+    Integer getValue(final String address) {
+        try (ModelSnapshot snapshot = system.openSnapshot()) {
+            return getValue(snapshot, address);
+        }
+    }
+
+    static Integer getValue(final ModelSnapshot snapshot, final String address) {
+        final TestNode node = (TestNode) snapshot.navigate(address(address));
+        return node == null ? null : Integer.valueOf(node.getValue());
+    }
+
+    static PathAddress address(final String address) {
+        PathAddress result = PathAddress.EMPTY_ADDRESS;
+        if (! address.isEmpty()) {
+            for (String element : address.split("/")) {
+                final int idx = element.indexOf('=');
+                result = result.append(element.substring(0, idx), element.substring(idx + 1));
+            }
+        }
+        return result;
+    }
+
+    static TestOperation add(final String address, final int value) {
+        return new TestOperation(ADD, address(address), value);
+    }
+
+    static TestOperation writeValue(final String address, final int value) {
+        return new TestOperation(WRITE_VALUE, address(address), value);
+    }
+
+    static TestOperation remove(final String address) {
+        return new TestOperation(REMOVE, address(address), 0);
+    }
+
+    static TestOperation touch(final String address) {
+        return new TestOperation(TOUCH, address(address), 0);
+    }
+
+    static final class TestNode extends AbstractResourceNode {
+        private final PathElement element;
+        private final int value;
+        private final Map<PathElement, Node> children;
+
+        TestNode(final PathElement element, final int value, final Map<PathElement, Node> children) {
+            super(null, element == null ? null : element.getValue());
+            this.element = element;
+            this.value = value;
+            this.children = children;
+        }
+
+        int getValue() {
+            return value;
+        }
+
+        TestNode withValue(final int value) {
+            return new TestNode(element, value, children);
+        }
+
+        protected Node cloneInto(final NodeConstructionContext context) {
+            final Map<PathElement, Node> copy = new LinkedHashMap<>();
+            for (Map.Entry<PathElement, Node> entry : children.entrySet()) {
+                final Node child = context.registerNode(entry.getValue());
+                if (child != null) {
+                    copy.put(entry.getKey(), child);
+                }
+            }
+            for (Node child : getAddedChildren(context, this)) {
+                copy.put(((TestNode) child).element, child);
+            }
+            return new TestNode(element, value, Collections.unmodifiableMap(copy));
+        }
+
+        public Node navigate(final PathElement pathElement) {
+            return children.get(pathElement);
+        }
+
+        public ModelNode toModelNode() {
+            return new ModelNode().set(value);
+        }
+
+        public ModelNode describeResource() {
+            return new ModelNode();
+        }
+
+        public void toXML(final XMLStreamWriter writer) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static final class TestResource extends AbstractMutableResourceNode<TestNode> {
+        TestResource(final NodeConfiguration<TestNode> configuration) {
+            super(configuration);
+        }
+
+        public ModelNode describeResource() {
+            return getCurrent().describeResource();
+        }
+
+        public void toXML(final XMLStreamWriter writer) {
+            getCurrent().toXML(writer);
+        }
+    }
+
+    static final class TestOperation extends AbstractOperation {
+        private final int value;
+
+        TestOperation(final String name, final PathAddress address, final int value) {
+            super(null, name, address);
+            this.value = value;
+        }
+
+        int getValue() {
+            return value;
+        }
+
+        protected Node cloneInto(final NodeConstructionContext context) {
+            return this;
+        }
+
+        public ModelNode toModelNode() {
+            return new ModelNode().set(value);
+        }
+
+        public Node navigate(final PathElement pathElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void toXML(final XMLStreamWriter writer) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static void checkValue(final TestOperation operation) throws OperationFailedException {
+        if (operation.getValue() < 0) {
+            throw new OperationFailedException("Negative value " + operation.getValue() + " at " + operation.getAddress());
+        }
+    }
+
+    private static void checkExists(final AbstractMutableNode<?> target, final TestOperation operation) throws OperationFailedException {
+        if (target == null) {
+            throw new OperationFailedException("No resource at " + operation.getAddress());
+        }
+    }
+
+    final class AddHandler implements CoalescingOperationHandler<TestOperation> {
+        public void validate(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) throws OperationFailedException {
+            final PathAddress address = operation.getAddress();
+            if (target != null) {
+                throw new OperationFailedException("Duplicate resource at " + address);
+            }
+            if (address.size() > 0 && model.resolve(address.subAddress(0, address.size() - 1)) == null) {
+                throw new OperationFailedException("No parent resource for " + address);
+            }
+            checkValue(operation);
+        }
+
+        public ModelNode apply(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) {
+            final PathAddress address = operation.getAddress();
+            if (address.size() == 0) {
+                model.putNode(root, new TestNode(null, operation.getValue(), Collections.<PathElement, Node>emptyMap()));
+            } else {
+                final AbstractMutableNode<?> parent = model.resolve(address.subAddress(0, address.size() - 1));
+                final PathElement element = address.getLastElement();
+                final TestResource resource = new TestResource(new NodeConfiguration<>(system, parent, TestNode.class, element));
+                model.putNode(resource, new TestNode(element, operation.getValue(), Collections.<PathElement, Node>emptyMap()));
+            }
+            return null;
+        }
+
+        public Effect getEffect(final TestOperation operation) {
+            return Effect.ADD;
+        }
+
+        public String getWrittenAttribute(final TestOperation operation) {
+            return null;
+        }
+    }
+
+    static final class WriteValueHandler implements CoalescingOperationHandler<TestOperation> {
+        public void validate(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) throws OperationFailedException {
+            checkExists(target, operation);
+            checkValue(operation);
+        }
+
+        public ModelNode apply(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) {
+            final TestResource resource = (TestResource) target;
+            model.putNode(resource, model.getNode(resource).withValue(operation.getValue()));
+            return null;
+        }
+
+        public Effect getEffect(final TestOperation operation) {
+            return Effect.WRITE;
+        }
+
+        public String getWrittenAttribute(final TestOperation operation) {
+            return "value";
+        }
+    }
+
+    static final class RemoveHandler implements CoalescingOperationHandler<TestOperation> {
+        public void validate(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) throws OperationFailedException {
+            checkExists(target, operation);
+        }
+
+        public ModelNode apply(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) {
+            model.removeNode(target);
+            return null;
+        }
+
+        public Effect getEffect(final TestOperation operation) {
+            return Effect.REMOVE;
+        }
+
+        public String getWrittenAttribute(final TestOperation operation) {
+            return null;
+        }
+    }
+
+    static final class TouchHandler implements ModelOperationHandler<TestOperation> {
+        public void validate(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) throws OperationFailedException {
+            checkExists(target, operation);
+        }
+
+        public ModelNode apply(final WorkingModel model, final AbstractMutableNode<?> target, final TestOperation operation) {
+            return null;
+        }
+    }
+}